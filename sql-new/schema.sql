@@ -671,6 +671,7 @@ CREATE TABLE `LOBBY`
     `startedTime`        datetime DEFAULT NULL,
     PRIMARY KEY (`ID`),
     KEY `FK_LOBBY_EVENT` (`EVENTID`),
+    KEY `IDX_LOBBY_STARTEDTIME` (`startedTime`),
     CONSTRAINT `FK_LOBBY_EVENT` FOREIGN KEY (`EVENTID`) REFERENCES `EVENT` (`ID`),
     CONSTRAINT `FKig5wp7wc5nuwille2w0hahp77` FOREIGN KEY (`EVENTID`) REFERENCES `EVENT` (`ID`)
 ) ENGINE = InnoDB
@@ -1211,6 +1212,7 @@ CREATE TABLE `TOKEN_SESSION`
     `webToken`          varchar(255)                                                     DEFAULT NULL,
     PRIMARY KEY (`ID`),
     UNIQUE KEY `UK_9ranmagnxgrp70u76q860goeb` (`userId`),
+    KEY `IDX_TOKEN_SESSION_EXPIRATION` (`expirationDate`),
     CONSTRAINT `FKomwojh6l6a26jsu4jiqpjnuvn` FOREIGN KEY (`userId`) REFERENCES `USER` (`ID`)
 ) ENGINE = InnoDB
   DEFAULT CHARSET = utf8;
@@ -6,28 +6,50 @@
 
 package com.soapboxrace.core.api;
 
+import com.soapboxrace.core.api.util.ResponseCaching;
 import com.soapboxrace.core.bo.ParameterBO;
+import com.soapboxrace.core.bo.ResponseCacheBO;
+import com.soapboxrace.core.bo.util.CachedResponse;
 
 import javax.ejb.EJB;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
+import javax.ws.rs.core.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 
 @Path("/GetFreeroamJson")
 public class GetFreeroamJson {
     @EJB
     private ParameterBO parameterBO;
 
+    @EJB
+    private ResponseCacheBO responseCacheBO;
+
+    @Context
+    private Request request;
+
+    @Context
+    private HttpHeaders headers;
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response getServerInformation() {
         try {
-            String strParam = parameterBO.getStrParam("FREEROAM_JSON_PATH");
-            return Response.ok().entity(Files.readAllBytes(Paths.get(strParam))).build();
+            java.nio.file.Path path = Paths.get(parameterBO.getStrParam("FREEROAM_JSON_PATH"));
+            FileTime lastModified = Files.getLastModifiedTime(path);
+            CachedResponse cachedResponse = responseCacheBO.get("GetFreeroamJson", lastModified, () -> {
+                try {
+                    return Files.readAllBytes(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return ResponseCaching.respond(cachedResponse, request, headers);
         } catch (Exception e) {
             System.err.println("freeroam json file not found");
         }
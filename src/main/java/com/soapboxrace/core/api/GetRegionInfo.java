@@ -6,20 +6,43 @@
 
 package com.soapboxrace.core.api;
 
+import com.soapboxrace.core.api.util.ResponseCaching;
 import com.soapboxrace.core.api.util.Secured;
+import com.soapboxrace.core.bo.ResponseCacheBO;
+import com.soapboxrace.core.bo.util.CachedResponse;
 import com.soapboxrace.jaxb.http.RegionInfo;
 
+import javax.ejb.EJB;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.*;
+import javax.ws.rs.ext.Providers;
 
 @Path("/getregioninfo")
 public class GetRegionInfo {
+    @EJB
+    private ResponseCacheBO responseCacheBO;
+
+    @Context
+    private Request request;
+
+    @Context
+    private HttpHeaders headers;
+
+    @Context
+    private Providers providers;
+
     @GET
     @Secured
     @Produces(MediaType.APPLICATION_XML)
-    public RegionInfo getRegionInfo() {
+    public Response getRegionInfo() {
+        CachedResponse cachedResponse = responseCacheBO.get("GetRegionInfo", null,
+                () -> ResponseCaching.serialize(providers, buildRegionInfo(), MediaType.APPLICATION_XML_TYPE));
+        return ResponseCaching.respond(cachedResponse, request, headers);
+    }
+
+    private RegionInfo buildRegionInfo() {
         RegionInfo regionInfo = new RegionInfo();
         regionInfo.setCountdownProposalInMilliseconds(3000);
         regionInfo.setDirectConnectTimeoutInMilliseconds(1000);
@@ -29,6 +52,5 @@ public class GetRegionInfo {
         regionInfo.setUdpRelayBandwidthInBps(9600);
         regionInfo.setUdpRelayTimeoutInMilliseconds(60000);
         return regionInfo;
-
     }
 }
@@ -6,14 +6,17 @@
 
 package com.soapboxrace.core.api;
 
+import com.soapboxrace.core.api.util.ResponseCaching;
 import com.soapboxrace.core.bo.GetServerInformationBO;
-import com.soapboxrace.core.jpa.ServerInfoEntity;
+import com.soapboxrace.core.bo.ResponseCacheBO;
+import com.soapboxrace.core.bo.util.CachedResponse;
 
 import javax.ejb.EJB;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.*;
+import javax.ws.rs.ext.Providers;
 
 @Path("/GetServerInformation")
 public class GetServerInformation {
@@ -21,9 +24,23 @@ public class GetServerInformation {
     @EJB
     private GetServerInformationBO bo;
 
+    @EJB
+    private ResponseCacheBO responseCacheBO;
+
+    @Context
+    private Request request;
+
+    @Context
+    private HttpHeaders headers;
+
+    @Context
+    private Providers providers;
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public ServerInfoEntity getServerInformation() {
-        return bo.getServerInformation();
+    public Response getServerInformation() {
+        CachedResponse cachedResponse = responseCacheBO.get("GetServerInformation", null,
+                () -> ResponseCaching.serialize(providers, bo.getServerInformation(), MediaType.APPLICATION_JSON_TYPE));
+        return ResponseCaching.respond(cachedResponse, request, headers);
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.api;
+
+import com.soapboxrace.core.api.util.AdminAuth;
+import com.soapboxrace.core.bo.LobbyReaperBO;
+import com.soapboxrace.core.bo.LobbyRegistryBO;
+
+import javax.ejb.EJB;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+@Path("/LobbyStatus")
+public class LobbyStatus {
+
+    @EJB
+    private LobbyReaperBO lobbyReaperBO;
+
+    @EJB
+    private LobbyRegistryBO lobbyRegistryBO;
+
+    @GET
+    @AdminAuth
+    @Path("/reaper")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String getReaperStats() {
+        return "openLobbies=" + lobbyRegistryBO.getLobbyCount()
+                + ";reaps=" + lobbyReaperBO.getReapCount()
+                + ";reapedLobbies=" + lobbyReaperBO.getTotalLobbies()
+                + ";reapedEntrants=" + lobbyReaperBO.getTotalEntrants()
+                + ";reapedQueueEntries=" + lobbyReaperBO.getTotalQueueEntries()
+                + ";reapMillis=" + lobbyReaperBO.getTotalReapMillis()
+                + ";lastReapedLobbies=" + lobbyReaperBO.getLastLobbies()
+                + ";lastReapedEntrants=" + lobbyReaperBO.getLastEntrants()
+                + ";lastReapedQueueEntries=" + lobbyReaperBO.getLastQueueEntries()
+                + ";lastReapMillis=" + lobbyReaperBO.getLastReapMillis();
+    }
+}
\ No newline at end of file
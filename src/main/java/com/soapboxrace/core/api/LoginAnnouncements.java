@@ -6,15 +6,18 @@
 
 package com.soapboxrace.core.api;
 
+import com.soapboxrace.core.api.util.ResponseCaching;
 import com.soapboxrace.core.api.util.Secured;
 import com.soapboxrace.core.bo.LoginAnnouncementBO;
-import com.soapboxrace.jaxb.http.LoginAnnouncementsDefinition;
+import com.soapboxrace.core.bo.ResponseCacheBO;
+import com.soapboxrace.core.bo.util.CachedResponse;
 
 import javax.ejb.EJB;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.*;
+import javax.ws.rs.ext.Providers;
 
 @Path("/LoginAnnouncements")
 public class LoginAnnouncements {
@@ -22,10 +25,25 @@ public class LoginAnnouncements {
     @EJB
     private LoginAnnouncementBO bo;
 
+    @EJB
+    private ResponseCacheBO responseCacheBO;
+
+    @Context
+    private Request request;
+
+    @Context
+    private HttpHeaders headers;
+
+    @Context
+    private Providers providers;
+
     @GET
     @Secured
     @Produces(MediaType.APPLICATION_XML)
-    public LoginAnnouncementsDefinition loginAnnouncements() {
-        return bo.getLoginAnnouncements();
+    public Response loginAnnouncements() {
+        CachedResponse cachedResponse = responseCacheBO.get("LoginAnnouncements", null,
+                () -> ResponseCaching.serialize(providers, bo.getLoginAnnouncements(),
+                        MediaType.APPLICATION_XML_TYPE));
+        return ResponseCaching.respond(cachedResponse, request, headers);
     }
 }
@@ -19,11 +19,11 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 
 import com.soapboxrace.core.bo.util.DiscordWebhook;
+import com.soapboxrace.core.bo.util.LobbyState;
 import com.soapboxrace.core.jpa.PersonaEntity;
 import com.soapboxrace.core.jpa.EventEntity;
-import com.soapboxrace.core.jpa.LobbyEntity;
+import com.soapboxrace.core.dao.EventDAO;
 import com.soapboxrace.core.dao.PersonaDAO;
-import com.soapboxrace.core.dao.LobbyDAO;
 
 @Path("/matchmaking")
 public class MatchMaking {
@@ -53,7 +53,10 @@ public class MatchMaking {
     private PersonaDAO personaDAO;
 
     @EJB
-    private LobbyDAO lobbyDAO;
+    private EventDAO eventDAO;
+
+    @EJB
+    private LobbyRegistryBO lobbyRegistryBO;
 
     @PUT
     @Secured
@@ -140,13 +143,12 @@ public class MatchMaking {
         Long activePersonaId = tokenSessionBO.getActivePersonaId(securityToken);
         tokenSessionBO.setActiveLobbyId(securityToken, lobbyInviteId);
         
-        LobbyEntity lobbyInformation = lobbyDAO.findById(lobbyInviteId);
-		System.out.println(lobbyInformation.getPersonaId() + " == " + activePersonaId);
-		if(activePersonaId.equals(lobbyInformation.getPersonaId())) {
+        LobbyState lobbyInformation = lobbyRegistryBO.get(lobbyInviteId);
+		if(lobbyInformation != null && activePersonaId.equals(lobbyInformation.getPersonaId())) {
 			System.out.println("Passed!");
 
 			//eventname
-			EventEntity eventInformation = lobbyInformation.getEvent();
+			EventEntity eventInformation = eventDAO.findById(lobbyInformation.getEventId());
 			String eventNameFull = eventInformation.getName();
 			String eventName = eventNameFull.split("\\(")[0];
 
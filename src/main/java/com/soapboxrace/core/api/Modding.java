@@ -6,15 +6,18 @@
 
 package com.soapboxrace.core.api;
 
+import com.soapboxrace.core.api.util.ResponseCaching;
 import com.soapboxrace.core.bo.ModdingBO;
+import com.soapboxrace.core.bo.ResponseCacheBO;
+import com.soapboxrace.core.bo.util.CachedResponse;
 import com.soapboxrace.core.vo.ModInfoVO;
 
 import javax.ejb.EJB;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
+import javax.ws.rs.core.*;
+import javax.ws.rs.ext.Providers;
 
 @Path("/Modding")
 public class Modding {
@@ -22,16 +25,33 @@ public class Modding {
     @EJB
     private ModdingBO moddingBO;
 
+    @EJB
+    private ResponseCacheBO responseCacheBO;
+
+    @Context
+    private Request request;
+
+    @Context
+    private HttpHeaders headers;
+
+    @Context
+    private Providers providers;
+
     @GET
     @Path("GetModInfo")
     @Produces(MediaType.APPLICATION_JSON)
     public Response getModInfo() {
-        ModInfoVO modInfoVO = moddingBO.getModInfo();
-
-        if (modInfoVO == null) {
+        CachedResponse cachedResponse = responseCacheBO.get("Modding.GetModInfo", null, () -> {
+            ModInfoVO modInfoVO = moddingBO.getModInfo();
+            return modInfoVO != null
+                    ? ResponseCaching.serialize(providers, modInfoVO, MediaType.APPLICATION_JSON_TYPE)
+                    : null;
+        });
+
+        if (cachedResponse == null) {
             return Response.status(404).build();
         }
 
-        return Response.ok().entity(modInfoVO).build();
+        return ResponseCaching.respond(cachedResponse, request, headers);
     }
 }
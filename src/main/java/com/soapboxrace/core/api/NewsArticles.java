@@ -6,17 +6,20 @@
 
 package com.soapboxrace.core.api;
 
+import com.soapboxrace.core.api.util.ResponseCaching;
 import com.soapboxrace.core.api.util.Secured;
 import com.soapboxrace.core.bo.NewsArticleBO;
+import com.soapboxrace.core.bo.ResponseCacheBO;
 import com.soapboxrace.core.bo.TokenSessionBO;
-import com.soapboxrace.jaxb.http.ArrayOfNewsArticleTrans;
+import com.soapboxrace.core.bo.util.CachedResponse;
 
 import javax.ejb.EJB;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.*;
+import javax.ws.rs.ext.Providers;
 
 @Path("/NewsArticles")
 public class NewsArticles {
@@ -26,11 +29,27 @@ public class NewsArticles {
     @EJB
     private NewsArticleBO newsArticleBO;
 
+    @EJB
+    private ResponseCacheBO responseCacheBO;
+
+    @Context
+    private Request request;
+
+    @Context
+    private HttpHeaders headers;
+
+    @Context
+    private Providers providers;
+
     @GET
     @Secured
     @Produces(MediaType.APPLICATION_XML)
-    public ArrayOfNewsArticleTrans newsArticles(@HeaderParam("userID") Long userID,
-                                                @HeaderParam("securityToken") String securityToken) {
-        return newsArticleBO.getNewsArticles(tokenSessionBO.getActivePersonaId(securityToken));
+    public Response newsArticles(@HeaderParam("userID") Long userID,
+                                 @HeaderParam("securityToken") String securityToken) {
+        Long personaId = tokenSessionBO.getActivePersonaId(securityToken);
+        CachedResponse cachedResponse = responseCacheBO.get("NewsArticles." + personaId, null,
+                () -> ResponseCaching.serialize(providers, newsArticleBO.getNewsArticles(personaId),
+                        MediaType.APPLICATION_XML_TYPE));
+        return ResponseCaching.respond(cachedResponse, request, headers);
     }
 }
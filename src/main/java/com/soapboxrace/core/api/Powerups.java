@@ -7,6 +7,7 @@
 package com.soapboxrace.core.api;
 
 import com.soapboxrace.core.api.util.Secured;
+import com.soapboxrace.core.api.util.SessionContext;
 import com.soapboxrace.core.bo.*;
 import com.soapboxrace.core.bo.util.AchievementInventoryContext;
 import com.soapboxrace.core.jpa.InventoryItemEntity;
@@ -16,15 +17,18 @@ import com.soapboxrace.jaxb.xmpp.XMPP_PowerupActivatedType;
 import com.soapboxrace.jaxb.xmpp.XMPP_ResponseTypePowerupActivated;
 
 import javax.ejb.EJB;
+import javax.inject.Inject;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @Path("/powerups")
 public class Powerups {
 
-    @EJB
-    private TokenSessionBO tokenBO;
+    @Inject
+    private SessionContext sessionContext;
 
     @EJB
     private InventoryBO inventoryBO;
@@ -48,11 +52,10 @@ public class Powerups {
     @Secured
     @Path("/activated/{powerupHash}")
     @Produces(MediaType.APPLICATION_XML)
-    public String activated(@HeaderParam("securityToken") String securityToken,
-                            @PathParam(value = "powerupHash") Integer powerupHash,
+    public String activated(@PathParam(value = "powerupHash") Integer powerupHash,
                             @QueryParam("targetId") Long targetId, @QueryParam("receivers") String receivers,
                             @QueryParam("eventSessionId") Long eventSessionId) {
-        Long activePersonaId = tokenBO.getActivePersonaId(securityToken);
+        Long activePersonaId = sessionContext.getActivePersonaId();
 
         XMPP_ResponseTypePowerupActivated powerupActivatedResponse = new XMPP_ResponseTypePowerupActivated();
         XMPP_PowerupActivatedType powerupActivated = new XMPP_PowerupActivatedType();
@@ -60,12 +63,14 @@ public class Powerups {
         powerupActivated.setTargetPersonaId(targetId);
         powerupActivated.setPersonaId(activePersonaId);
         powerupActivatedResponse.setPowerupActivated(powerupActivated);
+        List<Long> receiverPersonaIds = new ArrayList<>();
         for (String receiver : receivers.split("-")) {
             long receiverPersonaId = Long.parseLong(receiver);
             if (receiverPersonaId > 10) {
-                openFireSoapBoxCli.send(powerupActivatedResponse, receiverPersonaId);
+                receiverPersonaIds.add(receiverPersonaId);
             }
         }
+        openFireSoapBoxCli.broadcast(powerupActivatedResponse, receiverPersonaIds);
         if (parameterBO.getBoolParam("ENABLE_POWERUP_DECREASE")) {
             PersonaEntity personaEntity = personaBO.getPersonaById(activePersonaId);
             InventoryItemEntity inventoryItemEntity = inventoryBO.decreaseItemCount(inventoryBO.getInventory(personaEntity), powerupHash);
@@ -74,7 +79,7 @@ public class Powerups {
             achievementBO.commitTransaction(personaEntity, transaction);
         }
 
-        Long realEventSessionId = tokenBO.getEventSessionId(securityToken);
+        Long realEventSessionId = sessionContext.getEventSessionId();
         if (realEventSessionId != null) {
             eventPowerupBO.createPowerupRecord(realEventSessionId, activePersonaId, powerupHash);
         }
@@ -6,13 +6,12 @@
 
 package com.soapboxrace.core.api;
 
+import com.soapboxrace.core.api.util.AdminAuth;
 import com.soapboxrace.core.bo.ParameterBO;
+import com.soapboxrace.core.bo.ParameterSyncBO;
 
 import javax.ejb.EJB;
-import javax.ws.rs.FormParam;
-import javax.ws.rs.POST;
-import javax.ws.rs.Path;
-import javax.ws.rs.Produces;
+import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 
 @Path("/ReloadParameters")
@@ -21,6 +20,9 @@ public class ReloadParameters {
     @EJB
     private ParameterBO parameterBO;
 
+    @EJB
+    private ParameterSyncBO parameterSyncBO;
+
     @POST
     @Produces(MediaType.TEXT_HTML)
     public String reloadParameters(@FormParam("message") String message, @FormParam("adminAuth") String token) {
@@ -31,10 +33,19 @@ public class ReloadParameters {
         }
 
         if (adminToken.equals(token)) {
-            parameterBO.loadParameters();
-            return "SUCCESS! reloaded parameters";
+            long version = parameterSyncBO.reloadParameters();
+            return "SUCCESS! reloaded parameters (version " + version + ")";
         } else {
             return "ERROR! invalid admin token";
         }
     }
+
+    @GET
+    @AdminAuth
+    @Path("/version")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String getVersion() {
+        return "applied=" + parameterSyncBO.getAppliedVersion() + ";cluster=" + parameterSyncBO.getClusterVersion()
+                + ";snapshot=" + parameterBO.getSnapshotVersion();
+    }
 }
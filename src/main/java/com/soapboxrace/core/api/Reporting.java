@@ -44,6 +44,7 @@ public class Reporting {
             UserEntity user = tokenBO.getUser(securityToken);
             user.setGameHardwareHash(hardwareInfoEntity.getHardwareHash());
             userDAO.update(user);
+            tokenBO.setGameHardwareHash(securityToken, hardwareInfoEntity.getHardwareHash());
             return "";
         } else {
             tokenBO.deleteByUserId(userId);
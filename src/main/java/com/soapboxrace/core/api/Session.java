@@ -6,18 +6,20 @@
 
 package com.soapboxrace.core.api;
 
+import com.soapboxrace.core.api.util.ResponseCaching;
 import com.soapboxrace.core.api.util.Secured;
 import com.soapboxrace.core.bo.ParameterBO;
+import com.soapboxrace.core.bo.ResponseCacheBO;
 import com.soapboxrace.core.bo.SessionBO;
+import com.soapboxrace.core.bo.util.CachedResponse;
 import com.soapboxrace.jaxb.http.ChatServer;
 
 import javax.ejb.EJB;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
-import javax.ws.rs.core.Context;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.*;
+import javax.ws.rs.ext.Providers;
 
 @Path("/Session")
 public class Session {
@@ -31,11 +33,29 @@ public class Session {
     @EJB
     private ParameterBO parameterBO;
 
+    @EJB
+    private ResponseCacheBO responseCacheBO;
+
+    @Context
+    private Request request;
+
+    @Context
+    private HttpHeaders headers;
+
+    @Context
+    private Providers providers;
+
     @GET
     @Secured
     @Path("/GetChatInfo")
     @Produces(MediaType.APPLICATION_XML)
-    public ChatServer getChatInfo() {
+    public Response getChatInfo() {
+        CachedResponse cachedResponse = responseCacheBO.get("Session.GetChatInfo", null,
+                () -> ResponseCaching.serialize(providers, buildChatInfo(), MediaType.APPLICATION_XML_TYPE));
+        return ResponseCaching.respond(cachedResponse, request, headers);
+    }
+
+    private ChatServer buildChatInfo() {
         ChatServer chatServer = new ChatServer();
         String xmppIp = parameterBO.getStrParam("XMPP_IP");
         chatServer.setIp(xmppIp);
@@ -0,0 +1,57 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.api;
+
+import com.soapboxrace.core.api.util.AdminAuth;
+import com.soapboxrace.core.bo.LobbyCountdownBO;
+import com.soapboxrace.core.bo.TimerWheelBO;
+import com.soapboxrace.core.bo.util.HashedWheelTimer;
+
+import javax.ejb.EJB;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+@Path("/TimerStatus")
+public class TimerStatus {
+
+    @EJB
+    private TimerWheelBO timerWheelBO;
+
+    @EJB
+    private LobbyCountdownBO lobbyCountdownBO;
+
+    @GET
+    @AdminAuth
+    @Path("/wheel")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String getWheelStats() {
+        HashedWheelTimer timer = timerWheelBO.getTimer();
+
+        return "tickMillis=" + timer.getTickMillis()
+                + ";wheelSize=" + timer.getWheelSize()
+                + ";pending=" + timer.getPendingCount()
+                + ";scheduled=" + timer.getScheduledCount()
+                + ";fired=" + timer.getFiredCount()
+                + ";cancelled=" + timer.getCancelledCount()
+                + ";rejected=" + timer.getRejectedCount()
+                + ";failed=" + timer.getFailedCount()
+                + ";avgLagMillis=" + String.format("%.2f", timer.getAverageLagMillis())
+                + ";maxLagMillis=" + String.format("%.2f", timer.getMaxLagMillis());
+    }
+
+    @GET
+    @AdminAuth
+    @Path("/lobbyLaunch")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String getLobbyLaunchStats() {
+        return "launched=" + lobbyCountdownBO.getLaunchCount()
+                + ";avgLaunchMillis=" + String.format("%.2f", lobbyCountdownBO.getAverageLaunchMillis())
+                + ";maxLaunchMillis=" + String.format("%.2f", lobbyCountdownBO.getMaxLaunchMillis());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.api;
+
+import com.soapboxrace.core.api.util.AdminAuth;
+import com.soapboxrace.core.bo.TokenSessionSweeperBO;
+
+import javax.ejb.EJB;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+@Path("/TokenSessions")
+public class TokenSessions {
+
+    @EJB
+    private TokenSessionSweeperBO tokenSessionSweeperBO;
+
+    @GET
+    @AdminAuth
+    @Path("/sweeper")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String getSweeperStats() {
+        return "sweeps=" + tokenSessionSweeperBO.getSweepCount()
+                + ";sweptRows=" + tokenSessionSweeperBO.getTotalSweptRows()
+                + ";sweepMillis=" + tokenSessionSweeperBO.getTotalSweepMillis()
+                + ";lastSweptRows=" + tokenSessionSweeperBO.getLastSweptRows()
+                + ";lastSweepMillis=" + tokenSessionSweeperBO.getLastSweepMillis();
+    }
+}
\ No newline at end of file
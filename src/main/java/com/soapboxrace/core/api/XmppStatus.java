@@ -0,0 +1,61 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.api;
+
+import com.soapboxrace.core.api.util.AdminAuth;
+import com.soapboxrace.core.xmpp.OpenFireConnector;
+import com.soapboxrace.core.xmpp.XmppOutboundQueue;
+import com.soapboxrace.core.xmpp.XmppStubEndpoint;
+
+import javax.ejb.EJB;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+@Path("/XmppStatus")
+public class XmppStatus {
+
+    @EJB
+    private OpenFireConnector openFireConnector;
+
+    @GET
+    @AdminAuth
+    @Path("/queue")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String getQueueStats() {
+        XmppOutboundQueue outboundQueue = openFireConnector.getOutboundQueue();
+
+        if (outboundQueue == null) {
+            return "connected=false";
+        }
+
+        String stats = "lanes=" + outboundQueue.getLaneCount()
+                + ";shards=" + openFireConnector.getShardCount()
+                + ";connectedShards=" + openFireConnector.getConnectedShardCount()
+                + ";depth=" + outboundQueue.getDepth()
+                + ";sent=" + outboundQueue.getSentCount()
+                + ";failed=" + outboundQueue.getFailedCount()
+                + ";dropped=" + outboundQueue.getDroppedCount()
+                + ";avgLatencyMillis=" + String.format("%.2f", outboundQueue.getAverageLatencyMillis())
+                + ";maxLatencyMillis=" + String.format("%.2f", outboundQueue.getMaxLatencyMillis());
+
+        XmppStubEndpoint stubEndpoint = openFireConnector.getStubEndpoint();
+
+        if (stubEndpoint != null) {
+            StringBuilder received = new StringBuilder();
+
+            for (int shard = 0; shard < stubEndpoint.getShardCount(); shard++) {
+                received.append(shard == 0 ? "" : ",").append(stubEndpoint.getReceivedCount(shard));
+            }
+
+            stats += ";stubReceived=" + received;
+        }
+
+        return stats;
+    }
+}
\ No newline at end of file
@@ -7,9 +7,11 @@
 package com.soapboxrace.core.api.util;
 
 import com.soapboxrace.core.bo.TokenSessionBO;
+import com.soapboxrace.core.bo.util.TokenSession;
 
 import javax.annotation.Priority;
 import javax.ejb.EJB;
+import javax.inject.Inject;
 import javax.ws.rs.NotAuthorizedException;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.container.ContainerRequestContext;
@@ -25,6 +27,9 @@ public class AuthenticationFilter implements ContainerRequestFilter {
     @EJB
     private TokenSessionBO tokenSessionBO;
 
+    @Inject
+    private SessionContext sessionContext;
+
     @Override
     public void filter(ContainerRequestContext requestContext) {
         String userIdStr = requestContext.getHeaderString("userId");
@@ -41,8 +46,12 @@ public class AuthenticationFilter implements ContainerRequestFilter {
     }
 
     private void validateToken(Long userId, String securityToken) {
-        if (!tokenSessionBO.verifyToken(userId, securityToken)) {
+        TokenSession tokenSession = tokenSessionBO.verifySession(userId, securityToken);
+
+        if (tokenSession == null) {
             throw new NotAuthorizedException("Invalid Token");
         }
+
+        sessionContext.resolve(tokenSession);
     }
 }
@@ -6,40 +6,30 @@
 
 package com.soapboxrace.core.api.util;
 
+import com.maxmind.db.Reader;
 import com.maxmind.geoip2.DatabaseReader;
 import com.maxmind.geoip2.model.CountryResponse;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
-import java.util.Arrays;
-import java.util.List;
 
-public class GeoIp2 {
+/**
+ * Thin wrapper around a memory-mapped GeoIP2 country database. Instances are thread-safe.
+ */
+public class GeoIp2 implements Closeable {
 
-    private static GeoIp2 instance;
-    private DatabaseReader dbReader = null;
+    private final DatabaseReader dbReader;
 
-    private GeoIp2(String pathToMmdb) {
-        setDatabaseReader(pathToMmdb);
-    }
+    private final File database;
 
-    public static GeoIp2 getInstance(String pathToMmdb) {
-        if (instance == null) {
-            instance = new GeoIp2(pathToMmdb);
-        }
-        return instance;
-    }
+    private final long lastModified;
 
-    private void setDatabaseReader(String pathToMmdb) {
-        if (dbReader != null) {
-            return;
-        }
-        try {
-            File database = new File(pathToMmdb);
-            dbReader = new DatabaseReader.Builder(database).build();
-        } catch (Exception e) {
-            System.err.println("error inside geoip class [" + e.getMessage() + "]");
-        }
+    public GeoIp2(String pathToMmdb) throws IOException {
+        this.database = new File(pathToMmdb);
+        this.lastModified = database.lastModified();
+        this.dbReader = new DatabaseReader.Builder(database).fileMode(Reader.FileMode.MEMORY_MAPPED).build();
     }
 
     public String getCountryIso(String ip) {
@@ -51,19 +41,21 @@ public class GeoIp2 {
         } catch (Exception e) {
             System.err.println("error inside geoip class [" + e.getMessage() + "]");
         }
-        return countryIso;
+        return countryIso != null ? countryIso : "";
     }
 
-    public boolean isCountryAllowed(String ip, String countries) {
-        try {
-            String countryIso = getCountryIso(ip);
-            List<String> countriesList = Arrays.asList(countries.split(";"));
-            if (countriesList.contains(countryIso)) {
-                return true;
-            }
-        } catch (Exception e) {
-            System.err.println("error inside geoip class [" + e.getMessage() + "]");
-        }
-        return false;
+    /**
+     * Checks whether this reader was opened from the given path and the file has not been replaced since.
+     *
+     * @param pathToMmdb the configured database path
+     * @return {@code true} if the reader is up to date
+     */
+    public boolean isCurrent(String pathToMmdb) {
+        return database.getPath().equals(new File(pathToMmdb).getPath()) && database.lastModified() == lastModified;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dbReader.close();
     }
-}
+}
\ No newline at end of file
@@ -12,6 +12,7 @@ import com.soapboxrace.core.jpa.UserEntity;
 
 import javax.annotation.Priority;
 import javax.ejb.EJB;
+import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.container.ContainerRequestContext;
@@ -34,11 +35,21 @@ public class HwBanFilter implements ContainerRequestFilter {
     @Context
     private HttpServletRequest sr;
 
+    @Inject
+    private SessionContext sessionContext;
+
     @Override
     public void filter(ContainerRequestContext requestContext) {
-        String securityToken = requestContext.getHeaderString("securityToken");
-        UserEntity user = tokenBO.getUser(securityToken);
-        String gameHardwareHash = user.getGameHardwareHash();
+        String gameHardwareHash;
+
+        if (sessionContext.isResolved()) {
+            gameHardwareHash = sessionContext.getGameHardwareHash();
+        } else {
+            String securityToken = requestContext.getHeaderString("securityToken");
+            UserEntity user = tokenBO.getUser(securityToken);
+            gameHardwareHash = user.getGameHardwareHash();
+        }
+
         if (hardwareInfoBO.isHardwareHashBanned(gameHardwareHash)) {
             requestContext.abortWith(Response.status(Response.Status.GONE).build());
         }
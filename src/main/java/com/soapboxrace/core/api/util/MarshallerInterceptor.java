@@ -16,14 +16,25 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 import javax.ws.rs.ext.Providers;
+import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 
+/**
+ * Writes response entities as XML. Each document is marshalled into a buffer first, so that a JAXB failure becomes
+ * a clean error response instead of a truncated document behind a 200 status line. The buffer belongs to the
+ * request thread and is reused for every response it writes; buffers that grew past
+ * {@link #MAX_RETAINED_BUFFER_SIZE} are dropped afterwards, so a rare huge response does not pin its memory.
+ */
 @Provider
 @Produces(MediaType.APPLICATION_XML)
 public class MarshallerInterceptor implements MessageBodyWriter<Object> {
 
+    static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    static final ThreadLocal<ResponseBuffer> buffers = ThreadLocal.withInitial(ResponseBuffer::new);
+
     @Context
     protected Providers providers;
 
@@ -38,7 +49,22 @@ public class MarshallerInterceptor implements MessageBodyWriter<Object> {
                         OutputStream entityStream) throws WebApplicationException {
         if (object != null) {
             try {
-                entityStream.write(JAXBUtility.marshal(object).getBytes());
+                if (object instanceof byte[]) {
+                    // already encoded, e.g. a cached response
+                    entityStream.write((byte[]) object);
+                } else {
+                    ResponseBuffer buffer = buffers.get();
+                    buffer.reset();
+
+                    try {
+                        JAXBUtility.marshal(object, buffer);
+                        buffer.writeTo(entityStream);
+                    } finally {
+                        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                            buffers.remove();
+                        }
+                    }
+                }
             } catch (Exception e) {
                 throw new WebApplicationException(e);
             }
@@ -50,4 +76,16 @@ public class MarshallerInterceptor implements MessageBodyWriter<Object> {
         return -1;
     }
 
+    /**
+     * A byte buffer that exposes its capacity.
+     */
+    static class ResponseBuffer extends ByteArrayOutputStream {
+        ResponseBuffer() {
+            super(1024);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.api.util;
+
+import com.soapboxrace.core.bo.util.CachedResponse;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.*;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+
+/**
+ * Helpers for serving {@link CachedResponse} entries from resources.
+ */
+public final class ResponseCaching {
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private ResponseCaching() {
+    }
+
+    /**
+     * Encodes an entity with the same message body writer JAX-RS would use for it.
+     *
+     * @param providers the JAX-RS providers
+     * @param entity    the entity to encode
+     * @param mediaType the media type to encode as
+     * @return the encoded body
+     */
+    @SuppressWarnings("unchecked")
+    public static byte[] serialize(Providers providers, Object entity, MediaType mediaType) {
+        Class<Object> type = (Class<Object>) entity.getClass();
+        MessageBodyWriter<Object> writer = providers.getMessageBodyWriter(type, type, NO_ANNOTATIONS, mediaType);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+        try {
+            writer.writeTo(entity, type, type, NO_ANNOTATIONS, mediaType, new MultivaluedHashMap<>(),
+                    byteArrayOutputStream);
+        } catch (IOException e) {
+            throw new WebApplicationException(e);
+        }
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Builds the response for a cached entry: 304 if the client already has it, otherwise the body
+     * (gzip-compressed if the client accepts it) with its entity tag.
+     *
+     * @param cachedResponse the cached entry
+     * @param request        the current request
+     * @param headers        the current request headers
+     * @return the response
+     */
+    public static Response respond(CachedResponse cachedResponse, Request request, HttpHeaders headers) {
+        EntityTag entityTag = new EntityTag(cachedResponse.getEntityTag(), true);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+
+        if (notModified != null) {
+            return notModified.build();
+        }
+
+        String acceptEncoding = headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        Response.ResponseBuilder builder;
+
+        if (cachedResponse.getGzippedBody() != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            builder = Response.ok(cachedResponse.getGzippedBody()).header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        } else {
+            builder = Response.ok(cachedResponse.getBody());
+        }
+
+        return builder.tag(entityTag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,73 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.api.util;
+
+import com.soapboxrace.core.bo.util.TokenSession;
+
+import javax.enterprise.context.RequestScoped;
+
+/**
+ * The session of the client making the current request, resolved once by {@link AuthenticationFilter}.
+ * Filters, resources and {@link com.soapboxrace.core.bo.TokenSessionBO} read from here instead of
+ * looking the security token up again.
+ */
+@RequestScoped
+public class SessionContext {
+
+    private TokenSession tokenSession;
+
+    public void resolve(TokenSession tokenSession) {
+        this.tokenSession = tokenSession;
+    }
+
+    public boolean isResolved() {
+        return tokenSession != null;
+    }
+
+    public boolean isResolvedFor(String securityToken) {
+        return tokenSession != null && tokenSession.getSecurityToken().equals(securityToken);
+    }
+
+    /**
+     * @return a copy of the resolved session
+     */
+    public TokenSession getTokenSession() {
+        return tokenSession == null ? null : new TokenSession(tokenSession);
+    }
+
+    public String getSecurityToken() {
+        return tokenSession.getSecurityToken();
+    }
+
+    public Long getUserId() {
+        return tokenSession.getUserId();
+    }
+
+    public Long getActivePersonaId() {
+        return tokenSession.getActivePersonaId();
+    }
+
+    public Long getActiveLobbyId() {
+        return tokenSession.getActiveLobbyId();
+    }
+
+    public Long getEventSessionId() {
+        return tokenSession.getEventSessionId();
+    }
+
+    public boolean isAdmin() {
+        return tokenSession.isAdmin();
+    }
+
+    public boolean isPremium() {
+        return tokenSession.isPremium();
+    }
+
+    public String getGameHardwareHash() {
+        return tokenSession.getGameHardwareHash();
+    }
+}
\ No newline at end of file
@@ -50,6 +50,9 @@ public class AdminBO {
     @EJB
     private OpenFireSoapBoxCli openFireSoapBoxCli;
 
+    @EJB
+    private BanIndexBO banIndexBO;
+
     public void sendCommand(Long personaId, Long abuserPersonaId, String command) {
         CommandInfo commandInfo = CommandInfo.parse(command);
         PersonaEntity personaEntity = personaDao.findById(abuserPersonaId);
@@ -63,7 +66,7 @@ public class AdminBO {
 
         switch (commandInfo.action) {
             case BAN:
-                if (banDAO.findByUser(personaEntity.getUser()) != null) {
+                if (banIndexBO.isUserBanned(personaEntity.getUser().getId())) {
                     openFireSoapBoxCli.send(XmppChat.createSystemMessage("User is already banned!"), personaId);
                     break;
                 }
@@ -96,6 +99,7 @@ public class AdminBO {
             case UNBAN:
                 BanEntity existingBan;
                 if ((existingBan = banDAO.findByUser(personaEntity.getUser())) == null) {
+                    banIndexBO.removeUserBan(personaEntity.getUser().getId());
                     openFireSoapBoxCli.send(XmppChat.createSystemMessage("User is not banned!"), personaId);
                     break;
                 }
@@ -109,6 +113,7 @@ public class AdminBO {
 				}
 
                 banDAO.delete(existingBan);
+                banIndexBO.removeUserBan(personaEntity.getUser().getId());
                 openFireSoapBoxCli.send(XmppChat.createSystemMessage("Unbanned user!"), personaId);
 
                 break;
@@ -127,6 +132,7 @@ public class AdminBO {
         banEntity.setBannedBy(bannedBy);
         banEntity.setWillEnd(endsOn != null);
         banDAO.insert(banEntity);
+        banIndexBO.addUserBan(userEntity.getId(), endsOn);
         userDao.update(userEntity);
         sendKick(userEntity.getId(), personaEntity.getPersonaId());
 
@@ -135,6 +141,7 @@ public class AdminBO {
         if (hardwareInfoEntity != null) {
             hardwareInfoEntity.setBanned(true);
             hardwareInfoDAO.update(hardwareInfoEntity);
+            banIndexBO.addHardwareBan(hardwareInfoEntity.getHardwareHash());
         }
     }
 
@@ -18,7 +18,14 @@ public class AuthenticationBO {
     @EJB
     private BanDAO banDAO;
 
+    @EJB
+    private BanIndexBO banIndexBO;
+
     public BanEntity checkUserBan(UserEntity userEntity) {
+        if (!banIndexBO.isUserBanned(userEntity.getId())) {
+            return null;
+        }
+
         return banDAO.findByUser(userEntity);
     }
 }
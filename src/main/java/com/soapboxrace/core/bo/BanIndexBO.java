@@ -0,0 +1,296 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.soapboxrace.core.dao.BanDAO;
+import com.soapboxrace.core.dao.HardwareInfoDAO;
+import com.soapboxrace.core.jpa.BanEntity;
+
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory index of active user bans and banned hardware hashes, so that checking a user who is not banned
+ * (nearly every user) does not touch the database.
+ * <p>
+ * The index is loaded at startup and updated by {@link AdminBO} when it bans or unbans someone. With Redis enabled,
+ * those changes are published so every other node applies them right away. The index is also rebuilt every few
+ * minutes to pick up bans made directly in the database; changes made while a rebuild is reading the database are
+ * replayed onto the new index before it replaces the old one. Expired bans are dropped the first time they are
+ * looked up.
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class BanIndexBO {
+
+    private static final long PERMANENT = Long.MAX_VALUE;
+
+    private static final String CHANNEL = "ban_updates";
+
+    @EJB
+    private BanDAO banDAO;
+
+    @EJB
+    private HardwareInfoDAO hardwareInfoDAO;
+
+    @EJB
+    private RedisBO redisBO;
+
+    @EJB
+    private ParameterBO parameterBO;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Object deltaLock = new Object();
+
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    private volatile Map<Long, Long> bannedUsers = new ConcurrentHashMap<>();
+
+    private volatile Set<String> bannedHardwareHashes = ConcurrentHashMap.newKeySet();
+
+    private List<BanDelta> reloadDeltas;
+
+    private boolean redisEnabled;
+    private StatefulRedisPubSubConnection<String, String> pubSubConnection;
+    private StatefulRedisConnection<String, String> connection;
+    private BanUpdateListener listener;
+
+    @PostConstruct
+    public void init() {
+        this.redisEnabled = parameterBO.getBoolParam("ENABLE_REDIS");
+
+        if (this.redisEnabled) {
+            this.connection = this.redisBO.getConnection();
+            this.listener = new BanUpdateListener();
+            this.pubSubConnection = this.redisBO.createPubSub();
+            this.pubSubConnection.addListener(this.listener);
+            this.pubSubConnection.sync().subscribe(CHANNEL);
+        }
+
+        reload();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        System.out.println("BanIndexBO shutdown");
+
+        if (this.redisEnabled) {
+            this.pubSubConnection.removeListener(this.listener);
+            this.pubSubConnection.close();
+            this.listener = null;
+        }
+    }
+
+    @Schedule(minute = "*/5", hour = "*", persistent = false)
+    public void reload() {
+        if (!reloading.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            Map<Long, Long> users = new ConcurrentHashMap<>();
+            Set<String> hardwareHashes = ConcurrentHashMap.newKeySet();
+
+            synchronized (deltaLock) {
+                reloadDeltas = new ArrayList<>();
+            }
+
+            try {
+                for (BanEntity banEntity : banDAO.findAllActive()) {
+                    users.put(banEntity.getUserEntity().getId(),
+                            toExpiry(banEntity.isWillEnd(), banEntity.getEndsAt()));
+                }
+
+                hardwareHashes.addAll(hardwareInfoDAO.findBannedHardwareHashes());
+
+                synchronized (deltaLock) {
+                    for (BanDelta delta : reloadDeltas) {
+                        delta.apply(users, hardwareHashes);
+                    }
+
+                    this.bannedUsers = users;
+                    this.bannedHardwareHashes = hardwareHashes;
+                }
+            } finally {
+                synchronized (deltaLock) {
+                    reloadDeltas = null;
+                }
+            }
+
+            System.out.println(String.format("BanIndexBO: loaded %d user bans and %d hardware bans in %dms",
+                    users.size(), hardwareHashes.size(), System.currentTimeMillis() - start));
+        } finally {
+            reloading.set(false);
+        }
+    }
+
+    /**
+     * Checks whether the given user has an active ban.
+     *
+     * @param userId the user ID
+     * @return {@code true} if the user is banned
+     */
+    public boolean isUserBanned(Long userId) {
+        if (userId == null) {
+            return false;
+        }
+
+        Long expiry = bannedUsers.get(userId);
+
+        if (expiry == null) {
+            return false;
+        }
+
+        if (expiry <= System.currentTimeMillis()) {
+            bannedUsers.remove(userId, expiry);
+            return false;
+        }
+
+        return true;
+    }
+
+    public boolean isHardwareHashBanned(String hardwareHash) {
+        return hardwareHash != null && bannedHardwareHashes.contains(hardwareHash);
+    }
+
+    /**
+     * Records a new ban on every node.
+     *
+     * @param userId the banned user's ID
+     * @param endsAt when the ban ends, or {@code null} for a permanent ban
+     */
+    public void addUserBan(Long userId, LocalDateTime endsAt) {
+        long expiry = toExpiry(endsAt != null, endsAt);
+        applyDelta((users, hardwareHashes) -> users.put(userId, expiry));
+        publish("ban " + userId + " " + expiry);
+    }
+
+    public void removeUserBan(Long userId) {
+        applyDelta((users, hardwareHashes) -> users.remove(userId));
+        publish("unban " + userId);
+    }
+
+    public void addHardwareBan(String hardwareHash) {
+        if (hardwareHash != null) {
+            applyDelta((users, hardwareHashes) -> hardwareHashes.add(hardwareHash));
+            publish("hwban " + hardwareHash);
+        }
+    }
+
+    /**
+     * Applies a change to the current index, and remembers it for a rebuild that is reading the database,
+     * which may or may not see the change.
+     */
+    private void applyDelta(BanDelta delta) {
+        synchronized (deltaLock) {
+            delta.apply(bannedUsers, bannedHardwareHashes);
+
+            if (reloadDeltas != null) {
+                reloadDeltas.add(delta);
+            }
+        }
+    }
+
+    private void publish(String update) {
+        if (this.redisEnabled) {
+            this.connection.sync().publish(CHANNEL, nodeId + " " + update);
+        }
+    }
+
+    private void applyUpdate(String message) {
+        String[] parts = message.split(" ", 4);
+
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+
+        switch (parts[1]) {
+            case "ban":
+                if (parts.length < 4) {
+                    return;
+                }
+
+                Long bannedUserId = Long.valueOf(parts[2]);
+                long expiry = Long.parseLong(parts[3]);
+                applyDelta((users, hardwareHashes) -> users.put(bannedUserId, expiry));
+                break;
+            case "unban":
+                Long unbannedUserId = Long.valueOf(parts[2]);
+                applyDelta((users, hardwareHashes) -> users.remove(unbannedUserId));
+                break;
+            case "hwban":
+                String hardwareHash = parts[2];
+                applyDelta((users, hardwareHashes) -> hardwareHashes.add(hardwareHash));
+                break;
+            default:
+                System.err.println("BanIndexBO: unknown ban update [" + message + "]");
+        }
+    }
+
+    private static long toExpiry(boolean willEnd, LocalDateTime endsAt) {
+        if (!willEnd || endsAt == null) {
+            return PERMANENT;
+        }
+
+        return endsAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private interface BanDelta {
+        void apply(Map<Long, Long> users, Set<String> hardwareHashes);
+    }
+
+    private class BanUpdateListener implements RedisPubSubListener<String, String> {
+        @Override
+        public void message(String channel, String message) {
+            if (CHANNEL.equals(channel)) {
+                applyUpdate(message);
+            }
+        }
+
+        @Override
+        public void message(String pattern, String channel, String message) {
+
+        }
+
+        @Override
+        public void subscribed(String channel, long count) {
+
+        }
+
+        @Override
+        public void psubscribed(String pattern, long count) {
+
+        }
+
+        @Override
+        public void unsubscribed(String channel, long count) {
+
+        }
+
+        @Override
+        public void punsubscribed(String pattern, long count) {
+
+        }
+    }
+}
\ No newline at end of file
@@ -1,32 +1,59 @@
 package com.soapboxrace.core.bo;
 
+import com.soapboxrace.core.bo.util.HashedWheelTimer;
 import com.soapboxrace.core.jpa.EventSessionEntity;
 import com.soapboxrace.core.xmpp.OpenFireSoapBoxCli;
 import com.soapboxrace.jaxb.xmpp.XMPP_EventTimedOutType;
 import com.soapboxrace.jaxb.xmpp.XMPP_ResponseTypeEventTimedOut;
 
-import javax.annotation.Resource;
 import javax.ejb.*;
-import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Sends the "event timed out" message to racers who have not finished when an event's DNF timer runs out.
+ * Timers run on the {@link TimerWheelBO} and are cancelled when the racer finishes in time.
+ */
 @Singleton
 @Lock(LockType.READ)
 public class DNFTimerBO {
-    @Resource
-    private TimerService timerService;
+    @EJB
+    private TimerWheelBO timerWheelBO;
 
     @EJB
     private OpenFireSoapBoxCli openFireSoapBoxCli;
 
+    private final Map<DNFTimerInfo, HashedWheelTimer.Timeout> timeouts = new ConcurrentHashMap<>();
+
     public void scheduleDNF(EventSessionEntity eventSessionEntity, Long personaId) {
-        TimerConfig timerConfig = new TimerConfig();
-        timerConfig.setInfo(new DNFTimerInfo(eventSessionEntity.getId(), personaId));
-        timerService.createSingleActionTimer(eventSessionEntity.getEvent().getDnfTimerTime(), timerConfig);
+        DNFTimerInfo timerInfo = new DNFTimerInfo(eventSessionEntity.getId(), personaId);
+        HashedWheelTimer.Timeout timeout = timerWheelBO.schedule(() -> onTimeout(timerInfo),
+                eventSessionEntity.getEvent().getDnfTimerTime());
+        HashedWheelTimer.Timeout previous = timeouts.put(timerInfo, timeout);
+
+        if (previous != null) {
+            previous.cancel();
+        }
     }
 
-    @Timeout
-    public void onTimeout(Timer timer) {
-        DNFTimerInfo timerInfo = (DNFTimerInfo) timer.getInfo();
+    /**
+     * Cancels the DNF timer of a racer, if one is pending.
+     *
+     * @param eventSessionId the event session ID
+     * @param personaId      the persona ID of the racer
+     */
+    public void cancelDNF(Long eventSessionId, Long personaId) {
+        HashedWheelTimer.Timeout timeout = timeouts.remove(new DNFTimerInfo(eventSessionId, personaId));
+
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void onTimeout(DNFTimerInfo timerInfo) {
+        timeouts.computeIfPresent(timerInfo, (key, timeout) -> timeout.isExpired() ? null : timeout);
+
         XMPP_EventTimedOutType eventTimedOut = new XMPP_EventTimedOutType();
         eventTimedOut.setEventSessionId(timerInfo.eventSessionId);
         XMPP_ResponseTypeEventTimedOut eventTimedOutResponse = new XMPP_ResponseTypeEventTimedOut();
@@ -34,7 +61,7 @@ public class DNFTimerBO {
         openFireSoapBoxCli.send(eventTimedOutResponse, timerInfo.personaId);
     }
 
-    private static class DNFTimerInfo implements Serializable {
+    private static class DNFTimerInfo {
         public final Long eventSessionId;
         public final Long personaId;
 
@@ -42,5 +69,18 @@ public class DNFTimerBO {
             this.eventSessionId = eventSessionId;
             this.personaId = personaId;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            DNFTimerInfo that = (DNFTimerInfo) o;
+            return Objects.equals(eventSessionId, that.eventSessionId) && Objects.equals(personaId, that.personaId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(eventSessionId, personaId);
+        }
     }
 }
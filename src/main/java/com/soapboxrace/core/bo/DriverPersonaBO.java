@@ -31,6 +31,9 @@ public class DriverPersonaBO {
     @EJB
     private LobbyEntrantDAO lobbyEntrantDAO;
 
+    @EJB
+    private LobbyRegistryBO lobbyRegistryBO;
+
     @EJB
     private LevelRepDAO levelRepDAO;
 
@@ -190,6 +193,7 @@ public class DriverPersonaBO {
             carSlotDAO.delete(carSlotEntity);
         }
         carSlotDAO.deleteByPersona(personaEntity);
+        lobbyRegistryBO.removePersona(personaId);
         lobbyEntrantDAO.deleteByPersona(personaEntity);
         treasureHuntDAO.deleteByPersona(personaEntity);
         inventoryItemDAO.deleteByPersona(personaEntity);
@@ -6,6 +6,7 @@
 
 package com.soapboxrace.core.bo;
 
+import com.soapboxrace.core.bo.util.TokenSession;
 import com.soapboxrace.core.dao.*;
 import com.soapboxrace.core.engine.EngineException;
 import com.soapboxrace.core.engine.EngineExceptionCode;
@@ -31,7 +32,7 @@ public class EventBO {
     private PersonaDAO personaDao;
 
     @EJB
-    private TokenSessionDAO tokenSessionDao;
+    private TokenSessionBO tokenSessionBO;
 
     @EJB
     private PersonaBO personaBO;
@@ -61,13 +62,13 @@ public class EventBO {
             return null;
         }
 
-        TokenSessionEntity tokenSessionEntity = tokenSessionDao.findById(securityToken);
+        TokenSession tokenSession = tokenSessionBO.getSession(securityToken);
 
-        if (tokenSessionEntity == null) {
+        if (tokenSession == null) {
             return null;
         }
 
-        Long activePersonaId = tokenSessionEntity.getActivePersonaId();
+        Long activePersonaId = tokenSession.getActivePersonaId();
 
         if (activePersonaId.equals(0L)) {
             return null;
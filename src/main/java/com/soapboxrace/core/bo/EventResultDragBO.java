@@ -25,6 +25,8 @@ import com.soapboxrace.jaxb.xmpp.XMPP_ResponseTypeDragEntrantResult;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import java.util.ArrayList;
+import java.util.List;
 
 @Stateless
 public class EventResultDragBO extends EventResultBO<DragArbitrationPacket, DragEventResult> {
@@ -75,6 +77,7 @@ public class EventResultDragBO extends EventResultBO<DragArbitrationPacket, Drag
         }
 
         prepareBasicEventData(eventDataEntity, activePersonaId, dragArbitrationPacket);
+        dnfTimerBO.cancelDNF(eventSessionId, activePersonaId);
         eventDataEntity.setFractionCompleted(dragArbitrationPacket.getFractionCompleted());
         eventDataEntity.setLongestJumpDurationInMilliseconds(dragArbitrationPacket.getLongestJumpDurationInMilliseconds());
         eventDataEntity.setNumberOfCollisions(dragArbitrationPacket.getNumberOfCollisions());
@@ -84,6 +87,7 @@ public class EventResultDragBO extends EventResultBO<DragArbitrationPacket, Drag
         eventSessionEntity.setEnded(System.currentTimeMillis());
 
         ArrayOfDragEntrantResult arrayOfDragEntrantResult = new ArrayOfDragEntrantResult();
+        List<Long> otherRacers = new ArrayList<>();
         for (EventDataEntity racer : eventDataDao.getRacers(eventSessionId)) {
             DragEntrantResult dragEntrantResult = new DragEntrantResult();
             dragEntrantResult.setEventDurationInMilliseconds(racer.getEventDurationInMilliseconds());
@@ -95,12 +99,16 @@ public class EventResultDragBO extends EventResultBO<DragArbitrationPacket, Drag
             arrayOfDragEntrantResult.getDragEntrantResult().add(dragEntrantResult);
 
             if (!racer.getPersonaId().equals(activePersonaId)) {
-                XmppEvent xmppEvent = new XmppEvent(racer.getPersonaId(), openFireSoapBoxCli);
-                xmppEvent.sendDragEnd(dragEntrantResultResponse);
-                if (dragArbitrationPacket.getFinishReason() == 22 && dragArbitrationPacket.getRank() == 1 && eventSessionEntity.getEvent().isDnfEnabled()) {
-                    xmppEvent.sendEventTimingOut(eventSessionEntity);
-                    dnfTimerBO.scheduleDNF(eventSessionEntity, racer.getPersonaId());
-                }
+                otherRacers.add(racer.getPersonaId());
+            }
+        }
+
+        XmppEvent xmppEvent = new XmppEvent(otherRacers, openFireSoapBoxCli);
+        xmppEvent.sendDragEnd(dragEntrantResultResponse);
+        if (dragArbitrationPacket.getFinishReason() == 22 && dragArbitrationPacket.getRank() == 1 && eventSessionEntity.getEvent().isDnfEnabled()) {
+            xmppEvent.sendEventTimingOut(eventSessionEntity);
+            for (Long racerPersonaId : otherRacers) {
+                dnfTimerBO.scheduleDNF(eventSessionEntity, racerPersonaId);
             }
         }
 
@@ -25,6 +25,8 @@ import com.soapboxrace.jaxb.xmpp.XMPP_RouteEntrantResultType;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import java.util.ArrayList;
+import java.util.List;
 
 @Stateless
 public class EventResultRouteBO extends EventResultBO<RouteArbitrationPacket, RouteEventResult> {
@@ -64,6 +66,7 @@ public class EventResultRouteBO extends EventResultBO<RouteArbitrationPacket, Ro
         }
 
         prepareBasicEventData(eventDataEntity, activePersonaId, routeArbitrationPacket);
+        dnfTimerBO.cancelDNF(eventSessionId, activePersonaId);
 
         eventDataEntity.setBestLapDurationInMilliseconds(routeArbitrationPacket.getBestLapDurationInMilliseconds());
         eventDataEntity.setFractionCompleted(routeArbitrationPacket.getFractionCompleted());
@@ -128,14 +131,19 @@ public class EventResultRouteBO extends EventResultBO<RouteArbitrationPacket, Ro
         XMPP_ResponseTypeRouteEntrantResult routeEntrantResultResponse = new XMPP_ResponseTypeRouteEntrantResult();
         routeEntrantResultResponse.setRouteEntrantResult(xmppRouteResult);
 
+        List<Long> otherRacers = new ArrayList<>();
         for (EventDataEntity racer : eventDataDao.getRacers(eventSessionEntity.getId())) {
             if (!racer.getPersonaId().equals(activePersonaId)) {
-                XmppEvent xmppEvent = new XmppEvent(racer.getPersonaId(), openFireSoapBoxCli);
-                xmppEvent.sendRaceEnd(routeEntrantResultResponse);
-                if (routeArbitrationPacket.getFinishReason() == 22 && routeArbitrationPacket.getRank() == 1 && eventSessionEntity.getEvent().isDnfEnabled()) {
-                    xmppEvent.sendEventTimingOut(eventSessionEntity);
-                    dnfTimerBO.scheduleDNF(eventSessionEntity, racer.getPersonaId());
-                }
+                otherRacers.add(racer.getPersonaId());
+            }
+        }
+
+        XmppEvent xmppEvent = new XmppEvent(otherRacers, openFireSoapBoxCli);
+        xmppEvent.sendRaceEnd(routeEntrantResultResponse);
+        if (routeArbitrationPacket.getFinishReason() == 22 && routeArbitrationPacket.getRank() == 1 && eventSessionEntity.getEvent().isDnfEnabled()) {
+            xmppEvent.sendEventTimingOut(eventSessionEntity);
+            for (Long racerPersonaId : otherRacers) {
+                dnfTimerBO.scheduleDNF(eventSessionEntity, racerPersonaId);
             }
         }
     }
@@ -25,6 +25,8 @@ import com.soapboxrace.jaxb.xmpp.XMPP_TeamEscapeEntrantResultType;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import java.util.ArrayList;
+import java.util.List;
 
 @Stateless
 public class EventResultTeamEscapeBO extends EventResultBO<TeamEscapeArbitrationPacket, TeamEscapeEventResult> {
@@ -74,6 +76,7 @@ public class EventResultTeamEscapeBO extends EventResultBO<TeamEscapeArbitration
         }
 
         prepareBasicEventData(eventDataEntity, activePersonaId, teamEscapeArbitrationPacket);
+        dnfTimerBO.cancelDNF(eventSessionId, activePersonaId);
         eventDataEntity.setBustedCount(teamEscapeArbitrationPacket.getBustedCount());
         eventDataEntity.setCopsDeployed(teamEscapeArbitrationPacket.getCopsDeployed());
         eventDataEntity.setCopsDisabled(teamEscapeArbitrationPacket.getCopsDisabled());
@@ -92,6 +95,7 @@ public class EventResultTeamEscapeBO extends EventResultBO<TeamEscapeArbitration
         eventSessionEntity.setEnded(System.currentTimeMillis());
 
         ArrayOfTeamEscapeEntrantResult arrayOfTeamEscapeEntrantResult = new ArrayOfTeamEscapeEntrantResult();
+        List<Long> otherRacers = new ArrayList<>();
         for (EventDataEntity racer : eventDataDao.getRacers(eventSessionId)) {
             TeamEscapeEntrantResult teamEscapeEntrantResult = new TeamEscapeEntrantResult();
             teamEscapeEntrantResult.setDistanceToFinish(racer.getDistanceToFinish());
@@ -104,13 +108,17 @@ public class EventResultTeamEscapeBO extends EventResultBO<TeamEscapeArbitration
             arrayOfTeamEscapeEntrantResult.getTeamEscapeEntrantResult().add(teamEscapeEntrantResult);
 
             if (!racer.getPersonaId().equals(activePersonaId)) {
-                XmppEvent xmppEvent = new XmppEvent(racer.getPersonaId(), openFireSoapBoxCli);
-                xmppEvent.sendTeamEscapeEnd(teamEscapeEntrantResultResponse);
-                if ((teamEscapeArbitrationPacket.getFinishReason() == 518 ||
-                        teamEscapeArbitrationPacket.getFinishReason() == 22) && teamEscapeArbitrationPacket.getRank() == 1 && eventSessionEntity.getEvent().isDnfEnabled()) {
-                    xmppEvent.sendEventTimingOut(eventSessionEntity);
-                    dnfTimerBO.scheduleDNF(eventSessionEntity, racer.getPersonaId());
-                }
+                otherRacers.add(racer.getPersonaId());
+            }
+        }
+
+        XmppEvent xmppEvent = new XmppEvent(otherRacers, openFireSoapBoxCli);
+        xmppEvent.sendTeamEscapeEnd(teamEscapeEntrantResultResponse);
+        if ((teamEscapeArbitrationPacket.getFinishReason() == 518 ||
+                teamEscapeArbitrationPacket.getFinishReason() == 22) && teamEscapeArbitrationPacket.getRank() == 1 && eventSessionEntity.getEvent().isDnfEnabled()) {
+            xmppEvent.sendEventTimingOut(eventSessionEntity);
+            for (Long racerPersonaId : otherRacers) {
+                dnfTimerBO.scheduleDNF(eventSessionEntity, racerPersonaId);
             }
         }
 
@@ -0,0 +1,162 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.soapboxrace.core.api.util.GeoIp2;
+import com.soapboxrace.core.dao.ServerInfoDAO;
+import com.soapboxrace.core.jpa.ServerInfoEntity;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.*;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * GeoIP country checks for logins.
+ * <p>
+ * The database at GEOIP2_DB_FILE_PATH is opened memory-mapped and lookups are cached per IP
+ * (up to GEOIP_CACHE_SIZE entries). The allowed-countries list from SERVER_INFO is kept as a parsed set.
+ * Once a minute both are checked for changes: the database is reopened if the path parameter changed or the
+ * file was replaced, and the country set is rebuilt if the list changed.
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class GeoIpBO {
+
+    @EJB
+    private ParameterBO parameterBO;
+
+    @EJB
+    private ServerInfoDAO serverInfoDAO;
+
+    private volatile GeoIp2 geoIp2;
+
+    private volatile Cache<String, String> countryCache;
+
+    private volatile String allowedCountriesRaw;
+
+    private volatile Set<String> allowedCountries = Collections.emptySet();
+
+    @PostConstruct
+    public void init() {
+        this.countryCache = CacheBuilder.newBuilder()
+                .maximumSize(parameterBO.getIntParam("GEOIP_CACHE_SIZE", 10000))
+                .build();
+        refresh();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closeQuietly(geoIp2);
+    }
+
+    @Schedule(minute = "*", hour = "*", persistent = false)
+    public void refresh() {
+        refreshAllowedCountries();
+
+        String path = parameterBO.getStrParam("GEOIP2_DB_FILE_PATH");
+        GeoIp2 current = this.geoIp2;
+
+        if (path != null && (current == null || !current.isCurrent(path))) {
+            reload();
+        }
+    }
+
+    /**
+     * Reopens the GeoIP database and clears the lookup cache.
+     */
+    public void reload() {
+        String path = parameterBO.getStrParam("GEOIP2_DB_FILE_PATH");
+
+        if (path == null) {
+            return;
+        }
+
+        try {
+            GeoIp2 previous = this.geoIp2;
+            this.geoIp2 = new GeoIp2(path);
+            countryCache.invalidateAll();
+            closeQuietly(previous);
+            System.out.println("GeoIpBO: opened " + path);
+        } catch (IOException e) {
+            System.err.println("GeoIpBO: could not open [" + path + "]: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return {@code true} if no country restriction is configured
+     */
+    public boolean isUnrestricted() {
+        return allowedCountries.isEmpty();
+    }
+
+    public String getAllowedCountries() {
+        return allowedCountriesRaw;
+    }
+
+    public boolean isCountryAllowed(String ip) {
+        Set<String> countries = this.allowedCountries;
+        return countries.isEmpty() || countries.contains(getCountryIso(ip));
+    }
+
+    public String getCountryIso(String ip) {
+        GeoIp2 reader = this.geoIp2;
+
+        if (ip == null || reader == null) {
+            return "";
+        }
+
+        String countryIso = countryCache.getIfPresent(ip);
+
+        if (countryIso == null) {
+            countryIso = reader.getCountryIso(ip);
+
+            // don't cache a result from a reader that was swapped out (and closed) during the lookup
+            if (reader == this.geoIp2) {
+                countryCache.put(ip, countryIso);
+            }
+        }
+
+        return countryIso;
+    }
+
+    private void refreshAllowedCountries() {
+        ServerInfoEntity serverInfoEntity = serverInfoDAO.findInfo();
+        String raw = serverInfoEntity != null ? serverInfoEntity.getAllowedCountries() : null;
+
+        if (Objects.equals(raw, allowedCountriesRaw)) {
+            return;
+        }
+
+        Set<String> countries = new HashSet<>();
+
+        if (raw != null && !raw.isEmpty()) {
+            countries.addAll(Arrays.asList(raw.split(";")));
+        }
+
+        this.allowedCountries = Collections.unmodifiableSet(countries);
+        this.allowedCountriesRaw = raw;
+    }
+
+    private static void closeQuietly(GeoIp2 reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                System.err.println("GeoIpBO: could not close database [" + e.getMessage() + "]");
+            }
+        }
+    }
+}
\ No newline at end of file
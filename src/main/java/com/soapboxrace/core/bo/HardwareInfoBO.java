@@ -20,6 +20,9 @@ public class HardwareInfoBO {
     @EJB
     private HardwareInfoDAO hardwareInfoDAO;
 
+    @EJB
+    private BanIndexBO banIndexBO;
+
     public String calcHardwareInfoHash(String hardwareInfoXml) {
         if (hardwareInfoXml != null && !hardwareInfoXml.isEmpty()) {
             return DigestUtils.sha1Hex(hardwareInfoXml);
@@ -53,11 +56,7 @@ public class HardwareInfoBO {
     }
 
     public boolean isHardwareHashBanned(String hardwareHash) {
-        HardwareInfoEntity hardwareInfoEntity = hardwareInfoDAO.findByHardwareHash(hardwareHash);
-        if (hardwareInfoEntity != null) {
-            return hardwareInfoEntity.isBanned();
-        }
-        return false;
+        return banIndexBO.isHardwareHashBanned(hardwareHash);
     }
 
 }
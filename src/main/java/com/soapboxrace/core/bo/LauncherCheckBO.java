@@ -0,0 +1,186 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.soapboxrace.core.dao.UserDAO;
+import org.json.JSONObject;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Backs {@link com.soapboxrace.core.api.util.LaunchFilter}.
+ * <p>
+ * HWID headers are only written when they differ from the last value written for that email on this node. Changes
+ * are coalesced per email and written in one batch every few seconds. At most {@link #MAX_PENDING_HWIDS} changes
+ * are held between flushes; further ones are skipped and picked up again on the user's next launcher request.
+ * <p>
+ * The WHITELISTED_LAUNCHERS_ONLY JSON is parsed into version tuples once per parameter snapshot.
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class LauncherCheckBO {
+
+    private static final int MAX_PENDING_HWIDS = 10000;
+
+    @EJB
+    private UserDAO userDAO;
+
+    @EJB
+    private ParameterBO parameterBO;
+
+    private final Cache<String, String> writtenHwids = CacheBuilder.newBuilder().maximumSize(100000).build();
+
+    private final Map<String, String> pendingHwids = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private volatile LauncherWhitelist whitelist;
+
+    @PreDestroy
+    public void shutdown() {
+        flushHwids();
+    }
+
+    /**
+     * Queues the HWID sent with a launcher request for the user with the given email, unless it is already stored.
+     *
+     * @param email the email the request was made for
+     * @param hwid  the X-HWID header
+     */
+    public void recordHwid(String email, String hwid) {
+        if (email == null || hwid == null) {
+            return;
+        }
+
+        if (hwid.equals(writtenHwids.getIfPresent(email)) || hwid.equals(pendingHwids.get(email))) {
+            return;
+        }
+
+        if (pendingHwids.size() >= MAX_PENDING_HWIDS && !pendingHwids.containsKey(email)) {
+            return;
+        }
+
+        pendingHwids.put(email, hwid);
+    }
+
+    @Schedule(second = "*/5", minute = "*", hour = "*", persistent = false)
+    public void flushHwids() {
+        if (pendingHwids.isEmpty() || !flushing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            Map<String, String> batch = new HashMap<>();
+
+            for (Map.Entry<String, String> entry : pendingHwids.entrySet()) {
+                if (pendingHwids.remove(entry.getKey(), entry.getValue())) {
+                    batch.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            userDAO.updateHwids(batch);
+            writtenHwids.putAll(batch);
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    /**
+     * Checks the launcher user agent against WHITELISTED_LAUNCHERS_ONLY.
+     *
+     * @param sbrwUserAgent     the X-UserAgent header (SBRW launcher)
+     * @param electronUserAgent the User-Agent header (Electron launcher)
+     * @return {@code true} if the launcher is allowed
+     */
+    public boolean isLauncherAllowed(String sbrwUserAgent, String electronUserAgent) {
+        LauncherWhitelist current = getWhitelist();
+
+        if (current.raw == null) {
+            return true;
+        }
+
+        try {
+            if (sbrwUserAgent != null) {
+                return compareVersions(parseVersion(sbrwUserAgent.split(" ")[1]), current.sbrw) >= 0;
+            } else if (electronUserAgent != null) {
+                return compareVersions(parseVersion(electronUserAgent.split("/")[1]), current.electron) >= 0;
+            }
+        } catch (RuntimeException e) {
+            return false;
+        }
+
+        return false;
+    }
+
+    private LauncherWhitelist getWhitelist() {
+        LauncherWhitelist current = this.whitelist;
+        long snapshotVersion = parameterBO.getSnapshotVersion();
+
+        if (current == null || current.snapshotVersion != snapshotVersion) {
+            String raw = parameterBO.getStrParam("WHITELISTED_LAUNCHERS_ONLY", null);
+
+            if (current != null && Objects.equals(current.raw, raw)) {
+                current = new LauncherWhitelist(snapshotVersion, current.raw, current.sbrw, current.electron);
+            } else if (raw == null) {
+                current = new LauncherWhitelist(snapshotVersion, null, null, null);
+            } else {
+                JSONObject json = new JSONObject(raw);
+                current = new LauncherWhitelist(snapshotVersion, raw, parseVersion(json.getString("sbrw")),
+                        parseVersion(json.getString("electron")));
+            }
+
+            this.whitelist = current;
+        }
+
+        return current;
+    }
+
+    private static int[] parseVersion(String version) {
+        String[] components = version.split("\\.");
+        int[] parsed = new int[components.length];
+
+        for (int i = 0; i < components.length; i++) {
+            parsed[i] = Integer.parseInt(components[i]);
+        }
+
+        return parsed;
+    }
+
+    private static int compareVersions(int[] v1, int[] v2) {
+        int length = Math.min(v1.length, v2.length);
+        for (int i = 0; i < length; i++) {
+            int result = Integer.compare(v1[i], v2[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(v1.length, v2.length);
+    }
+
+    private static class LauncherWhitelist {
+        private final long snapshotVersion;
+        private final String raw;
+        private final int[] sbrw;
+        private final int[] electron;
+
+        private LauncherWhitelist(long snapshotVersion, String raw, int[] sbrw, int[] electron) {
+            this.snapshotVersion = snapshotVersion;
+            this.raw = raw;
+            this.sbrw = sbrw;
+            this.electron = electron;
+        }
+    }
+}
\ No newline at end of file
@@ -6,9 +6,9 @@
 
 package com.soapboxrace.core.bo;
 
+import com.soapboxrace.core.bo.util.LobbyState;
 import com.soapboxrace.core.dao.EventDAO;
 import com.soapboxrace.core.dao.LobbyDAO;
-import com.soapboxrace.core.dao.LobbyEntrantDAO;
 import com.soapboxrace.core.dao.PersonaDAO;
 import com.soapboxrace.core.engine.EngineException;
 import com.soapboxrace.core.engine.EngineExceptionCode;
@@ -22,8 +22,8 @@ import com.soapboxrace.jaxb.http.LobbyInfo;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 
 @Stateless
 public class LobbyBO {
@@ -43,7 +43,7 @@ public class LobbyBO {
     private LobbyDAO lobbyDao;
 
     @EJB
-    private LobbyEntrantDAO lobbyEntrantDao;
+    private LobbyRegistryBO lobbyRegistryBO;
 
     @EJB
     private OpenFireRestApiCli openFireRestApiCli;
@@ -55,12 +55,12 @@ public class LobbyBO {
     private LobbyMessagingBO lobbyMessagingBO;
 
     public void joinFastLobby(Long personaId, int carClassHash) {
-        List<LobbyEntity> lobbys = lobbyDao.findAllOpen(carClassHash);
+        List<LobbyState> lobbys = lobbyRegistryBO.findAllOpen(carClassHash);
+        PersonaEntity personaEntity = personaDao.findById(personaId);
 
         if (lobbys.isEmpty()) {
-            matchmakingBO.addPlayerToQueue(personaId, carClassHash);
+            matchmakingBO.addPlayerToQueue(personaId, carClassHash, personaEntity.getLevel());
         } else {
-            PersonaEntity personaEntity = personaDao.findById(personaId);
             joinLobby(personaEntity, lobbys, true);
         }
     }
@@ -81,7 +81,7 @@ public class LobbyBO {
             }
         }
 
-        List<LobbyEntity> lobbys = lobbyDao.findByEventStarted(eventId);
+        List<LobbyState> lobbys = lobbyRegistryBO.findByEventStarted(eventId);
         if (lobbys.size() == 0) {
             createLobby(personaEntity.getPersonaId(), eventId, eventEntity.getCarClassHash(), false);
         } else {
@@ -93,17 +93,14 @@ public class LobbyBO {
         List<Long> personaIdList = openFireRestApiCli.getAllPersonaByGroup(creatorPersonaId);
         EventEntity eventEntity = eventDao.findById(eventId);
         if (!personaIdList.isEmpty()) {
-            createLobby(creatorPersonaId, eventId, eventEntity.getCarClassHash(), true);
+            LobbyEntity lobbyEntity = createLobby(creatorPersonaId, eventId, eventEntity.getCarClassHash(), true);
 
-            LobbyEntity lobbyEntity = lobbyDao.findByEventAndPersona(eventId, creatorPersonaId);
-            if (lobbyEntity != null) {
-                for (Long recipientPersonaId : personaIdList) {
-                    if (!recipientPersonaId.equals(creatorPersonaId)) {
-                        PersonaEntity recipientPersonaEntity = personaDao.findById(recipientPersonaId);
+            LobbyState lobbyState = lobbyRegistryBO.get(lobbyEntity.getId());
+            if (lobbyState != null) {
+                List<Long> recipientPersonaIds = new ArrayList<>(personaIdList);
+                recipientPersonaIds.removeIf(creatorPersonaId::equals);
 
-                        lobbyMessagingBO.sendLobbyInvitation(lobbyEntity, recipientPersonaEntity, eventEntity.getLobbyCountdownTime());
-                    }
-                }
+                lobbyMessagingBO.broadcastLobbyInvitation(lobbyState, recipientPersonaIds, eventEntity.getLobbyCountdownTime());
             }
         }
     }
@@ -118,23 +115,18 @@ public class LobbyBO {
         lobbyEntity.setStartedTime(LocalDateTime.now());
 
         lobbyDao.insert(lobbyEntity);
+        LobbyState lobbyState = lobbyRegistryBO.register(lobbyEntity);
 
         PersonaEntity personaEntity = personaDao.findById(personaId);
-        lobbyMessagingBO.sendLobbyInvitation(lobbyEntity, personaEntity, 10000);
+        lobbyMessagingBO.sendLobbyInvitation(lobbyState, personaEntity, 10000);
 
         if (!isPrivate) {
-            for (int i = 1; i <= lobbyEntity.getEvent().getMaxPlayers() - 1; i++) {
-                if (lobbyEntity.getEntrants().size() >= lobbyEntity.getEvent().getMaxPlayers()) break;
-
-                Long queuePersonaId = matchmakingBO.getPlayerFromQueue(carClassHash);
+            int freeSeats = lobbyState.getMaxPlayers() - 1;
+            List<Long> queuePersonaIds = matchmakingBO.getPlayersFromQueue(carClassHash, personaEntity.getLevel(),
+                    eventId, freeSeats);
+            queuePersonaIds.removeIf(personaId::equals);
 
-                if (!queuePersonaId.equals(-1L) && !matchmakingBO.isEventIgnored(queuePersonaId, eventId)) {
-                    if (lobbyEntity.getEntrants().size() < lobbyEntity.getEvent().getMaxPlayers()) {
-                        PersonaEntity queuePersona = personaDao.findById(queuePersonaId);
-                        lobbyMessagingBO.sendLobbyInvitation(lobbyEntity, queuePersona, eventEntity.getLobbyCountdownTime());
-                    }
-                }
-            }
+            lobbyMessagingBO.broadcastLobbyInvitation(lobbyState, queuePersonaIds, eventEntity.getLobbyCountdownTime());
         }
 
         lobbyCountdownBO.scheduleLobbyStart(lobbyEntity);
@@ -142,61 +134,41 @@ public class LobbyBO {
         return lobbyEntity;
     }
 
-    private void joinLobby(PersonaEntity personaEntity, List<LobbyEntity> lobbys) {
+    private void joinLobby(PersonaEntity personaEntity, List<LobbyState> lobbys) {
         joinLobby(personaEntity, lobbys, false);
     }
 
-    private void joinLobby(PersonaEntity personaEntity, List<LobbyEntity> lobbys, boolean checkIgnoredEvents) {
-        LobbyEntity lobbyEntity = null;
-        for (LobbyEntity lobbyEntityTmp : lobbys) {
-            if (lobbyEntityTmp.getIsPrivate()) continue;
-            EventEntity event = lobbyEntityTmp.getEvent();
-            if (checkIgnoredEvents && matchmakingBO.isEventIgnored(personaEntity.getPersonaId(), event.getId()))
+    private void joinLobby(PersonaEntity personaEntity, List<LobbyState> lobbys, boolean checkIgnoredEvents) {
+        LobbyState lobbyState = null;
+        for (LobbyState lobbyStateTmp : lobbys) {
+            if (lobbyStateTmp.getIsPrivate()) continue;
+            if (checkIgnoredEvents && matchmakingBO.isEventIgnored(personaEntity.getPersonaId(), lobbyStateTmp.getEventId()))
                 continue;
-            int maxEntrants = event.getMaxPlayers();
-            List<LobbyEntrantEntity> lobbyEntrants = lobbyEntityTmp.getEntrants();
-            int entrantsSize = lobbyEntrants.size();
-            if (entrantsSize < maxEntrants) {
-                lobbyEntity = lobbyEntityTmp;
-                if (!isPersonaInside(personaEntity.getPersonaId(), lobbyEntrants)) {
-                    LobbyEntrantEntity lobbyEntrantEntity = new LobbyEntrantEntity();
-                    lobbyEntrantEntity.setPersona(personaEntity);
-                    lobbyEntrantEntity.setLobby(lobbyEntity);
-                    lobbyEntrants.add(lobbyEntrantEntity);
-                }
+            if (!lobbyStateTmp.isFull()) {
+                lobbyState = lobbyStateTmp;
                 break;
             }
         }
-        if (lobbyEntity != null) {
-            lobbyMessagingBO.sendLobbyInvitation(lobbyEntity, personaEntity, 10000);
+        if (lobbyState != null) {
+            lobbyMessagingBO.sendLobbyInvitation(lobbyState, personaEntity, 10000);
         }
     }
 
-    private boolean isPersonaInside(Long personaId, List<LobbyEntrantEntity> lobbyEntrants) {
-        for (LobbyEntrantEntity lobbyEntrantEntity : lobbyEntrants) {
-            Long entrantPersonaId = lobbyEntrantEntity.getPersona().getPersonaId();
-            if (Objects.equals(entrantPersonaId, personaId)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public void declineinvite(Long activePersonaId, Long lobbyInviteId) {
-        LobbyEntity lobbyEntity = lobbyDao.findById(lobbyInviteId);
+        LobbyState lobbyState = lobbyRegistryBO.get(lobbyInviteId);
 
-        if (lobbyEntity == null) {
+        if (lobbyState == null) {
             return;
         }
 
-        matchmakingBO.ignoreEvent(activePersonaId, lobbyEntity.getEvent().getId());
+        matchmakingBO.ignoreEvent(activePersonaId, lobbyState.getEventId());
     }
 
     public LobbyInfo acceptinvite(Long personaId, Long lobbyInviteId) {
-        LobbyEntity lobbyEntity = lobbyDao.findById(lobbyInviteId);
+        LobbyState lobbyState = lobbyRegistryBO.get(lobbyInviteId);
         PersonaEntity personaEntity = personaDao.findById(personaId);
 
-        if (lobbyEntity == null) {
+        if (lobbyState == null) {
             throw new EngineException(EngineExceptionCode.GameDoesNotExist, false);
         }
 
@@ -204,55 +176,36 @@ public class LobbyBO {
             throw new EngineException(EngineExceptionCode.PersonaNotFound, false);
         }
 
-        int eventId = lobbyEntity.getEvent().getId();
+        int eventId = lobbyState.getEventId();
 
         LobbyCountdown lobbyCountdown = new LobbyCountdown();
         lobbyCountdown.setLobbyId(lobbyInviteId);
         lobbyCountdown.setEventId(eventId);
-        lobbyCountdown.setLobbyCountdownInMilliseconds(lobbyEntity.getLobbyCountdownInMilliseconds(lobbyEntity.getEvent().getLobbyCountdownTime()));
+        lobbyCountdown.setLobbyCountdownInMilliseconds(lobbyState.getLobbyCountdownInMilliseconds());
         lobbyCountdown.setLobbyStuckDurationInMilliseconds(10000);
 
         ArrayOfLobbyEntrantInfo arrayOfLobbyEntrantInfo = new ArrayOfLobbyEntrantInfo();
         List<LobbyEntrantInfo> lobbyEntrantInfo = arrayOfLobbyEntrantInfo.getLobbyEntrantInfo();
 
-        List<LobbyEntrantEntity> entrants = lobbyEntity.getEntrants();
-
-        if (entrants.size() >= lobbyEntity.getEvent().getMaxPlayers()) {
+        if (lobbyCountdown.getLobbyCountdownInMilliseconds() <= 6000) {
             throw new EngineException(EngineExceptionCode.GameLocked, false);
         }
 
-        if (lobbyCountdown.getLobbyCountdownInMilliseconds() <= 6000) {
+        // the seat is taken atomically, so concurrent accepts can never overfill the lobby
+        if (!lobbyState.hasEntrant(personaId) && lobbyRegistryBO.addEntrant(lobbyState, personaEntity) == null
+                && !lobbyState.hasEntrant(personaId)) {
             throw new EngineException(EngineExceptionCode.GameLocked, false);
         }
 
         matchmakingBO.removePlayerFromQueue(personaId);
-        for (LobbyEntrantEntity lobbyEntrantEntity : entrants) {
-            if (!Objects.equals(personaEntity.getPersonaId(), lobbyEntrantEntity.getPersona().getPersonaId())) {
-                lobbyMessagingBO.sendJoinMessage(lobbyEntity, personaEntity, lobbyEntrantEntity.getPersona());
-            }
-        }
-        boolean personaInside = false;
-        for (LobbyEntrantEntity lobbyEntrantEntity : entrants) {
+        List<Long> otherEntrantIds = lobbyState.getEntrantPersonaIds();
+        otherEntrantIds.removeIf(personaId::equals);
+        lobbyMessagingBO.broadcastJoinMessage(lobbyState, personaEntity, otherEntrantIds);
+        for (LobbyState.Entrant entrant : lobbyState.getEntrants()) {
             LobbyEntrantInfo LobbyEntrantInfo = new LobbyEntrantInfo();
-            LobbyEntrantInfo.setPersonaId(lobbyEntrantEntity.getPersona().getPersonaId());
-            LobbyEntrantInfo.setLevel(lobbyEntrantEntity.getPersona().getLevel());
-            LobbyEntrantInfo.setGridIndex(lobbyEntrantEntity.getGridIndex());
-            lobbyEntrantInfo.add(LobbyEntrantInfo);
-            if (lobbyEntrantEntity.getPersona().getPersonaId().equals(personaId)) {
-                personaInside = true;
-            }
-        }
-        if (!personaInside) {
-            LobbyEntrantEntity lobbyEntrantEntity = new LobbyEntrantEntity();
-            lobbyEntrantEntity.setPersona(personaEntity);
-            lobbyEntrantEntity.setLobby(lobbyEntity);
-            lobbyEntrantEntity.setGridIndex(entrants.size());
-            lobbyEntity.getEntrants().add(lobbyEntrantEntity);
-            lobbyDao.update(lobbyEntity);
-            LobbyEntrantInfo LobbyEntrantInfo = new LobbyEntrantInfo();
-            LobbyEntrantInfo.setPersonaId(lobbyEntrantEntity.getPersona().getPersonaId());
-            LobbyEntrantInfo.setLevel(lobbyEntrantEntity.getPersona().getLevel());
-            LobbyEntrantInfo.setGridIndex(lobbyEntrantEntity.getGridIndex());
+            LobbyEntrantInfo.setPersonaId(entrant.getPersonaId());
+            LobbyEntrantInfo.setLevel(entrant.getLevel());
+            LobbyEntrantInfo.setGridIndex(entrant.getGridIndex());
             lobbyEntrantInfo.add(LobbyEntrantInfo);
         }
 
@@ -267,10 +220,10 @@ public class LobbyBO {
     }
 
     public void removeEntrantFromLobby(Long personaId, Long lobbyId) {
-        LobbyEntity lobbyEntity = lobbyDao.findById(lobbyId);
+        LobbyState lobbyState = lobbyRegistryBO.get(lobbyId);
         PersonaEntity personaEntity = personaDao.findById(personaId);
 
-        if (lobbyEntity == null) {
+        if (lobbyState == null) {
             throw new EngineException(EngineExceptionCode.GameDoesNotExist, false);
         }
 
@@ -278,12 +231,7 @@ public class LobbyBO {
             throw new EngineException(EngineExceptionCode.PersonaNotFound, false);
         }
 
-        lobbyEntrantDao.deleteByPersonaAndLobby(personaEntity, lobbyEntity);
-        List<LobbyEntrantEntity> listLobbyEntrantEntity = lobbyEntity.getEntrants();
-        for (LobbyEntrantEntity entity : listLobbyEntrantEntity) {
-            if (!Objects.equals(entity.getPersona().getPersonaId(), personaId)) {
-                lobbyMessagingBO.sendLeaveMessage(lobbyEntity, personaEntity, entity.getPersona());
-            }
-        }
+        lobbyRegistryBO.removeEntrant(lobbyState, personaId);
+        lobbyMessagingBO.broadcastLeaveMessage(lobbyState, personaEntity, lobbyState.getEntrantPersonaIds());
     }
 }
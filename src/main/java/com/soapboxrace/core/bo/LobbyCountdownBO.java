@@ -1,11 +1,13 @@
 package com.soapboxrace.core.bo;
 
+import com.soapboxrace.core.bo.util.HashedWheelTimer;
+import com.soapboxrace.core.bo.util.LobbyState;
+import com.soapboxrace.core.bo.util.RelayCryptoTicketGenerator;
+import com.soapboxrace.core.dao.EventDAO;
 import com.soapboxrace.core.dao.EventSessionDAO;
 import com.soapboxrace.core.dao.LobbyDAO;
-import com.soapboxrace.core.dao.TokenSessionDAO;
 import com.soapboxrace.core.jpa.EventSessionEntity;
 import com.soapboxrace.core.jpa.LobbyEntity;
-import com.soapboxrace.core.jpa.LobbyEntrantEntity;
 import com.soapboxrace.jaxb.http.Entrants;
 import com.soapboxrace.jaxb.http.LobbyEntrantInfo;
 import com.soapboxrace.jaxb.http.LobbyEntrantState;
@@ -13,25 +15,45 @@ import com.soapboxrace.jaxb.xmpp.*;
 
 import javax.annotation.Resource;
 import javax.ejb.*;
-import java.nio.ByteBuffer;
-import java.util.Base64;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Launches lobbies once their countdown runs out. Countdowns run on the {@link TimerWheelBO}; the launch itself
+ * runs as a business method of this bean, so it gets its own transaction. Entrants are read from the
+ * {@link LobbyRegistryBO}, and the lobby is dropped from it once the countdown has run out.
+ * <p>
+ * The relay crypto tickets of all entrants are assigned with a single call to {@link TokenSessionBO}.
+ * The time from the countdown firing to the relay messages being sent is tracked for the TimerStatus endpoint.
+ */
 @Singleton
 @Lock(LockType.READ)
 public class LobbyCountdownBO {
     @Resource
-    private TimerService timerService;
+    private SessionContext sessionContext;
+
+    @EJB
+    private TimerWheelBO timerWheelBO;
 
     @EJB
     private LobbyDAO lobbyDAO;
 
+    @EJB
+    private EventDAO eventDAO;
+
+    @EJB
+    private LobbyRegistryBO lobbyRegistryBO;
+
     @EJB
     private EventSessionDAO eventSessionDAO;
 
     @EJB
-    private TokenSessionDAO tokenDAO;
+    private TokenSessionBO tokenSessionBO;
 
     @EJB
     private ParameterBO parameterBO;
@@ -39,49 +61,60 @@ public class LobbyCountdownBO {
     @EJB
     private LobbyMessagingBO lobbyMessagingBO;
 
+    private final Map<Long, HashedWheelTimer.Timeout> countdowns = new ConcurrentHashMap<>();
+
+    private final AtomicLong launchCount = new AtomicLong();
+
+    private final AtomicLong totalLaunchNanos = new AtomicLong();
+
+    private final AtomicLong maxLaunchNanos = new AtomicLong();
+
     public void scheduleLobbyStart(LobbyEntity lobbyEntity) {
-        TimerConfig timerConfig = new TimerConfig();
-        timerConfig.setInfo(lobbyEntity.getId());
-        timerService.createSingleActionTimer(lobbyEntity.getEvent().getLobbyCountdownTime(), timerConfig);
+        Long lobbyId = lobbyEntity.getId();
+        LobbyCountdownBO lobbyCountdownBO = sessionContext.getBusinessObject(LobbyCountdownBO.class);
+        HashedWheelTimer.Timeout timeout = timerWheelBO.schedule(() -> lobbyCountdownBO.onTimeout(lobbyId),
+                lobbyEntity.getEvent().getLobbyCountdownTime());
+        HashedWheelTimer.Timeout previous = countdowns.put(lobbyId, timeout);
+
+        if (previous != null) {
+            previous.cancel();
+        }
     }
 
-    @Timeout
-    public void onTimeout(Timer timer) {
-        Long lobbyId = (Long) timer.getInfo();
-        LobbyEntity lobbyEntity = lobbyDAO.findById(lobbyId);
-        List<LobbyEntrantEntity> entrants = lobbyEntity.getEntrants();
+    public void onTimeout(Long lobbyId) {
+        countdowns.computeIfPresent(lobbyId, (key, timeout) -> timeout.isExpired() ? null : timeout);
+
+        LobbyState lobbyState = lobbyRegistryBO.get(lobbyId);
+        if (lobbyState == null) {
+            return;
+        }
+        lobbyRegistryBO.remove(lobbyId);
+        List<LobbyState.Entrant> entrants = new ArrayList<>(lobbyState.close());
         if (entrants.size() < 2) {
             return;
         }
-        entrants.sort(Comparator.<LobbyEntrantEntity>comparingLong(e -> e.getPersona().getPersonaId()).reversed());
+        long launchStart = System.nanoTime();
+        entrants.sort(Comparator.comparing(LobbyState.Entrant::getPersonaId).reversed());
         XMPP_LobbyLaunchedType lobbyLaunched = new XMPP_LobbyLaunchedType();
         Entrants entrantsType = new Entrants();
         List<LobbyEntrantInfo> lobbyEntrantInfo = entrantsType.getLobbyEntrantInfo();
         XMPP_CryptoTicketsType xMPP_CryptoTicketsType = new XMPP_CryptoTicketsType();
         List<XMPP_P2PCryptoTicketType> p2pCryptoTicket = xMPP_CryptoTicketsType.getP2PCryptoTicket();
         int i = 0;
-        byte numOfRacers = (byte) entrants.size();
         EventSessionEntity eventSessionEntity = new EventSessionEntity();
         eventSessionEntity.setStarted(System.currentTimeMillis());
-        eventSessionEntity.setEvent(lobbyEntity.getEvent());
-        eventSessionEntity.setLobby(lobbyEntity);
+        eventSessionEntity.setEvent(eventDAO.findById(lobbyState.getEventId()));
+        eventSessionEntity.setLobby(lobbyDAO.getReference(lobbyId));
         eventSessionDAO.insert(eventSessionEntity);
         String udpRaceIp = parameterBO.getStrParam("UDP_RACE_IP");
-        for (LobbyEntrantEntity lobbyEntrantEntity : entrants) {
+        RelayCryptoTicketGenerator ticketGenerator = new RelayCryptoTicketGenerator(eventSessionEntity.getId(),
+                entrants.size());
+        Map<Long, String> relayCryptoTickets = new HashMap<>();
+        for (LobbyState.Entrant entrant : entrants) {
             // eventDataEntity.setIsSinglePlayer(false);
-            Long personaId = lobbyEntrantEntity.getPersona().getPersonaId();
+            Long personaId = entrant.getPersonaId();
             // eventDataEntity.setPersonaId(personaId);
-            byte gridIndex = (byte) i;
-            byte[] helloPacket = {10, 11, 12, 13};
-            ByteBuffer byteBuffer = ByteBuffer.allocate(48);
-            byteBuffer.put(gridIndex);
-            byteBuffer.put(helloPacket);
-            byteBuffer.putInt(eventSessionEntity.getId().intValue());
-            byteBuffer.put(numOfRacers);
-            byteBuffer.putInt(personaId.intValue());
-            byte[] cryptoTicketBytes = byteBuffer.array();
-            String relayCrypotTicket = Base64.getEncoder().encodeToString(cryptoTicketBytes);
-            tokenDAO.updateRelayCrytoTicketByPersonaId(personaId, relayCrypotTicket);
+            relayCryptoTickets.put(personaId, ticketGenerator.generate(i, personaId));
 
             XMPP_P2PCryptoTicketType p2pCryptoTicketType = new XMPP_P2PCryptoTicketType();
             p2pCryptoTicketType.setPersonaId(personaId);
@@ -90,13 +123,14 @@ public class LobbyCountdownBO {
 
             LobbyEntrantInfo lobbyEntrantInfoType = new LobbyEntrantInfo();
             lobbyEntrantInfoType.setPersonaId(personaId);
-            lobbyEntrantInfoType.setLevel(lobbyEntrantEntity.getPersona().getLevel());
+            lobbyEntrantInfoType.setLevel(entrant.getLevel());
             lobbyEntrantInfoType.setHeat(1);
             lobbyEntrantInfoType.setGridIndex(i++);
             lobbyEntrantInfoType.setState(LobbyEntrantState.UNKNOWN);
 
             lobbyEntrantInfo.add(lobbyEntrantInfoType);
         }
+        tokenSessionBO.updateRelayCryptoTickets(relayCryptoTickets);
         XMPP_EventSessionType xMPP_EventSessionType = new XMPP_EventSessionType();
         ChallengeType challengeType = new ChallengeType();
         challengeType.setChallengeId("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
@@ -104,11 +138,11 @@ public class LobbyCountdownBO {
         challengeType.setLeftSize(14);
         challengeType.setRightSize(50);
 
-        xMPP_EventSessionType.setEventId(lobbyEntity.getEvent().getId());
+        xMPP_EventSessionType.setEventId(lobbyState.getEventId());
         xMPP_EventSessionType.setChallenge(challengeType);
         xMPP_EventSessionType.setSessionId(eventSessionEntity.getId());
         lobbyLaunched.setNewRelayServer(true);
-        lobbyLaunched.setLobbyId(lobbyEntity.getId());
+        lobbyLaunched.setLobbyId(lobbyId);
         lobbyLaunched.setUdpRelayHost(udpRaceIp);
         lobbyLaunched.setUdpRelayPort(parameterBO.getIntParam("UDP_RACE_PORT"));
 
@@ -117,5 +151,26 @@ public class LobbyCountdownBO {
         lobbyLaunched.setEventSession(xMPP_EventSessionType);
 
         lobbyMessagingBO.sendRelay(lobbyLaunched, xMPP_CryptoTicketsType);
+
+        long launchNanos = System.nanoTime() - launchStart;
+        launchCount.incrementAndGet();
+        totalLaunchNanos.addAndGet(launchNanos);
+        maxLaunchNanos.accumulateAndGet(launchNanos, Math::max);
+    }
+
+    public long getLaunchCount() {
+        return launchCount.get();
+    }
+
+    /**
+     * @return the average time from the countdown firing to the relay messages being sent, in milliseconds
+     */
+    public double getAverageLaunchMillis() {
+        long count = launchCount.get();
+        return count == 0 ? 0 : totalLaunchNanos.get() / (count * 1_000_000.0);
+    }
+
+    public double getMaxLaunchMillis() {
+        return maxLaunchNanos.get() / 1_000_000.0;
     }
 }
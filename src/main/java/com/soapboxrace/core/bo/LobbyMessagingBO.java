@@ -1,8 +1,9 @@
 package com.soapboxrace.core.bo;
 
-import com.soapboxrace.core.jpa.LobbyEntity;
+import com.soapboxrace.core.bo.util.LobbyState;
 import com.soapboxrace.core.jpa.PersonaEntity;
 import com.soapboxrace.core.xmpp.OpenFireSoapBoxCli;
+import com.soapboxrace.core.xmpp.XmppLobbyLaunchedTemplate;
 import com.soapboxrace.jaxb.http.LobbyEntrantAdded;
 import com.soapboxrace.jaxb.http.LobbyEntrantInfo;
 import com.soapboxrace.jaxb.http.LobbyEntrantRemoved;
@@ -10,7 +11,11 @@ import com.soapboxrace.jaxb.xmpp.*;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Sends XMPP messages related to lobbies.
@@ -26,92 +31,157 @@ public class LobbyMessagingBO {
      * Prepares and sends a new {@link com.soapboxrace.jaxb.http.LobbyEntrantAdded} message
      * to the given recipient {@link com.soapboxrace.core.jpa.PersonaEntity}.
      *
-     * @param lobbyEntity      The {@link LobbyEntity} attached to the message.
+     * @param lobbyState       The {@link LobbyState} attached to the message.
      * @param sourcePersona    The {@link PersonaEntity} attached to the message.
      * @param recipientPersona The {@link PersonaEntity} receiving the message.
      * @throws IllegalArgumentException if the source and recipient persona IDs are the same
      */
-    public void sendJoinMessage(LobbyEntity lobbyEntity, PersonaEntity sourcePersona, PersonaEntity recipientPersona) {
+    public void sendJoinMessage(LobbyState lobbyState, PersonaEntity sourcePersona, PersonaEntity recipientPersona) {
         if (sourcePersona.getPersonaId().equals(recipientPersona.getPersonaId())) {
             throw new IllegalArgumentException("Source and recipient personas cannot be the same!");
         }
 
-        LobbyEntrantAdded lobbyEntrantAdded = new LobbyEntrantAdded();
-        lobbyEntrantAdded.setHeat(1);
-        lobbyEntrantAdded.setLevel(sourcePersona.getLevel());
-        lobbyEntrantAdded.setPersonaId(sourcePersona.getPersonaId());
-        lobbyEntrantAdded.setLobbyId(lobbyEntity.getId());
+        openFireSoapBoxCli.send(buildJoinMessage(lobbyState, sourcePersona), recipientPersona.getPersonaId());
+    }
 
-        XMPP_ResponseTypeEntrantAdded response = new XMPP_ResponseTypeEntrantAdded();
-        response.setLobbyInvite(lobbyEntrantAdded);
+    /**
+     * Prepares a single {@link com.soapboxrace.jaxb.http.LobbyEntrantAdded} message
+     * and sends it to all of the given recipients.
+     *
+     * @param lobbyState          The {@link LobbyState} attached to the message.
+     * @param sourcePersona       The {@link PersonaEntity} attached to the message.
+     * @param recipientPersonaIds The IDs of the personas receiving the message.
+     * @throws IllegalArgumentException if the source persona is one of the recipients
+     */
+    public void broadcastJoinMessage(LobbyState lobbyState, PersonaEntity sourcePersona, Collection<Long> recipientPersonaIds) {
+        if (recipientPersonaIds.contains(sourcePersona.getPersonaId())) {
+            throw new IllegalArgumentException("Source and recipient personas cannot be the same!");
+        }
 
-        openFireSoapBoxCli.send(response, recipientPersona.getPersonaId());
+        openFireSoapBoxCli.broadcast(buildJoinMessage(lobbyState, sourcePersona), recipientPersonaIds);
     }
 
     /**
      * Prepares and sends a new {@link com.soapboxrace.jaxb.http.LobbyEntrantRemoved} message
      * to the given recipient {@link com.soapboxrace.core.jpa.PersonaEntity}.
      *
-     * @param lobbyEntity      The {@link LobbyEntity} attached to the message.
+     * @param lobbyState       The {@link LobbyState} attached to the message.
      * @param sourcePersona    The {@link PersonaEntity} attached to the message.
      * @param recipientPersona The {@link PersonaEntity} receiving the message.
      * @throws IllegalArgumentException if the source and recipient persona IDs are the same
      */
-    public void sendLeaveMessage(LobbyEntity lobbyEntity, PersonaEntity sourcePersona, PersonaEntity recipientPersona) {
-        LobbyEntrantRemoved lobbyEntrantRemoved = new LobbyEntrantRemoved();
-        lobbyEntrantRemoved.setLobbyId(lobbyEntity.getId());
-        lobbyEntrantRemoved.setPersonaId(sourcePersona.getPersonaId());
-
-        XMPP_ResponseTypeEntrantRemoved response = new XMPP_ResponseTypeEntrantRemoved();
-        response.setLobbyEntrantRemoved(lobbyEntrantRemoved);
+    public void sendLeaveMessage(LobbyState lobbyState, PersonaEntity sourcePersona, PersonaEntity recipientPersona) {
+        openFireSoapBoxCli.send(buildLeaveMessage(lobbyState, sourcePersona), recipientPersona.getPersonaId());
+    }
 
-        openFireSoapBoxCli.send(response, recipientPersona.getPersonaId());
+    /**
+     * Prepares a single {@link com.soapboxrace.jaxb.http.LobbyEntrantRemoved} message
+     * and sends it to all of the given recipients.
+     *
+     * @param lobbyState          The {@link LobbyState} attached to the message.
+     * @param sourcePersona       The {@link PersonaEntity} attached to the message.
+     * @param recipientPersonaIds The IDs of the personas receiving the message.
+     */
+    public void broadcastLeaveMessage(LobbyState lobbyState, PersonaEntity sourcePersona, Collection<Long> recipientPersonaIds) {
+        openFireSoapBoxCli.broadcast(buildLeaveMessage(lobbyState, sourcePersona), recipientPersonaIds);
     }
 
     /**
      * Prepares and sends a new {@link com.soapboxrace.jaxb.xmpp.XMPP_LobbyInviteType} message
      * to the given recipient {@link com.soapboxrace.core.jpa.PersonaEntity}.
      *
-     * @param lobbyEntity      The {@link LobbyEntity} attached to the message.
+     * @param lobbyState       The {@link LobbyState} attached to the message.
      * @param recipientPersona The {@link PersonaEntity} receiving the message.
      * @param inviteLifetime   The lifetime of the invitation in milliseconds.
      */
-    public void sendLobbyInvitation(LobbyEntity lobbyEntity, PersonaEntity recipientPersona, long inviteLifetime) {
-        XMPP_LobbyInviteType lobbyInvite = new XMPP_LobbyInviteType();
-        lobbyInvite.setEventId(lobbyEntity.getEvent().getId());
-        lobbyInvite.setLobbyInviteId(lobbyEntity.getId());
+    public void sendLobbyInvitation(LobbyState lobbyState, PersonaEntity recipientPersona, long inviteLifetime) {
+        boolean ownInvite = lobbyState.getPersonaId().equals(recipientPersona.getPersonaId());
 
-        if (!lobbyEntity.getPersonaId().equals(recipientPersona.getPersonaId())) {
-            lobbyInvite.setInvitedByPersonaId(lobbyEntity.getPersonaId());
-            lobbyInvite.setInviteLifetimeInMilliseconds(inviteLifetime);
-            lobbyInvite.setPrivate(lobbyEntity.getIsPrivate());
-        }
+        openFireSoapBoxCli.send(buildLobbyInvitation(lobbyState, inviteLifetime, ownInvite), recipientPersona.getPersonaId());
+    }
 
-        XMPP_ResponseTypeLobbyInvite response = new XMPP_ResponseTypeLobbyInvite();
-        response.setLobbyInvite(lobbyInvite);
+    /**
+     * Prepares a {@link com.soapboxrace.jaxb.xmpp.XMPP_LobbyInviteType} message once
+     * and sends it to all of the given recipients. The lobby owner, if present, gets its own variant.
+     *
+     * @param lobbyState          The {@link LobbyState} attached to the message.
+     * @param recipientPersonaIds The IDs of the personas receiving the message.
+     * @param inviteLifetime      The lifetime of the invitation in milliseconds.
+     */
+    public void broadcastLobbyInvitation(LobbyState lobbyState, Collection<Long> recipientPersonaIds, long inviteLifetime) {
+        List<Long> invitedPersonaIds = new ArrayList<>(recipientPersonaIds.size());
 
-        openFireSoapBoxCli.send(response, recipientPersona.getPersonaId());
+        for (Long recipientPersonaId : recipientPersonaIds) {
+            if (lobbyState.getPersonaId().equals(recipientPersonaId)) {
+                openFireSoapBoxCli.send(buildLobbyInvitation(lobbyState, inviteLifetime, true), recipientPersonaId);
+            } else {
+                invitedPersonaIds.add(recipientPersonaId);
+            }
+        }
+
+        openFireSoapBoxCli.broadcast(buildLobbyInvitation(lobbyState, inviteLifetime, false), invitedPersonaIds);
     }
 
+    /**
+     * Sends a {@link com.soapboxrace.jaxb.xmpp.XMPP_LobbyLaunchedType} message to every entrant of the launched lobby.
+     * Each entrant receives the crypto tickets of all other entrants. The shared part of the message is
+     * marshalled once per relay host rather than once per entrant.
+     *
+     * @param lobbyLaunched          The launch message, with its entrants set.
+     * @param xMPP_CryptoTicketsType The crypto tickets of all entrants.
+     */
     public void sendRelay(XMPP_LobbyLaunchedType lobbyLaunched, XMPP_CryptoTicketsType xMPP_CryptoTicketsType) {
+        lobbyLaunched.setCryptoTickets(xMPP_CryptoTicketsType);
+
+        Map<String, XmppLobbyLaunchedTemplate> templates = new HashMap<>();
         List<LobbyEntrantInfo> lobbyEntrantInfo = lobbyLaunched.getEntrants().getLobbyEntrantInfo();
         for (LobbyEntrantInfo lobbyEntrantInfoType : lobbyEntrantInfo) {
             long personaId = lobbyEntrantInfoType.getPersonaId();
-            XMPP_CryptoTicketsType cryptoTicketsTypeTmp = new XMPP_CryptoTicketsType();
-            List<XMPP_P2PCryptoTicketType> p2pCryptoTicket = xMPP_CryptoTicketsType.getP2PCryptoTicket();
-            for (XMPP_P2PCryptoTicketType p2pCryptoTicketType : p2pCryptoTicket) {
-                if (personaId != p2pCryptoTicketType.getPersonaId()) {
-                    cryptoTicketsTypeTmp.getP2PCryptoTicket().add(p2pCryptoTicketType);
-                }
-            }
             String udpRaceHostIp = lobbyEntrantInfoType.getUdpRaceHostIp();
             if (udpRaceHostIp != null) {
                 lobbyLaunched.setUdpRelayHost(udpRaceHostIp);
             }
-            lobbyLaunched.setCryptoTickets(cryptoTicketsTypeTmp);
-            XMPP_ResponseTypeLobbyLaunched responseType = new XMPP_ResponseTypeLobbyLaunched();
-            responseType.setLobbyInvite(lobbyLaunched);
-            openFireSoapBoxCli.send(responseType, personaId);
+            XmppLobbyLaunchedTemplate template = templates.computeIfAbsent(lobbyLaunched.getUdpRelayHost(),
+                    host -> new XmppLobbyLaunchedTemplate(lobbyLaunched));
+            openFireSoapBoxCli.send(template.render(personaId), personaId);
         }
     }
-}
+
+    private XMPP_ResponseTypeEntrantAdded buildJoinMessage(LobbyState lobbyState, PersonaEntity sourcePersona) {
+        LobbyEntrantAdded lobbyEntrantAdded = new LobbyEntrantAdded();
+        lobbyEntrantAdded.setHeat(1);
+        lobbyEntrantAdded.setLevel(sourcePersona.getLevel());
+        lobbyEntrantAdded.setPersonaId(sourcePersona.getPersonaId());
+        lobbyEntrantAdded.setLobbyId(lobbyState.getId());
+
+        XMPP_ResponseTypeEntrantAdded response = new XMPP_ResponseTypeEntrantAdded();
+        response.setLobbyInvite(lobbyEntrantAdded);
+        return response;
+    }
+
+    private XMPP_ResponseTypeEntrantRemoved buildLeaveMessage(LobbyState lobbyState, PersonaEntity sourcePersona) {
+        LobbyEntrantRemoved lobbyEntrantRemoved = new LobbyEntrantRemoved();
+        lobbyEntrantRemoved.setLobbyId(lobbyState.getId());
+        lobbyEntrantRemoved.setPersonaId(sourcePersona.getPersonaId());
+
+        XMPP_ResponseTypeEntrantRemoved response = new XMPP_ResponseTypeEntrantRemoved();
+        response.setLobbyEntrantRemoved(lobbyEntrantRemoved);
+        return response;
+    }
+
+    private XMPP_ResponseTypeLobbyInvite buildLobbyInvitation(LobbyState lobbyState, long inviteLifetime, boolean ownInvite) {
+        XMPP_LobbyInviteType lobbyInvite = new XMPP_LobbyInviteType();
+        lobbyInvite.setEventId(lobbyState.getEventId());
+        lobbyInvite.setLobbyInviteId(lobbyState.getId());
+
+        if (!ownInvite) {
+            lobbyInvite.setInvitedByPersonaId(lobbyState.getPersonaId());
+            lobbyInvite.setInviteLifetimeInMilliseconds(inviteLifetime);
+            lobbyInvite.setPrivate(lobbyState.getIsPrivate());
+        }
+
+        XMPP_ResponseTypeLobbyInvite response = new XMPP_ResponseTypeLobbyInvite();
+        response.setLobbyInvite(lobbyInvite);
+        return response;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.soapboxrace.core.bo.util.TokenSessionStore;
+import com.soapboxrace.core.dao.LobbyDAO;
+import com.soapboxrace.core.dao.LobbyEntrantDAO;
+import com.soapboxrace.core.dao.TokenSessionDAO;
+
+import javax.ejb.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cleans up after lobbies. Open lobbies live in the {@link LobbyRegistryBO}, so LOBBY and LOBBY_ENTRANT rows are only
+ * kept for LOBBY_RETENTION_MINUTES; older lobbies are deleted together with their entrants, in batches of
+ * LOBBY_REAP_BATCH_SIZE (each in its own transaction) and at most LOBBY_REAP_MAX_BATCHES batches per run.
+ * Entrants without a lobby or persona are deleted the same way. Finally, personas are dropped from the matchmaking
+ * queue if they are no longer active in any session.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class LobbyReaperBO {
+
+    @EJB
+    private LobbyDAO lobbyDAO;
+
+    @EJB
+    private LobbyEntrantDAO lobbyEntrantDAO;
+
+    @EJB
+    private TokenSessionDAO tokenSessionDAO;
+
+    @EJB
+    private TokenSessionStoreBO tokenSessionStoreBO;
+
+    @EJB
+    private MatchmakingBO matchmakingBO;
+
+    @EJB
+    private ParameterBO parameterBO;
+
+    private final AtomicBoolean reaping = new AtomicBoolean();
+
+    private final AtomicLong reapCount = new AtomicLong();
+
+    private final AtomicLong totalLobbies = new AtomicLong();
+
+    private final AtomicLong totalEntrants = new AtomicLong();
+
+    private final AtomicLong totalQueueEntries = new AtomicLong();
+
+    private final AtomicLong totalReapMillis = new AtomicLong();
+
+    private volatile long lastLobbies;
+
+    private volatile long lastEntrants;
+
+    private volatile long lastQueueEntries;
+
+    private volatile long lastReapMillis;
+
+    @Schedule(minute = "*/5", hour = "*", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void reap() {
+        if (!Boolean.parseBoolean(parameterBO.getStrParam("ENABLE_LOBBY_REAPER", "true"))
+                || !reaping.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            int batchSize = parameterBO.getIntParam("LOBBY_REAP_BATCH_SIZE", 500);
+            int maxBatches = parameterBO.getIntParam("LOBBY_REAP_MAX_BATCHES", 20);
+            LocalDateTime cutoff = LocalDateTime.now().minusMinutes(
+                    parameterBO.getIntParam("LOBBY_RETENTION_MINUTES", 120));
+            long start = System.currentTimeMillis();
+            long lobbies = 0;
+            long entrants = 0;
+
+            for (int i = 0; i < maxBatches; i++) {
+                List<Long> lobbyIds = lobbyDAO.findExpiredIds(cutoff, batchSize);
+                entrants += lobbyEntrantDAO.deleteByLobbyIds(lobbyIds);
+                lobbies += lobbyDAO.deleteByIds(lobbyIds);
+
+                if (lobbyIds.size() < batchSize) {
+                    break;
+                }
+            }
+
+            for (int i = 0; i < maxBatches; i++) {
+                int deleted = lobbyEntrantDAO.deleteOrphans(batchSize);
+                entrants += deleted;
+
+                if (deleted < batchSize) {
+                    break;
+                }
+            }
+
+            long queueEntries = reapQueue();
+
+            long duration = System.currentTimeMillis() - start;
+            lastLobbies = lobbies;
+            lastEntrants = entrants;
+            lastQueueEntries = queueEntries;
+            lastReapMillis = duration;
+            reapCount.incrementAndGet();
+            totalLobbies.addAndGet(lobbies);
+            totalEntrants.addAndGet(entrants);
+            totalQueueEntries.addAndGet(queueEntries);
+            totalReapMillis.addAndGet(duration);
+
+            if (lobbies > 0 || entrants > 0 || queueEntries > 0) {
+                System.out.println(String.format("LobbyReaperBO: removed %d lobbies, %d entrants and %d queue " +
+                        "entries in %dms", lobbies, entrants, queueEntries, duration));
+            }
+        } finally {
+            reaping.set(false);
+        }
+    }
+
+    private long reapQueue() {
+        TokenSessionStore store = tokenSessionStoreBO.getStore();
+        List<Long> stalePersonaIds = new ArrayList<>();
+
+        for (Long personaId : matchmakingBO.getQueuedPlayers()) {
+            if (store.findTokenByPersonaId(personaId) == null) {
+                stalePersonaIds.add(personaId);
+            }
+        }
+
+        if (!stalePersonaIds.isEmpty() && tokenSessionStoreBO.isMirrorEnabled()) {
+            // the store may not have loaded these sessions from the mirror yet
+            stalePersonaIds.removeAll(tokenSessionDAO.findActivePersonaIds(stalePersonaIds, new Date()));
+        }
+
+        for (Long personaId : stalePersonaIds) {
+            matchmakingBO.removePlayerFromQueue(personaId);
+        }
+
+        return stalePersonaIds.size();
+    }
+
+    public long getReapCount() {
+        return reapCount.get();
+    }
+
+    public long getTotalLobbies() {
+        return totalLobbies.get();
+    }
+
+    public long getTotalEntrants() {
+        return totalEntrants.get();
+    }
+
+    public long getTotalQueueEntries() {
+        return totalQueueEntries.get();
+    }
+
+    public long getTotalReapMillis() {
+        return totalReapMillis.get();
+    }
+
+    public long getLastLobbies() {
+        return lastLobbies;
+    }
+
+    public long getLastEntrants() {
+        return lastEntrants;
+    }
+
+    public long getLastQueueEntries() {
+        return lastQueueEntries;
+    }
+
+    public long getLastReapMillis() {
+        return lastReapMillis;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,422 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.soapboxrace.core.bo.util.LobbyState;
+import com.soapboxrace.core.bo.util.MatchmakingEngine;
+import com.soapboxrace.core.dao.LobbyDAO;
+import com.soapboxrace.core.dao.LobbyEntrantDAO;
+import com.soapboxrace.core.jpa.LobbyEntity;
+import com.soapboxrace.core.jpa.LobbyEntrantEntity;
+import com.soapboxrace.core.jpa.PersonaEntity;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.*;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps every open lobby of this server in memory, indexed by ID, car class and event, so that finding and joining
+ * a lobby is a map lookup instead of a query on LOBBY and LOBBY_ENTRANT.
+ * <p>
+ * The LOBBY row is still inserted when a lobby is created, because event sessions reference it. Entrant changes are
+ * queued and written to LOBBY_ENTRANT in batches every few seconds, for auditing only; this can be turned off with
+ * the ENABLE_LOBBY_ENTRANT_PERSISTENCE parameter. Lobbies are dropped from the registry when they launch, or when
+ * they are past their countdown by more than LOBBY_REGISTRY_GRACE_SECONDS.
+ * <p>
+ * The in-memory registry is not shared between nodes. Redis matchmaking and the Redis session store exist to spread
+ * players over several nodes, and a player picked from the shared queue can be sent an invite to a lobby created by
+ * another node. While either of them is enabled, LOBBY and LOBBY_ENTRANT therefore stay the record of who sits in a
+ * lobby, as before the registry existed: searches query LOBBY, {@link #get(Long)} reads the lobby and its entrants
+ * and locks its row until the transaction of the caller ends, and seat changes are written straight away. Set
+ * LOBBY_REGISTRY_SINGLE_NODE to keep lobbies in memory when this is the only core node using that Redis server.
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class LobbyRegistryBO {
+
+    /**
+     * How long after its creation a lobby can still be found by searches, in milliseconds.
+     */
+    private static final long JOIN_WINDOW = 35000;
+
+    @EJB
+    private LobbyDAO lobbyDAO;
+
+    @EJB
+    private LobbyEntrantDAO lobbyEntrantDAO;
+
+    @EJB
+    private ParameterBO parameterBO;
+
+    private final Map<Long, LobbyState> lobbies = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Set<Long>> lobbiesByCarClass = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Set<Long>> lobbiesByEvent = new ConcurrentHashMap<>();
+
+    private final Map<String, PendingEntrant> pendingEntrants = new LinkedHashMap<>();
+
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private boolean shared;
+
+    @PostConstruct
+    public void init() {
+        boolean redisEnabled = parameterBO.getBoolParam("ENABLE_REDIS");
+        String engineType = parameterBO.getStrParam("MATCHMAKING_ENGINE", redisEnabled ? "redis" : "local");
+        String storeType = parameterBO.getStrParam("TOKEN_SESSION_STORE", "local");
+
+        shared = redisEnabled && ("redis".equalsIgnoreCase(engineType) || "redis".equalsIgnoreCase(storeType))
+                && !Boolean.parseBoolean(parameterBO.getStrParam("LOBBY_REGISTRY_SINGLE_NODE", "false"));
+
+        if (shared) {
+            System.out.println("LobbyRegistryBO: Redis matchmaking or session store enabled, lobbies are kept in "
+                    + "LOBBY and LOBBY_ENTRANT");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushEntrants();
+    }
+
+    /**
+     * Adds a newly inserted lobby to the registry.
+     *
+     * @param lobbyEntity the lobby, which must already have an ID
+     * @return the live state of the lobby
+     */
+    public LobbyState register(LobbyEntity lobbyEntity) {
+        if (shared) {
+            return toState(lobbyEntity);
+        }
+
+        LobbyState lobbyState = new LobbyState(lobbyEntity, System.currentTimeMillis());
+
+        lobbies.put(lobbyState.getId(), lobbyState);
+        lobbiesByCarClass.computeIfAbsent(lobbyState.getCarClassHash(), k -> ConcurrentHashMap.newKeySet())
+                .add(lobbyState.getId());
+        lobbiesByEvent.computeIfAbsent(lobbyState.getEventId(), k -> ConcurrentHashMap.newKeySet())
+                .add(lobbyState.getId());
+
+        return lobbyState;
+    }
+
+    /**
+     * Drops a lobby from the registry, usually because it has launched.
+     *
+     * @param lobbyId the lobby ID
+     */
+    public void remove(Long lobbyId) {
+        LobbyState lobbyState = lobbies.remove(lobbyId);
+
+        if (lobbyState != null) {
+            removeFromIndex(lobbiesByCarClass, lobbyState.getCarClassHash(), lobbyId);
+            removeFromIndex(lobbiesByEvent, lobbyState.getEventId(), lobbyId);
+        }
+    }
+
+    /**
+     * Returns the live state of a lobby. While lobbies are kept in the database, the state is read from it and the
+     * LOBBY row stays locked until the transaction of the caller ends, so that seat changes made through the
+     * returned state cannot race with other nodes.
+     *
+     * @param lobbyId the lobby ID
+     * @return the lobby, or {@code null} if it does not exist
+     */
+    public LobbyState get(Long lobbyId) {
+        if (lobbyId == null) {
+            return null;
+        }
+
+        if (shared) {
+            LobbyEntity lobbyEntity = lobbyDAO.findByIdForUpdate(lobbyId);
+            return lobbyEntity != null ? toState(lobbyEntity) : null;
+        }
+
+        return lobbies.get(lobbyId);
+    }
+
+    /**
+     * Finds the lobbies that a persona driving a car of the given class can still join,
+     * oldest first. Lobbies of open events are included.
+     *
+     * @param carClassHash the car class hash
+     * @return the open lobbies
+     */
+    public List<LobbyState> findAllOpen(int carClassHash) {
+        if (shared) {
+            return toSortedStates(lobbyDAO.findAllOpen(carClassHash));
+        }
+
+        List<LobbyState> result = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        collectOpen(lobbiesByCarClass.get(carClassHash), now, result);
+
+        if (carClassHash != MatchmakingEngine.OPEN_CAR_CLASS) {
+            collectOpen(lobbiesByCarClass.get(MatchmakingEngine.OPEN_CAR_CLASS), now, result);
+        }
+
+        result.sort(Comparator.comparingLong(LobbyState::getStartedTime));
+        return result;
+    }
+
+    /**
+     * Finds the public lobbies of an event that can still be joined, oldest first.
+     *
+     * @param eventId the event ID
+     * @return the open lobbies
+     */
+    public List<LobbyState> findByEventStarted(int eventId) {
+        if (shared) {
+            return toSortedStates(lobbyDAO.findByEventStarted(eventId));
+        }
+
+        List<LobbyState> result = new ArrayList<>();
+
+        collectOpen(lobbiesByEvent.get(eventId), System.currentTimeMillis(), result);
+
+        result.sort(Comparator.comparingLong(LobbyState::getStartedTime));
+        return result;
+    }
+
+    /**
+     * Seats a persona in a lobby and queues the matching LOBBY_ENTRANT insert, or writes it straight away while
+     * lobbies are kept in the database. See {@link LobbyState#tryAddEntrant(Long, int)}.
+     *
+     * @param lobbyState    the lobby, as returned by {@link #get(Long)} in the current transaction
+     * @param personaEntity the persona
+     * @return the new entrant, or {@code null} if no seat was taken
+     */
+    public LobbyState.Entrant addEntrant(LobbyState lobbyState, PersonaEntity personaEntity) {
+        LobbyState.Entrant entrant = lobbyState.tryAddEntrant(personaEntity.getPersonaId(), personaEntity.getLevel());
+
+        if (entrant != null && shared) {
+            lobbyEntrantDAO.updateEntrants(Collections.emptyList(), Collections.singletonList(
+                    toEntity(lobbyState.getId(), entrant.getPersonaId(), entrant.getGridIndex())));
+        } else if (entrant != null && isPersistenceEnabled()) {
+            synchronized (pendingEntrants) {
+                pendingEntrants.computeIfAbsent(getEntrantKey(lobbyState.getId(), entrant.getPersonaId()),
+                        k -> new PendingEntrant()).insert = toEntity(lobbyState.getId(), entrant.getPersonaId(),
+                        entrant.getGridIndex());
+            }
+        }
+
+        return entrant;
+    }
+
+    /**
+     * Removes a persona from a lobby and queues the matching LOBBY_ENTRANT delete, or runs it straight away while
+     * lobbies are kept in the database.
+     *
+     * @param lobbyState the lobby, as returned by {@link #get(Long)} in the current transaction
+     * @param personaId  the persona ID
+     * @return {@code true} if the persona was in the lobby
+     */
+    public boolean removeEntrant(LobbyState lobbyState, Long personaId) {
+        if (!lobbyState.removeEntrant(personaId)) {
+            return false;
+        }
+
+        if (shared) {
+            lobbyEntrantDAO.updateEntrants(Collections.singletonList(toEntity(lobbyState.getId(), personaId, 0)),
+                    Collections.emptyList());
+        } else if (isPersistenceEnabled()) {
+            String key = getEntrantKey(lobbyState.getId(), personaId);
+
+            synchronized (pendingEntrants) {
+                PendingEntrant pendingEntrant = pendingEntrants.get(key);
+
+                if (pendingEntrant != null && pendingEntrant.delete == null) {
+                    // the insert never reached the database
+                    pendingEntrants.remove(key);
+                } else {
+                    if (pendingEntrant == null) {
+                        pendingEntrant = new PendingEntrant();
+                        pendingEntrants.put(key, pendingEntrant);
+                    }
+
+                    pendingEntrant.delete = toEntity(lobbyState.getId(), personaId, 0);
+                    pendingEntrant.insert = null;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes a persona from every lobby and drops its queued entrant writes. Called when the persona is deleted.
+     *
+     * @param personaId the persona ID
+     */
+    public void removePersona(Long personaId) {
+        for (LobbyState lobbyState : lobbies.values()) {
+            lobbyState.removeEntrant(personaId);
+        }
+
+        String suffix = ":" + personaId;
+
+        synchronized (pendingEntrants) {
+            pendingEntrants.keySet().removeIf(key -> key.endsWith(suffix));
+        }
+    }
+
+    /**
+     * @return the number of lobbies kept in memory, which is always 0 while lobbies are kept in the database
+     */
+    public int getLobbyCount() {
+        return lobbies.size();
+    }
+
+    @Schedule(second = "*/5", minute = "*", hour = "*", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void flushEntrants() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            List<PendingEntrant> batch;
+
+            synchronized (pendingEntrants) {
+                if (pendingEntrants.isEmpty()) {
+                    return;
+                }
+
+                batch = new ArrayList<>(pendingEntrants.values());
+                pendingEntrants.clear();
+            }
+
+            List<LobbyEntrantEntity> removedEntrants = new ArrayList<>();
+            List<LobbyEntrantEntity> addedEntrants = new ArrayList<>();
+
+            for (PendingEntrant pendingEntrant : batch) {
+                if (pendingEntrant.delete != null) {
+                    removedEntrants.add(pendingEntrant.delete);
+                }
+
+                if (pendingEntrant.insert != null) {
+                    addedEntrants.add(pendingEntrant.insert);
+                }
+            }
+
+            try {
+                lobbyEntrantDAO.updateEntrants(removedEntrants, addedEntrants);
+            } catch (Exception e) {
+                System.out.println("LobbyRegistryBO: failed to write " + batch.size() + " entrant changes: "
+                        + e.getMessage());
+            }
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    @Schedule(minute = "*", hour = "*", persistent = false)
+    public void purgeExpired() {
+        long cutoff = System.currentTimeMillis()
+                - parameterBO.getIntParam("LOBBY_REGISTRY_GRACE_SECONDS", 60) * 1000L;
+        int purged = 0;
+
+        for (LobbyState lobbyState : lobbies.values()) {
+            if (lobbyState.getDeadline() < cutoff) {
+                remove(lobbyState.getId());
+                purged++;
+            }
+        }
+
+        if (purged > 0) {
+            System.out.println("LobbyRegistryBO: purged " + purged + " expired lobbies");
+        }
+    }
+
+    private void collectOpen(Set<Long> lobbyIds, long now, List<LobbyState> result) {
+        if (lobbyIds == null) {
+            return;
+        }
+
+        for (Long lobbyId : lobbyIds) {
+            LobbyState lobbyState = lobbies.get(lobbyId);
+
+            if (lobbyState != null && !lobbyState.getIsPrivate() && !lobbyState.isFull()
+                    && now - lobbyState.getStartedTime() <= JOIN_WINDOW) {
+                result.add(lobbyState);
+            }
+        }
+    }
+
+    private static List<LobbyState> toSortedStates(List<LobbyEntity> lobbyEntities) {
+        List<LobbyState> result = new ArrayList<>();
+
+        for (LobbyEntity lobbyEntity : lobbyEntities) {
+            if (!lobbyEntity.getIsPrivate()) {
+                result.add(toState(lobbyEntity));
+            }
+        }
+
+        result.sort(Comparator.comparingLong(LobbyState::getStartedTime));
+        return result;
+    }
+
+    private static LobbyState toState(LobbyEntity lobbyEntity) {
+        List<LobbyState.Entrant> entrants = new ArrayList<>();
+
+        for (LobbyEntrantEntity lobbyEntrantEntity : lobbyEntity.getEntrants()) {
+            PersonaEntity personaEntity = lobbyEntrantEntity.getPersona();
+
+            if (personaEntity != null) {
+                entrants.add(new LobbyState.Entrant(personaEntity.getPersonaId(), personaEntity.getLevel(),
+                        lobbyEntrantEntity.getGridIndex()));
+            }
+        }
+
+        long startedTime = lobbyEntity.getStartedTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return new LobbyState(lobbyEntity, startedTime, entrants);
+    }
+
+    private boolean isPersistenceEnabled() {
+        return Boolean.parseBoolean(parameterBO.getStrParam("ENABLE_LOBBY_ENTRANT_PERSISTENCE", "true"));
+    }
+
+    private static void removeFromIndex(Map<Integer, Set<Long>> index, int key, Long lobbyId) {
+        index.computeIfPresent(key, (k, lobbyIds) -> {
+            lobbyIds.remove(lobbyId);
+            return lobbyIds.isEmpty() ? null : lobbyIds;
+        });
+    }
+
+    private static String getEntrantKey(Long lobbyId, Long personaId) {
+        return lobbyId + ":" + personaId;
+    }
+
+    private static LobbyEntrantEntity toEntity(Long lobbyId, Long personaId, int gridIndex) {
+        LobbyEntity lobbyEntity = new LobbyEntity();
+        lobbyEntity.setId(lobbyId);
+        PersonaEntity personaEntity = new PersonaEntity();
+        personaEntity.setPersonaId(personaId);
+
+        LobbyEntrantEntity lobbyEntrantEntity = new LobbyEntrantEntity();
+        lobbyEntrantEntity.setLobby(lobbyEntity);
+        lobbyEntrantEntity.setPersona(personaEntity);
+        lobbyEntrantEntity.setGridIndex(gridIndex);
+        return lobbyEntrantEntity;
+    }
+
+    /**
+     * The entrant writes queued for one persona in one lobby. A delete always runs before the insert.
+     */
+    private static class PendingEntrant {
+        private LobbyEntrantEntity delete;
+        private LobbyEntrantEntity insert;
+    }
+}
\ No newline at end of file
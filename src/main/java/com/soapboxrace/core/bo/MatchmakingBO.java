@@ -6,13 +6,15 @@
 
 package com.soapboxrace.core.bo;
 
-import io.lettuce.core.KeyValue;
-import io.lettuce.core.ScanIterator;
-import io.lettuce.core.api.StatefulRedisConnection;
+import com.soapboxrace.core.bo.util.LocalMatchmakingEngine;
+import com.soapboxrace.core.bo.util.MatchmakingEngine;
+import com.soapboxrace.core.bo.util.MatchmakingSearch;
+import com.soapboxrace.core.bo.util.RedisMatchmakingEngine;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.ejb.*;
+import java.util.List;
 
 /**
  * Responsible for managing the multiplayer matchmaking system.
@@ -21,6 +23,15 @@ import javax.ejb.*;
  * will check if that class is open or restricted. Open events will receive
  * players of any class, while restricted events will only receive players of
  * the required class.
+ * <p>
+ * The queue itself lives in a {@link MatchmakingEngine}, selected with the MATCHMAKING_ENGINE parameter
+ * ({@code redis} or {@code local}). It defaults to {@code redis} when Redis is enabled and {@code local} otherwise.
+ * <p>
+ * Personas are queued by car class and by level bucket (MATCHMAKING_LEVEL_BUCKET_SIZE levels per bucket).
+ * A lobby looks for players in its creator's bucket first. Each neighbouring bucket is added once a candidate has
+ * waited another MATCHMAKING_WIDEN_INTERVAL_SECONDS, up to MATCHMAKING_MAX_WIDEN_BUCKETS buckets away.
+ * <p>
+ * Lists of ignored events expire MATCHMAKING_IGNORED_EVENTS_TTL_MINUTES after their last change.
  *
  * @author heyitsleo
  */
@@ -35,36 +46,48 @@ public class MatchmakingBO {
     @EJB
     private ParameterBO parameterBO;
 
-    private boolean enabled;
-    private StatefulRedisConnection<String, String> redisConnection;
+    private MatchmakingEngine engine;
 
     @PostConstruct
     public void initialize() {
-        this.enabled = parameterBO.getBoolParam("ENABLE_REDIS");
-        if (this.enabled) {
-            this.redisConnection = this.redisBO.getConnection();
+        boolean redisEnabled = parameterBO.getBoolParam("ENABLE_REDIS");
+        String engineType = parameterBO.getStrParam("MATCHMAKING_ENGINE", redisEnabled ? "redis" : "local");
+
+        if ("redis".equalsIgnoreCase(engineType)) {
+            if (redisEnabled) {
+                this.engine = new RedisMatchmakingEngine(this.redisBO.getConnection(), this.redisBO.createPubSub(),
+                        getIgnoredEventsTtlMinutes() * 60L,
+                        parameterBO.getIntParam("MATCHMAKING_IGNORED_EVENTS_CACHE_SECONDS", 30),
+                        parameterBO.getIntParam("MATCHMAKING_IGNORED_EVENTS_CACHE_SIZE", 10000));
+            } else {
+                System.out.println("MatchmakingBO: Redis engine requested but Redis is disabled, using local engine");
+            }
+        }
+
+        if (this.engine == null) {
+            this.engine = new LocalMatchmakingEngine(getIgnoredEventsTtlMinutes());
         }
+
+        System.out.println("MatchmakingBO: using " + this.engine.getClass().getSimpleName());
     }
 
     @PreDestroy
     public void shutdown() {
         System.out.println("MatchmakingBO shutdown");
 
-        if (this.enabled) {
-            this.redisConnection.sync().del("matchmaking_queue");
-        }
+        this.engine.clearQueue();
+        this.engine.close();
     }
 
     /**
-     * Adds the given persona ID to the queue under the given car class.
+     * Adds the given persona ID to the queue under the given car class and the bucket of the given level.
      *
      * @param personaId The ID of the persona to add to the queue.
      * @param carClass  The class of the persona's current car.
+     * @param level     The level of the persona.
      */
-    public void addPlayerToQueue(Long personaId, Integer carClass) {
-        if (this.enabled) {
-            this.redisConnection.sync().hset("matchmaking_queue", personaId.toString(), carClass.toString());
-        }
+    public void addPlayerToQueue(Long personaId, Integer carClass, int level) {
+        this.engine.addPlayer(personaId, carClass, getLevelBucket(level));
     }
 
     /**
@@ -73,34 +96,36 @@ public class MatchmakingBO {
      * @param personaId The ID of the persona to remove from the queue.
      */
     public void removePlayerFromQueue(Long personaId) {
-        if (this.enabled) {
-            this.redisConnection.sync().hdel("matchmaking_queue", personaId.toString());
-        }
+        this.engine.removePlayer(personaId);
     }
 
     /**
-     * Gets the ID of a persona from the queue, as long as that persona is listed under the given car class.
+     * Gets the IDs of all queued personas.
      *
-     * @param carClass The car class hash to find a persona in.
-     * @return The ID of the persona, or {@literal -1} if no persona was found.
+     * @return The IDs of the personas, in no particular order.
      */
-    public Long getPlayerFromQueue(Integer carClass) {
-        if (!this.enabled)
-            return -1L;
-
-        ScanIterator<KeyValue<String, String>> iterator = ScanIterator.hscan(this.redisConnection.sync(), "matchmaking_queue");
-        long personaId = -1L;
-
-        while (iterator.hasNext()) {
-            KeyValue<String, String> keyValue = iterator.next();
+    public List<Long> getQueuedPlayers() {
+        return this.engine.getQueuedPlayers();
+    }
 
-            if (carClass == 607077938 || Integer.parseInt(keyValue.getValue()) == carClass) {
-                personaId = Long.parseLong(keyValue.getKey());
-                break;
-            }
-        }
+    /**
+     * Gets the IDs of up to {@code count} distinct personas from the queue, longest waiting first. Only personas
+     * listed under the given car class are returned, unless the class is open. Personas ignoring the given event are
+     * skipped, as are personas outside the level range their wait time allows.
+     *
+     * @param carClass The car class hash to find personas in.
+     * @param level    The level the search is centered on.
+     * @param eventId  The ID of the event the personas are picked for.
+     * @param count    The maximum number of personas to return.
+     * @return The IDs of the personas; empty if none were found.
+     */
+    public List<Long> getPlayersFromQueue(Integer carClass, int level, int eventId, int count) {
+        int scanLimit = Math.max(count, parameterBO.getIntParam("MATCHMAKING_PICK_SCAN_LIMIT", 50));
+        long widenIntervalMillis = parameterBO.getIntParam("MATCHMAKING_WIDEN_INTERVAL_SECONDS", 15) * 1000L;
+        int maxWidenBuckets = parameterBO.getIntParam("MATCHMAKING_MAX_WIDEN_BUCKETS", 6);
 
-        return personaId;
+        return this.engine.pickPlayers(new MatchmakingSearch(carClass, getLevelBucket(level), eventId, count,
+                scanLimit, widenIntervalMillis, maxWidenBuckets));
     }
 
     /**
@@ -110,9 +135,7 @@ public class MatchmakingBO {
      * @param eventId   the event ID
      */
     public void ignoreEvent(long personaId, long eventId) {
-        if (this.enabled) {
-            this.redisConnection.sync().sadd("ignored_events." + personaId, Long.toString(eventId));
-        }
+        this.engine.ignoreEvent(personaId, eventId);
     }
 
     /**
@@ -121,9 +144,7 @@ public class MatchmakingBO {
      * @param personaId the persona ID
      */
     public void resetIgnoredEvents(long personaId) {
-        if (this.enabled) {
-            this.redisConnection.sync().del("ignored_events." + personaId);
-        }
+        this.engine.resetIgnoredEvents(personaId);
     }
 
     /**
@@ -134,10 +155,14 @@ public class MatchmakingBO {
      * @return {@code true} if the given event ID is in the list of ignored events for the given persona ID
      */
     public boolean isEventIgnored(long personaId, long eventId) {
-        if (this.enabled) {
-            return this.redisConnection.sync().sismember("ignored_events." + personaId, Long.toString(eventId));
-        }
+        return this.engine.isEventIgnored(personaId, eventId);
+    }
+
+    private int getIgnoredEventsTtlMinutes() {
+        return parameterBO.getIntParam("MATCHMAKING_IGNORED_EVENTS_TTL_MINUTES", 60);
+    }
 
-        return false;
+    private int getLevelBucket(int level) {
+        return Math.max(0, level) / Math.max(1, parameterBO.getIntParam("MATCHMAKING_LEVEL_BUCKET_SIZE", 10));
     }
 }
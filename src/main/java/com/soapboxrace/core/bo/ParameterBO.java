@@ -7,15 +7,16 @@
 package com.soapboxrace.core.bo;
 
 import com.soapboxrace.core.dao.ParameterDAO;
-import com.soapboxrace.core.dao.TokenSessionDAO;
 import com.soapboxrace.core.jpa.ParameterEntity;
-import com.soapboxrace.core.jpa.TokenSessionEntity;
 import com.soapboxrace.core.jpa.UserEntity;
 
 import javax.annotation.PostConstruct;
 import javax.ejb.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Startup
 @Singleton
@@ -26,12 +27,19 @@ public class ParameterBO {
     private ParameterDAO parameterDao;
 
     @EJB
-    private TokenSessionDAO tokenDAO;
+    private TokenSessionBO tokenSessionBO;
 
-    private final ConcurrentMap<String, String> parameterMap;
+    /**
+     * Immutable snapshot of the PARAMETER table. Readers never touch the database;
+     * {@link #loadParameters()} builds a new snapshot and swaps the reference.
+     */
+    private volatile Map<String, ParameterValue> parameterMap;
+
+    private final AtomicLong snapshotVersion;
 
     public ParameterBO() {
-        parameterMap = new ConcurrentHashMap<>();
+        parameterMap = Collections.emptyMap();
+        snapshotVersion = new AtomicLong();
     }
 
     @PostConstruct
@@ -43,28 +51,45 @@ public class ParameterBO {
      * Loads parameters from the database
      */
     public void loadParameters() {
-        System.out.println("Deprecated");
+        long start = System.currentTimeMillis();
+        List<ParameterEntity> parameterEntities = parameterDao.findAll();
+        Map<String, ParameterValue> newParameterMap = new HashMap<>(parameterEntities.size() * 2);
+
+        for (ParameterEntity parameterEntity : parameterEntities) {
+            newParameterMap.put(parameterEntity.getName(), new ParameterValue(parameterEntity.getValue()));
+        }
+
+        parameterMap = Collections.unmodifiableMap(newParameterMap);
+        long version = snapshotVersion.incrementAndGet();
+
+        System.out.println(String.format("ParameterBO: loaded %d parameters in %dms (snapshot #%d)",
+                newParameterMap.size(), System.currentTimeMillis() - start, version));
+    }
+
+    /**
+     * Gets the number of times the parameter snapshot has been (re)built on this node.
+     *
+     * @return the local snapshot version
+     */
+    public long getSnapshotVersion() {
+        return snapshotVersion.get();
+    }
+
+    private ParameterValue getParameterValue(String name) {
+        return parameterMap.get(name);
     }
 
     private String getParameter(String name) {
-        try {
-			ParameterEntity findById = parameterDao.findById(name);
-			return findById.getValue();
-		} catch (Exception e) {
-            System.out.println("Cannot find " + name + " parameters on database");
-		}
-		return null;
+        ParameterValue parameterValue = getParameterValue(name);
+        return parameterValue == null ? null : parameterValue.stringValue;
     }
 
     public int getCarLimit(String securityToken) {
-        TokenSessionEntity tokenSession = tokenDAO.findById(securityToken);
-        return getCarLimit(tokenSession.getUserEntity());
+        return getCarLimit(tokenSessionBO.getUser(securityToken));
     }
 
     public int getMaxLevel(String securityToken) {
-        TokenSessionEntity tokenSession = tokenDAO.findById(securityToken);
-
-        return getMaxLevel(tokenSession.getUserEntity());
+        return getMaxLevel(tokenSessionBO.getUser(securityToken));
     }
 
     public int getCarLimit(UserEntity userEntity) {
@@ -89,23 +114,23 @@ public class ParameterBO {
     }
 
     public Integer getIntParam(String parameter) {
-        String parameterFromDB = getParameter(parameter);
+        ParameterValue parameterValue = getParameterValue(parameter);
 
-        if (parameterFromDB == null) {
+        if (parameterValue == null || parameterValue.stringValue == null) {
             throw new RuntimeException("Cannot find integer parameter: " + parameter);
         }
 
-        return Integer.valueOf(parameterFromDB);
+        return parameterValue.getIntValue();
     }
 
     public Integer getIntParam(String parameter, Integer defaultValue) {
-        String parameterFromDB = getParameter(parameter);
-        return parameterFromDB == null || parameterFromDB.isEmpty() ? defaultValue : Integer.valueOf(parameterFromDB);
+        ParameterValue parameterValue = getParameterValue(parameter);
+        return parameterValue == null || parameterValue.isEmpty() ? defaultValue : parameterValue.getIntValue();
     }
 
     public Boolean getBoolParam(String parameter) {
-        String parameterFromDB = getParameter(parameter);
-        return Boolean.valueOf(parameterFromDB);
+        ParameterValue parameterValue = getParameterValue(parameter);
+        return parameterValue != null && parameterValue.boolValue;
     }
 
     public String getStrParam(String parameter) {
@@ -113,23 +138,69 @@ public class ParameterBO {
     }
 
     public String getStrParam(String parameter, String defaultValue) {
-        String parameterFromDB = getParameter(parameter);
+        ParameterValue parameterValue = getParameterValue(parameter);
 
-        return parameterFromDB == null || parameterFromDB.isEmpty() ? defaultValue : parameterFromDB;
+        return parameterValue == null || parameterValue.isEmpty() ? defaultValue : parameterValue.stringValue;
     }
 
     public Float getFloatParam(String parameter) {
-        String parameterFromDB = getParameter(parameter);
+        ParameterValue parameterValue = getParameterValue(parameter);
 
-        if (parameterFromDB == null) {
+        if (parameterValue == null || parameterValue.stringValue == null) {
             throw new RuntimeException("Cannot find float parameter: " + parameter);
         }
 
-        return Float.valueOf(parameterFromDB);
+        return parameterValue.getFloatValue();
     }
 
     public Float getFloatParam(String parameter, Float defaultValue) {
-        String parameterFromDB = getParameter(parameter);
-        return parameterFromDB == null || parameterFromDB.isEmpty() ? defaultValue : Float.valueOf(parameterFromDB);
+        ParameterValue parameterValue = getParameterValue(parameter);
+        return parameterValue == null || parameterValue.isEmpty() ? defaultValue : parameterValue.getFloatValue();
+    }
+
+    /**
+     * A single parameter, decoded once when the snapshot is built. Values that do not parse as a number
+     * are re-parsed on access so callers still get the same {@link NumberFormatException} as before.
+     */
+    private static class ParameterValue {
+        private final String stringValue;
+        private final boolean boolValue;
+        private final Integer intValue;
+        private final Float floatValue;
+
+        private ParameterValue(String stringValue) {
+            this.stringValue = stringValue;
+            this.boolValue = Boolean.parseBoolean(stringValue);
+            this.intValue = tryParseInt(stringValue);
+            this.floatValue = tryParseFloat(stringValue);
+        }
+
+        private static Integer tryParseInt(String value) {
+            try {
+                return value == null ? null : Integer.valueOf(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static Float tryParseFloat(String value) {
+            try {
+                return value == null ? null : Float.valueOf(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private boolean isEmpty() {
+            return stringValue == null || stringValue.isEmpty();
+        }
+
+        private Integer getIntValue() {
+            return intValue != null ? intValue : Integer.valueOf(stringValue);
+        }
+
+        private Float getFloatValue() {
+            return floatValue != null ? floatValue : Float.valueOf(stringValue);
+        }
     }
 }
\ No newline at end of file
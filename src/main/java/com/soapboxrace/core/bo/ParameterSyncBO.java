@@ -0,0 +1,162 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.*;
+
+/**
+ * Keeps the {@link ParameterBO} snapshot in sync across every core node sharing a Redis server.
+ * A reload on one node bumps a cluster-wide version counter and publishes it; every other node
+ * rebuilds its snapshot when it sees a newer version, either through pub/sub or through the
+ * periodic version check (which covers messages missed while a connection was down).
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class ParameterSyncBO {
+
+    private static final String CHANNEL = "parameter_updates";
+
+    private static final String VERSION_KEY = "parameters_version";
+
+    @EJB
+    private RedisBO redisBO;
+
+    @EJB
+    private ParameterBO parameterBO;
+
+    private boolean enabled;
+    private StatefulRedisPubSubConnection<String, String> pubSubConnection;
+    private StatefulRedisConnection<String, String> connection;
+    private ParameterSyncListener listener;
+    private volatile long appliedVersion;
+
+    @PostConstruct
+    public void init() {
+        this.enabled = parameterBO.getBoolParam("ENABLE_REDIS");
+        if (this.enabled) {
+            this.connection = this.redisBO.getConnection();
+            this.appliedVersion = getClusterVersion();
+            this.listener = new ParameterSyncListener();
+            this.pubSubConnection = this.redisBO.createPubSub();
+            this.pubSubConnection.addListener(this.listener);
+            this.pubSubConnection.sync().subscribe(CHANNEL);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        System.out.println("ParameterSyncBO shutdown");
+
+        if (this.enabled) {
+            this.pubSubConnection.removeListener(this.listener);
+            this.pubSubConnection.close();
+            this.listener = null;
+        }
+    }
+
+    /**
+     * Reloads parameters on this node and asks every other node to do the same.
+     *
+     * @return the cluster version of the new parameter set, or the local snapshot version if Redis is disabled
+     */
+    public long reloadParameters() {
+        parameterBO.loadParameters();
+
+        if (!this.enabled) {
+            return parameterBO.getSnapshotVersion();
+        }
+
+        long version = this.connection.sync().incr(VERSION_KEY);
+        this.appliedVersion = version;
+        this.connection.sync().publish(CHANNEL, Long.toString(version));
+
+        return version;
+    }
+
+    /**
+     * Gets the cluster version this node's parameters were last loaded for.
+     *
+     * @return the applied cluster version, or the local snapshot version if Redis is disabled
+     */
+    public long getAppliedVersion() {
+        return this.enabled ? this.appliedVersion : parameterBO.getSnapshotVersion();
+    }
+
+    /**
+     * Gets the latest cluster version of the parameter set.
+     *
+     * @return the cluster version, or the local snapshot version if Redis is disabled
+     */
+    public long getClusterVersion() {
+        if (!this.enabled) {
+            return parameterBO.getSnapshotVersion();
+        }
+
+        String value = this.connection.sync().get(VERSION_KEY);
+
+        if (value == null || value.trim().isEmpty())
+            return 0L;
+
+        return Long.parseLong(value);
+    }
+
+    @Schedule(second = "*/30", minute = "*", hour = "*", persistent = false)
+    public void checkVersion() {
+        if (this.enabled) {
+            applyVersion(getClusterVersion());
+        }
+    }
+
+    private void applyVersion(long version) {
+        if (version > this.appliedVersion) {
+            this.appliedVersion = version;
+            parameterBO.loadParameters();
+            System.out.println("ParameterSyncBO: applied parameter version " + version);
+        }
+    }
+
+    private class ParameterSyncListener implements RedisPubSubListener<String, String> {
+        @Override
+        public void message(String channel, String message) {
+            if (CHANNEL.equals(channel)) {
+                applyVersion(Long.parseLong(message));
+            }
+        }
+
+        @Override
+        public void message(String pattern, String channel, String message) {
+
+        }
+
+        @Override
+        public void subscribed(String channel, long count) {
+
+        }
+
+        @Override
+        public void psubscribed(String pattern, long count) {
+
+        }
+
+        @Override
+        public void unsubscribed(String channel, long count) {
+
+        }
+
+        @Override
+        public void punsubscribed(String pattern, long count) {
+
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.soapboxrace.core.bo.util.CachedResponse;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.*;
+import java.util.function.Supplier;
+
+/**
+ * Keeps encoded response bodies for endpoints whose output rarely changes.
+ * <p>
+ * Entries expire after RESPONSE_CACHE_TTL_SECONDS and are dropped as soon as the parameter snapshot changes, so a
+ * parameter reload (which admins also use after editing announcements, news, chat rooms etc.) invalidates everything
+ * on every node. Entries built from a file also carry the file's timestamp and are rebuilt when it changes.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class ResponseCacheBO {
+
+    @EJB
+    private ParameterBO parameterBO;
+
+    private Cache<String, CachedResponse> entries;
+
+    @PostConstruct
+    public void init() {
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(parameterBO.getIntParam("RESPONSE_CACHE_MAX_ENTRIES", 10000))
+                .build();
+    }
+
+    /**
+     * Gets a cached response, building it with the given supplier if there is no valid entry.
+     *
+     * @param key          the cache key
+     * @param validator    the current validator of the source (e.g. a file timestamp), or {@code null}
+     * @param bodySupplier builds the encoded body; may return {@code null} if there is nothing to serve
+     * @return the cached response, or {@code null} if the supplier returned {@code null}
+     */
+    public CachedResponse get(String key, Object validator, Supplier<byte[]> bodySupplier) {
+        long parameterSnapshot = parameterBO.getSnapshotVersion();
+        long now = System.currentTimeMillis();
+        CachedResponse cachedResponse = entries.getIfPresent(key);
+
+        if (cachedResponse != null && cachedResponse.isValid(parameterSnapshot, validator, now)) {
+            return cachedResponse;
+        }
+
+        byte[] body = bodySupplier.get();
+
+        if (body == null) {
+            entries.invalidate(key);
+            return null;
+        }
+
+        long ttl = parameterBO.getIntParam("RESPONSE_CACHE_TTL_SECONDS", 60) * 1000L;
+        cachedResponse = new CachedResponse(body, parameterSnapshot, validator, now + ttl);
+        entries.put(key, cachedResponse);
+
+        return cachedResponse;
+    }
+
+    public void invalidate(String key) {
+        entries.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.soapboxrace.core.bo.util.HashedWheelTimer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.*;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+
+/**
+ * Owns the shared {@link HashedWheelTimer} used for lobby countdowns and DNF timeouts.
+ * These timeouts are short-lived and never need to survive a restart, so they skip the EJB timer service.
+ * The wheel is configured with the TIMER_WHEEL_TICK_MILLIS, TIMER_WHEEL_SIZE, TIMER_CALLBACK_THREADS and
+ * TIMER_CALLBACK_QUEUE_SIZE parameters.
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class TimerWheelBO {
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    @EJB
+    private ParameterBO parameterBO;
+
+    private HashedWheelTimer timer;
+
+    @PostConstruct
+    public void init() {
+        this.timer = new HashedWheelTimer(
+                parameterBO.getIntParam("TIMER_WHEEL_TICK_MILLIS", 50),
+                parameterBO.getIntParam("TIMER_WHEEL_SIZE", 512),
+                parameterBO.getIntParam("TIMER_CALLBACK_THREADS", 4),
+                parameterBO.getIntParam("TIMER_CALLBACK_QUEUE_SIZE", 10000),
+                threadFactory);
+
+        System.out.println("TimerWheelBO: started with " + timer.getWheelSize() + " buckets of "
+                + timer.getTickMillis() + "ms");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        System.out.println("TimerWheelBO shutdown");
+
+        this.timer.stop();
+    }
+
+    /**
+     * Runs a task once after the given delay, on one of the timer's callback threads.
+     *
+     * @param task        the task
+     * @param delayMillis the delay in milliseconds
+     * @return a handle that can cancel the timeout
+     */
+    public HashedWheelTimer.Timeout schedule(Runnable task, long delayMillis) {
+        return this.timer.schedule(task, delayMillis);
+    }
+
+    public HashedWheelTimer getTimer() {
+        return timer;
+    }
+}
\ No newline at end of file
@@ -6,8 +6,10 @@
 
 package com.soapboxrace.core.bo;
 
-import com.soapboxrace.core.api.util.GeoIp2;
+import com.soapboxrace.core.api.util.SessionContext;
 import com.soapboxrace.core.api.util.UUIDGen;
+import com.soapboxrace.core.bo.util.TokenSession;
+import com.soapboxrace.core.bo.util.TokenSessionStore;
 import com.soapboxrace.core.dao.TokenSessionDAO;
 import com.soapboxrace.core.dao.UserDAO;
 import com.soapboxrace.core.engine.EngineException;
@@ -19,13 +21,19 @@ import com.soapboxrace.jaxb.login.LoginStatusVO;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.enterprise.context.ContextNotActiveException;
+import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 
 @Stateless
 public class TokenSessionBO {
@@ -39,50 +47,278 @@ public class TokenSessionBO {
     private ParameterBO parameterBO;
 
     @EJB
-    private GetServerInformationBO serverInfoBO;
+    private GeoIpBO geoIpBO;
 
     @EJB
     private AuthenticationBO authenticationBO;
 
+    @EJB
+    private TokenSessionStoreBO tokenSessionStoreBO;
+
+    @Inject
+    private SessionContext sessionContext;
+
+    /**
+     * Gets the session for the given security token from the session store,
+     * falling back to the database mirror (if enabled) for tokens the store does not know yet.
+     * Tokens the mirror did not know either are not looked up again for a short while.
+     *
+     * @param securityToken the security token
+     * @return the session, or {@code null} if the token is unknown
+     */
+    public TokenSession getSession(String securityToken) {
+        if (securityToken == null) {
+            return null;
+        }
+
+        TokenSessionStore store = tokenSessionStoreBO.getStore();
+        TokenSession tokenSession = store.get(securityToken);
+
+        if (tokenSession == null && tokenSessionStoreBO.isMirrorEnabled()
+                && !tokenSessionStoreBO.isRecentMiss(securityToken)) {
+            TokenSessionEntity tokenSessionEntity = tokenDAO.findById(securityToken);
+
+            if (tokenSessionEntity != null) {
+                tokenSession = fromEntity(tokenSessionEntity);
+
+                if (!store.create(tokenSession)) {
+                    // another request loaded it first, and may have changed it since
+                    tokenSession = store.get(securityToken);
+                }
+            } else {
+                tokenSessionStoreBO.recordMiss(securityToken);
+            }
+        }
+
+        return tokenSession;
+    }
+
     public boolean verifyToken(Long userId, String securityToken) {
-        TokenSessionEntity tokenSessionEntity = tokenDAO.findById(securityToken);
-        if (tokenSessionEntity == null || !tokenSessionEntity.getUserEntity().getId().equals(userId)) {
-            return false;
+        return verifySession(userId, securityToken) != null;
+    }
+
+    /**
+     * Looks up the session for the given security token and checks that it belongs to the given user
+     * and has not expired. With ENABLE_SLIDING_SESSION_EXPIRATION, a session that is about to expire
+     * is extended by another SESSION_LENGTH_MINUTES.
+     *
+     * @param userId        the user ID sent by the client
+     * @param securityToken the security token sent by the client
+     * @return the session, or {@code null} if the token is invalid
+     */
+    public TokenSession verifySession(Long userId, String securityToken) {
+        TokenSession tokenSession = getSession(securityToken);
+        if (tokenSession == null || !tokenSession.getUserId().equals(userId)) {
+            return null;
         }
         long time = new Date().getTime();
-        long tokenTime = tokenSessionEntity.getExpirationDate().getTime();
-        return time <= tokenTime;
+        if (tokenSession.isExpired(time)) {
+            return null;
+        }
+
+        if (Boolean.parseBoolean(parameterBO.getStrParam("ENABLE_SLIDING_SESSION_EXPIRATION", "false"))) {
+            return extendIfNearExpiry(tokenSession, time);
+        }
+
+        return tokenSession;
+    }
+
+    /**
+     * Pushes the expiration date of the given session out by SESSION_LENGTH_MINUTES, but only once fewer than
+     * SESSION_SLIDING_THRESHOLD_MINUTES are left, so that the store and mirror are not written on every request.
+     *
+     * @return the session, or {@code null} if it was removed in the meantime
+     */
+    private TokenSession extendIfNearExpiry(TokenSession tokenSession, long time) {
+        long thresholdMillis = parameterBO.getIntParam("SESSION_SLIDING_THRESHOLD_MINUTES", 15) * 60000L;
+
+        if (tokenSession.getExpirationDate() - time > thresholdMillis) {
+            return tokenSession;
+        }
+
+        Date expirationDate = getMinutes(parameterBO.getIntParam("SESSION_LENGTH_MINUTES", 130));
+        TokenSession extendedSession = tokenSessionStoreBO.getStore().setExpirationDate(
+                tokenSession.getSecurityToken(), expirationDate.getTime());
+
+        if (extendedSession != null && tokenSessionStoreBO.isMirrorEnabled()) {
+            tokenDAO.updateExpirationDate(tokenSession.getSecurityToken(), expirationDate);
+            tokenSessionStoreBO.publishChangedSession(tokenSession.getSecurityToken());
+        }
+
+        return extendedSession;
     }
 
     public String createToken(Long userId, String clientHostName) {
-        TokenSessionEntity tokenSessionEntity = new TokenSessionEntity();
         Date expirationDate = getMinutes(parameterBO.getIntParam("SESSION_LENGTH_MINUTES", 130));
-        tokenSessionEntity.setExpirationDate(expirationDate);
         String randomUUID = UUID.randomUUID().toString();
-        tokenSessionEntity.setSecurityToken(randomUUID);
         UserEntity userEntity = userDAO.findById(userId);
-        tokenSessionEntity.setUserEntity(userEntity);
-        tokenSessionEntity.setPremium(userEntity.isPremium());
-        tokenSessionEntity.setClientHostIp(clientHostName);
-        tokenSessionEntity.setActivePersonaId(0L);
-        tokenSessionEntity.setEventSessionId(null);
-        tokenDAO.insert(tokenSessionEntity);
+
+        TokenSession tokenSession = new TokenSession();
+        tokenSession.setSecurityToken(randomUUID);
+        tokenSession.setUserId(userId);
+        tokenSession.setExpirationDate(expirationDate.getTime());
+        tokenSession.setPremium(userEntity.isPremium());
+        tokenSession.setAdmin(userEntity.isAdmin());
+        tokenSession.setClientHostIp(clientHostName);
+        tokenSession.setGameHardwareHash(userEntity.getGameHardwareHash());
+        tokenSession.setActivePersonaId(0L);
+        tokenSession.setEventSessionId(null);
+        tokenSessionStoreBO.getStore().create(tokenSession);
+
+        if (tokenSessionStoreBO.isMirrorEnabled()) {
+            TokenSessionEntity tokenSessionEntity = new TokenSessionEntity();
+            tokenSessionEntity.setExpirationDate(expirationDate);
+            tokenSessionEntity.setSecurityToken(randomUUID);
+            tokenSessionEntity.setUserEntity(userEntity);
+            tokenSessionEntity.setPremium(userEntity.isPremium());
+            tokenSessionEntity.setClientHostIp(clientHostName);
+            tokenSessionEntity.setActivePersonaId(0L);
+            tokenSessionEntity.setEventSessionId(null);
+            tokenDAO.insert(tokenSessionEntity);
+        }
+
         return randomUUID;
     }
 
     public void verifyPersonaOwnership(String securityToken, Long personaId) {
-        TokenSessionEntity tokenSession = tokenDAO.findById(securityToken);
+        TokenSession tokenSession = getSession(securityToken);
         if (tokenSession == null) {
             throw new EngineException(EngineExceptionCode.NoSuchSessionInSessionStore, true);
         }
 
-        if (!tokenSession.getUserEntity().ownsPersona(personaId)) {
+        if (!userDAO.findById(tokenSession.getUserId()).ownsPersona(personaId)) {
             throw new EngineException(EngineExceptionCode.RemotePersonaDoesNotBelongToUser, true);
         }
     }
 
     public void deleteByUserId(Long userId) {
-        tokenDAO.deleteByUserId(userId);
+        tokenSessionStoreBO.getStore().removeByUserId(userId);
+
+        if (tokenSessionStoreBO.isMirrorEnabled()) {
+            tokenSessionStoreBO.discardMirrorWrites(userId);
+            tokenDAO.deleteByUserId(userId);
+            tokenSessionStoreBO.publishChangedUser(userId);
+        }
+    }
+
+    /**
+     * Sets the relay crypto tickets of the sessions that have the given personas active, e.g. for all entrants of
+     * a launching lobby. The store is updated in one call, and the database mirror through the batched flush;
+     * tickets of personas the store does not know are written to the mirror in one JDBC batch.
+     *
+     * @param ticketsByPersonaId the encoded relay crypto tickets, keyed by persona ID
+     */
+    public void updateRelayCryptoTickets(Map<Long, String> ticketsByPersonaId) {
+        List<TokenSession> updatedSessions = tokenSessionStoreBO.getStore().updateRelayCryptoTickets(ticketsByPersonaId);
+
+        if (tokenSessionStoreBO.isMirrorEnabled()) {
+            Map<Long, String> unknownPersonas = new HashMap<>(ticketsByPersonaId);
+
+            for (TokenSession tokenSession : updatedSessions) {
+                unknownPersonas.remove(tokenSession.getActivePersonaId());
+                tokenSessionStoreBO.queueMirrorWrite(tokenSession);
+            }
+
+            tokenDAO.updateRelayCryptoTickets(unknownPersonas);
+            tokenSessionStoreBO.publishChangedPersonas(unknownPersonas.keySet());
+        }
+    }
+
+    /**
+     * Records the game hardware hash of the user owning the given session.
+     *
+     * @param securityToken    the security token
+     * @param gameHardwareHash the hardware hash
+     */
+    public void setGameHardwareHash(String securityToken, String gameHardwareHash) {
+        updateSession(securityToken, store -> store.setGameHardwareHash(securityToken, gameHardwareHash), false);
+    }
+
+    private TokenSession requireSession(String securityToken) {
+        SessionContext resolvedContext = getResolvedContext(securityToken);
+
+        if (resolvedContext != null) {
+            return resolvedContext.getTokenSession();
+        }
+
+        TokenSession tokenSession = getSession(securityToken);
+
+        if (tokenSession == null) {
+            throw new EngineException(EngineExceptionCode.NoSuchSessionInSessionStore, true);
+        }
+
+        return tokenSession;
+    }
+
+    /**
+     * Applies a change to a single field of a stored session. Only that field is written, so changes made in the
+     * meantime by other requests or timers (e.g. a relay crypto ticket set at lobby launch) are kept. Sessions
+     * only the mirror knows are loaded into the store first. The updated session then replaces the one in the
+     * request's SessionContext, and the database mirror is updated by the next batched flush, or right away if
+     * {@code writeThrough} is set (used on logout).
+     *
+     * @param change sets the field in the given store and returns the updated session, or {@code null}
+     *               if the store does not know the session
+     */
+    private void updateSession(String securityToken, Function<TokenSessionStore, TokenSession> change,
+                               boolean writeThrough) {
+        TokenSessionStore store = tokenSessionStoreBO.getStore();
+        TokenSession tokenSession = change.apply(store);
+
+        if (tokenSession == null && getSession(securityToken) != null) {
+            tokenSession = change.apply(store);
+        }
+
+        if (tokenSession == null) {
+            throw new EngineException(EngineExceptionCode.NoSuchSessionInSessionStore, true);
+        }
+
+        SessionContext resolvedContext = getResolvedContext(securityToken);
+
+        if (resolvedContext != null) {
+            resolvedContext.resolve(tokenSession);
+        }
+
+        if (tokenSessionStoreBO.isMirrorEnabled()) {
+            if (writeThrough) {
+                tokenSessionStoreBO.discardMirrorWrites(tokenSession.getUserId());
+                tokenDAO.updateState(tokenSession.getSecurityToken(), tokenSession.getActivePersonaId(),
+                        tokenSession.getActiveLobbyId(), tokenSession.getEventSessionId(),
+                        tokenSession.getRelayCryptoTicket());
+                tokenSessionStoreBO.publishChangedSession(securityToken);
+            } else {
+                tokenSessionStoreBO.queueMirrorWrite(tokenSession);
+            }
+        }
+    }
+
+    /**
+     * Gets the request's {@link SessionContext} if it was resolved for the given token.
+     * Calls made outside of an HTTP request (timers, Redis listeners) have no usable context.
+     */
+    private SessionContext getResolvedContext(String securityToken) {
+        try {
+            return sessionContext.isResolvedFor(securityToken) ? sessionContext : null;
+        } catch (ContextNotActiveException e) {
+            return null;
+        }
+    }
+
+    private TokenSession fromEntity(TokenSessionEntity tokenSessionEntity) {
+        TokenSession tokenSession = new TokenSession();
+        tokenSession.setSecurityToken(tokenSessionEntity.getSecurityToken());
+        tokenSession.setUserId(tokenSessionEntity.getUserEntity().getId());
+        tokenSession.setExpirationDate(tokenSessionEntity.getExpirationDate().getTime());
+        tokenSession.setActivePersonaId(tokenSessionEntity.getActivePersonaId() == null ? 0L :
+                tokenSessionEntity.getActivePersonaId());
+        tokenSession.setRelayCryptoTicket(tokenSessionEntity.getRelayCryptoTicket());
+        tokenSession.setActiveLobbyId(tokenSessionEntity.getActiveLobbyId());
+        tokenSession.setEventSessionId(tokenSessionEntity.getEventSessionId());
+        tokenSession.setPremium(tokenSessionEntity.isPremium());
+        tokenSession.setAdmin(tokenSessionEntity.getUserEntity().isAdmin());
+        tokenSession.setClientHostIp(tokenSessionEntity.getClientHostIp());
+        tokenSession.setGameHardwareHash(tokenSessionEntity.getUserEntity().getGameHardwareHash());
+        return tokenSession;
     }
 
     private Date getMinutes(int minutes) {
@@ -92,19 +328,12 @@ public class TokenSessionBO {
     }
 
     private LoginStatusVO checkGeoIp(String ip) {
-        LoginStatusVO loginStatusVO = new LoginStatusVO(0L, "", false);
-        String allowedCountries = serverInfoBO.getServerInformation().getAllowedCountries();
-        if (allowedCountries != null && !allowedCountries.isEmpty()) {
-            String geoip2DbFilePath = parameterBO.getStrParam("GEOIP2_DB_FILE_PATH");
-            GeoIp2 geoIp2 = GeoIp2.getInstance(geoip2DbFilePath);
-            if (geoIp2.isCountryAllowed(ip, allowedCountries)) {
-                return new LoginStatusVO(0L, "", true);
-            } else {
-                loginStatusVO.setDescription("GEOIP BLOCK ACTIVE IN THIS SERVER, ALLOWED COUNTRIES: [" + allowedCountries + "]");
-            }
-        } else {
+        if (geoIpBO.isUnrestricted() || geoIpBO.isCountryAllowed(ip)) {
             return new LoginStatusVO(0L, "", true);
         }
+
+        LoginStatusVO loginStatusVO = new LoginStatusVO(0L, "", false);
+        loginStatusVO.setDescription("GEOIP BLOCK ACTIVE IN THIS SERVER, ALLOWED COUNTRIES: [" + geoIpBO.getAllowedCountries() + "]");
         return loginStatusVO;
     }
 
@@ -162,54 +391,44 @@ public class TokenSessionBO {
     }
 
     public Long getActivePersonaId(String securityToken) {
-        TokenSessionEntity tokenSessionEntity = tokenDAO.findById(securityToken);
-        return tokenSessionEntity.getActivePersonaId();
+        return requireSession(securityToken).getActivePersonaId();
     }
 
     public void setActivePersonaId(String securityToken, Long personaId, Boolean isLogout) {
-        TokenSessionEntity tokenSessionEntity = tokenDAO.findById(securityToken);
-
         if (!isLogout) {
-            if (!tokenSessionEntity.getUserEntity().ownsPersona(personaId)) {
+            if (!userDAO.findById(requireSession(securityToken).getUserId()).ownsPersona(personaId)) {
                 throw new EngineException(EngineExceptionCode.RemotePersonaDoesNotBelongToUser, true);
             }
         }
 
-        tokenSessionEntity.setActivePersonaId(personaId);
-        tokenDAO.update(tokenSessionEntity);
+        updateSession(securityToken, store -> store.setActivePersonaId(securityToken, personaId), isLogout);
     }
 
     public String getActiveRelayCryptoTicket(String securityToken) {
-        TokenSessionEntity tokenSessionEntity = tokenDAO.findById(securityToken);
-        return tokenSessionEntity.getRelayCryptoTicket();
+        return requireSession(securityToken).getRelayCryptoTicket();
     }
 
     public Long getActiveLobbyId(String securityToken) {
-        TokenSessionEntity tokenSessionEntity = tokenDAO.findById(securityToken);
-        return tokenSessionEntity.getActiveLobbyId();
+        return requireSession(securityToken).getActiveLobbyId();
     }
 
     public void setActiveLobbyId(String securityToken, Long lobbyId) {
-        TokenSessionEntity tokenSessionEntity = tokenDAO.findById(securityToken);
-        tokenSessionEntity.setActiveLobbyId(lobbyId);
-        tokenDAO.update(tokenSessionEntity);
+        updateSession(securityToken, store -> store.setActiveLobbyId(securityToken, lobbyId), false);
     }
 
     public boolean isAdmin(String securityToken) {
-        return getUser(securityToken).isAdmin();
+        return requireSession(securityToken).isAdmin();
     }
 
     public UserEntity getUser(String securityToken) {
-        return tokenDAO.findById(securityToken).getUserEntity();
+        return userDAO.findById(requireSession(securityToken).getUserId());
     }
 
     public void setEventSessionId(String securityToken, Long eventSessionId) {
-        TokenSessionEntity tokenSessionEntity = tokenDAO.findById(securityToken);
-        tokenSessionEntity.setEventSessionId(eventSessionId);
-        tokenDAO.update(tokenSessionEntity);
+        updateSession(securityToken, store -> store.setEventSessionId(securityToken, eventSessionId), false);
     }
 
     public Long getEventSessionId(String securityToken) {
-        return tokenDAO.findById(securityToken).getEventSessionId();
+        return requireSession(securityToken).getEventSessionId();
     }
 }
\ No newline at end of file
@@ -0,0 +1,353 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.soapboxrace.core.bo.util.LocalTokenSessionStore;
+import com.soapboxrace.core.bo.util.RedisTokenSessionStore;
+import com.soapboxrace.core.bo.util.TokenSession;
+import com.soapboxrace.core.bo.util.TokenSessionStore;
+import com.soapboxrace.core.dao.TokenSessionDAO;
+import com.soapboxrace.core.jpa.TokenSessionEntity;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Owns the {@link TokenSessionStore} used by {@link TokenSessionBO}.
+ * The store is selected with the TOKEN_SESSION_STORE parameter ({@code local} or {@code redis}).
+ * When ENABLE_TOKEN_SESSION_MIRROR is true (the default), sessions are also written to TOKEN_SESSION
+ * and read back from it when the store does not know a token, e.g. after a restart. Tokens the mirror
+ * does not know either are remembered for TOKEN_SESSION_MISS_CACHE_SECONDS, so repeated requests with a stale
+ * token do not each cost a database round trip.
+ * <p>
+ * Mirror writes of transient session state are buffered (coalesced per token) and flushed
+ * every few seconds in one JDBC batch. The store itself is always up to date, so reads on this
+ * node see their own writes; a crash only loses state that clients send again anyway.
+ * <p>
+ * The local store is a per-node copy, so with the mirror enabled it is treated as a cache in front of it. With Redis
+ * enabled, every node publishes the sessions it changed (after each flush, and right away for changes written
+ * straight to the database), and the other nodes drop their copies so the next request reloads them from the mirror.
+ * As a fallback for missed messages, for reloads that beat a commit, and for deployments without Redis, local
+ * sessions older than TOKEN_SESSION_LOCAL_MAX_AGE_SECONDS (default 30) are dropped after each flush as well.
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class TokenSessionStoreBO {
+
+    private static final String CHANNEL = "token_session_updates";
+
+    @EJB
+    private RedisBO redisBO;
+
+    @EJB
+    private ParameterBO parameterBO;
+
+    @EJB
+    private TokenSessionDAO tokenSessionDAO;
+
+    private final Map<String, TokenSession> pendingMirrorWrites = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private final Map<String, Long> missedTokens = new ConcurrentHashMap<>();
+
+    private long missCacheMillis;
+
+    private int missCacheSize;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private TokenSessionStore store;
+
+    private boolean mirrorEnabled;
+
+    private long localMaxAgeMillis;
+
+    private boolean syncEnabled;
+    private StatefulRedisPubSubConnection<String, String> pubSubConnection;
+    private StatefulRedisConnection<String, String> connection;
+    private SessionSyncListener listener;
+
+    @PostConstruct
+    public void init() {
+        String storeType = parameterBO.getStrParam("TOKEN_SESSION_STORE", "local");
+
+        if ("redis".equalsIgnoreCase(storeType)) {
+            if (parameterBO.getBoolParam("ENABLE_REDIS")) {
+                this.store = new RedisTokenSessionStore(redisBO.getConnection());
+            } else {
+                System.out.println("TokenSessionStoreBO: Redis store requested but Redis is disabled, using local store");
+            }
+        }
+
+        if (this.store == null) {
+            this.store = new LocalTokenSessionStore();
+        }
+
+        this.mirrorEnabled = Boolean.parseBoolean(parameterBO.getStrParam("ENABLE_TOKEN_SESSION_MIRROR", "true"));
+        this.missCacheMillis = parameterBO.getIntParam("TOKEN_SESSION_MISS_CACHE_SECONDS", 30) * 1000L;
+        this.missCacheSize = parameterBO.getIntParam("TOKEN_SESSION_MISS_CACHE_SIZE", 10000);
+
+        if (this.store instanceof LocalTokenSessionStore && this.mirrorEnabled) {
+            this.localMaxAgeMillis = parameterBO.getIntParam("TOKEN_SESSION_LOCAL_MAX_AGE_SECONDS", 30) * 1000L;
+            this.syncEnabled = parameterBO.getBoolParam("ENABLE_REDIS");
+        }
+
+        if (this.syncEnabled) {
+            this.connection = this.redisBO.getConnection();
+            this.listener = new SessionSyncListener();
+            this.pubSubConnection = this.redisBO.createPubSub();
+            this.pubSubConnection.addListener(this.listener);
+            this.pubSubConnection.sync().subscribe(CHANNEL);
+        }
+
+        System.out.println("TokenSessionStoreBO: using " + this.store.getClass().getSimpleName()
+                + (this.mirrorEnabled ? " with database mirror" : ""));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        System.out.println("TokenSessionStoreBO shutdown");
+
+        flushMirrorWrites();
+
+        if (this.syncEnabled) {
+            this.pubSubConnection.removeListener(this.listener);
+            this.pubSubConnection.close();
+            this.listener = null;
+        }
+    }
+
+    public TokenSessionStore getStore() {
+        return store;
+    }
+
+    public boolean isMirrorEnabled() {
+        return mirrorEnabled;
+    }
+
+    @Schedule(minute = "*", hour = "*", persistent = false)
+    public void purgeExpired() {
+        store.purgeExpired();
+
+        long now = System.currentTimeMillis();
+        missedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+
+    /**
+     * @param securityToken the security token
+     * @return {@code true} if the mirror recently did not know the given token
+     */
+    public boolean isRecentMiss(String securityToken) {
+        Long expiresAt = missedTokens.get(securityToken);
+
+        if (expiresAt == null) {
+            return false;
+        }
+
+        if (expiresAt <= System.currentTimeMillis()) {
+            missedTokens.remove(securityToken, expiresAt);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Remembers that the mirror does not know the given token. Once the cache is full, further misses are not
+     * remembered until expired entries are purged.
+     *
+     * @param securityToken the security token
+     */
+    public void recordMiss(String securityToken) {
+        if (missCacheMillis > 0 && missedTokens.size() < missCacheSize) {
+            missedTokens.put(securityToken, System.currentTimeMillis() + missCacheMillis);
+        }
+    }
+
+    /**
+     * Queues the transient state of the given session for the next mirror flush.
+     * A later write for the same token replaces an earlier one that has not been flushed yet.
+     *
+     * @param tokenSession the session to write
+     */
+    public void queueMirrorWrite(TokenSession tokenSession) {
+        if (this.mirrorEnabled) {
+            pendingMirrorWrites.put(tokenSession.getSecurityToken(), new TokenSession(tokenSession));
+        }
+    }
+
+    /**
+     * Tells the other nodes to drop their copy of the given session, once its new state is in the database mirror.
+     *
+     * @param securityToken the security token
+     */
+    public void publishChangedSession(String securityToken) {
+        publish("token " + securityToken);
+    }
+
+    /**
+     * Tells the other nodes to drop their copy of the given user's session, e.g. because it was deleted.
+     *
+     * @param userId the user ID
+     */
+    public void publishChangedUser(Long userId) {
+        publish("user " + userId);
+    }
+
+    /**
+     * Tells the other nodes to drop their copies of the sessions that have the given personas active.
+     *
+     * @param personaIds the persona IDs
+     */
+    public void publishChangedPersonas(Collection<Long> personaIds) {
+        if (!personaIds.isEmpty()) {
+            StringBuilder message = new StringBuilder("persona");
+
+            for (Long personaId : personaIds) {
+                message.append(' ').append(personaId);
+            }
+
+            publish(message.toString());
+        }
+    }
+
+    /**
+     * Drops queued mirror writes for the given user, e.g. because their session row is being deleted.
+     *
+     * @param userId the user ID
+     */
+    public void discardMirrorWrites(Long userId) {
+        pendingMirrorWrites.values().removeIf(tokenSession -> tokenSession.getUserId().equals(userId));
+    }
+
+    @Schedule(second = "*/5", minute = "*", hour = "*", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void flushMirrorWrites() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            List<TokenSessionEntity> batch = new ArrayList<>(pendingMirrorWrites.size());
+
+            for (Map.Entry<String, TokenSession> entry : pendingMirrorWrites.entrySet()) {
+                TokenSession tokenSession = entry.getValue();
+
+                if (pendingMirrorWrites.remove(entry.getKey(), tokenSession)) {
+                    TokenSessionEntity tokenSessionEntity = new TokenSessionEntity();
+                    tokenSessionEntity.setSecurityToken(tokenSession.getSecurityToken());
+                    tokenSessionEntity.setActivePersonaId(tokenSession.getActivePersonaId());
+                    tokenSessionEntity.setActiveLobbyId(tokenSession.getActiveLobbyId());
+                    tokenSessionEntity.setEventSessionId(tokenSession.getEventSessionId());
+                    tokenSessionEntity.setRelayCryptoTicket(tokenSession.getRelayCryptoTicket());
+                    batch.add(tokenSessionEntity);
+                }
+            }
+
+            // the DAO commits on its own, so other nodes reload the new state
+            tokenSessionDAO.updateStates(batch);
+
+            if (!batch.isEmpty()) {
+                StringBuilder message = new StringBuilder("token");
+
+                for (TokenSessionEntity tokenSessionEntity : batch) {
+                    message.append(' ').append(tokenSessionEntity.getSecurityToken());
+                }
+
+                publish(message.toString());
+            }
+
+            if (localMaxAgeMillis > 0) {
+                ((LocalTokenSessionStore) store).evictCreatedBefore(System.currentTimeMillis() - localMaxAgeMillis);
+            }
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    private void publish(String message) {
+        if (this.syncEnabled) {
+            this.connection.sync().publish(CHANNEL, nodeId + " " + message);
+        }
+    }
+
+    private void applyMessage(String message) {
+        String[] parts = message.split(" ");
+
+        if (parts.length < 3 || parts[0].equals(nodeId)) {
+            return;
+        }
+
+        for (int i = 2; i < parts.length; i++) {
+            switch (parts[1]) {
+                case "token":
+                    store.remove(parts[i]);
+                    break;
+                case "user":
+                    store.removeByUserId(Long.valueOf(parts[i]));
+                    break;
+                case "persona":
+                    String securityToken = store.findTokenByPersonaId(Long.valueOf(parts[i]));
+
+                    if (securityToken != null) {
+                        store.remove(securityToken);
+                    }
+                    break;
+                default:
+                    System.err.println("TokenSessionStoreBO: unknown message " + message);
+                    return;
+            }
+        }
+    }
+
+    private class SessionSyncListener implements RedisPubSubListener<String, String> {
+        @Override
+        public void message(String channel, String message) {
+            if (CHANNEL.equals(channel)) {
+                applyMessage(message);
+            }
+        }
+
+        @Override
+        public void message(String pattern, String channel, String message) {
+
+        }
+
+        @Override
+        public void subscribed(String channel, long count) {
+
+        }
+
+        @Override
+        public void psubscribed(String pattern, long count) {
+
+        }
+
+        @Override
+        public void unsubscribed(String channel, long count) {
+
+        }
+
+        @Override
+        public void punsubscribed(String pattern, long count) {
+
+        }
+    }
+}
\ No newline at end of file
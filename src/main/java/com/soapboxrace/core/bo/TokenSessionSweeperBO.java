@@ -0,0 +1,106 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.soapboxrace.core.dao.TokenSessionDAO;
+
+import javax.ejb.*;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes expired rows from TOKEN_SESSION. Rows are removed in batches of TOKEN_SESSION_SWEEP_BATCH_SIZE
+ * (each in its own transaction) and at most TOKEN_SESSION_SWEEP_MAX_BATCHES batches are run per sweep,
+ * so a large backlog is worked off over several runs instead of holding locks for a long time.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class TokenSessionSweeperBO {
+
+    @EJB
+    private TokenSessionDAO tokenSessionDAO;
+
+    @EJB
+    private TokenSessionStoreBO tokenSessionStoreBO;
+
+    @EJB
+    private ParameterBO parameterBO;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private final AtomicLong sweepCount = new AtomicLong();
+
+    private final AtomicLong totalSweptRows = new AtomicLong();
+
+    private final AtomicLong totalSweepMillis = new AtomicLong();
+
+    private volatile long lastSweptRows;
+
+    private volatile long lastSweepMillis;
+
+    @Schedule(minute = "*/5", hour = "*", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void sweep() {
+        if (!tokenSessionStoreBO.isMirrorEnabled()
+                || !Boolean.parseBoolean(parameterBO.getStrParam("ENABLE_TOKEN_SESSION_SWEEPER", "true"))
+                || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            int batchSize = parameterBO.getIntParam("TOKEN_SESSION_SWEEP_BATCH_SIZE", 500);
+            int maxBatches = parameterBO.getIntParam("TOKEN_SESSION_SWEEP_MAX_BATCHES", 20);
+            Date now = new Date();
+            long start = System.currentTimeMillis();
+            long swept = 0;
+
+            for (int i = 0; i < maxBatches; i++) {
+                int deleted = tokenSessionDAO.deleteExpired(now, batchSize);
+                swept += deleted;
+
+                if (deleted < batchSize) {
+                    break;
+                }
+            }
+
+            long duration = System.currentTimeMillis() - start;
+            lastSweptRows = swept;
+            lastSweepMillis = duration;
+            sweepCount.incrementAndGet();
+            totalSweptRows.addAndGet(swept);
+            totalSweepMillis.addAndGet(duration);
+
+            if (swept > 0) {
+                System.out.println(String.format("TokenSessionSweeperBO: swept %d expired sessions in %dms", swept,
+                        duration));
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    public long getSweepCount() {
+        return sweepCount.get();
+    }
+
+    public long getTotalSweptRows() {
+        return totalSweptRows.get();
+    }
+
+    public long getTotalSweepMillis() {
+        return totalSweepMillis.get();
+    }
+
+    public long getLastSweptRows() {
+        return lastSweptRows;
+    }
+
+    public long getLastSweepMillis() {
+        return lastSweepMillis;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,85 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An encoded response body kept by {@link com.soapboxrace.core.bo.ResponseCacheBO}, together with its
+ * gzip-compressed form and an entity tag.
+ */
+public class CachedResponse {
+
+    /**
+     * Bodies smaller than this are not worth compressing.
+     */
+    private static final int MIN_GZIP_SIZE = 256;
+
+    private final byte[] body;
+
+    private final byte[] gzippedBody;
+
+    private final String entityTag;
+
+    private final long parameterSnapshot;
+
+    private final Object validator;
+
+    private final long expiresAt;
+
+    public CachedResponse(byte[] body, long parameterSnapshot, Object validator, long expiresAt) {
+        this.body = body;
+        this.gzippedBody = body.length >= MIN_GZIP_SIZE ? gzip(body) : null;
+        this.entityTag = DigestUtils.sha1Hex(body);
+        this.parameterSnapshot = parameterSnapshot;
+        this.validator = validator;
+        this.expiresAt = expiresAt;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public byte[] getGzippedBody() {
+        return gzippedBody;
+    }
+
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * Checks whether this entry can still be served.
+     *
+     * @param parameterSnapshot the current parameter snapshot version
+     * @param validator         the current validator of the source (e.g. a file timestamp), or {@code null}
+     * @param now               the current time in milliseconds
+     * @return {@code true} if the entry is still valid
+     */
+    public boolean isValid(long parameterSnapshot, Object validator, long now) {
+        return this.parameterSnapshot == parameterSnapshot && Objects.equals(this.validator, validator)
+                && now < expiresAt;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(body.length / 2);
+
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+            gzipOutputStream.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return byteArrayOutputStream.toByteArray();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,323 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory timer for large numbers of short, non-persistent timeouts.
+ * <p>
+ * Timeouts are hashed into a ring of buckets by deadline. A single worker thread advances one bucket per tick and
+ * hands expired timeouts to a bounded executor, so scheduling and cancelling are O(1). When the executor queue is full
+ * the callback runs on the worker thread instead of being dropped, which delays the rest of that tick. Timeouts fire
+ * at most one tick late, plus however long they wait for a callback thread. That delay is recorded as firing lag.
+ */
+public class HashedWheelTimer {
+
+    private static final int STATE_PENDING = 0;
+
+    private static final int STATE_CANCELLED = 1;
+
+    private static final int STATE_EXPIRED = 2;
+
+    private final long tickNanos;
+
+    private final LinkedList<Timeout>[] wheel;
+
+    private final int mask;
+
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final ThreadPoolExecutor executor;
+
+    private final Thread worker;
+
+    private final long startTime;
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final AtomicLong scheduledCount = new AtomicLong();
+
+    private final AtomicLong firedCount = new AtomicLong();
+
+    private final AtomicLong cancelledCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong totalLagNanos = new AtomicLong();
+
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private long tick;
+
+    /**
+     * @param tickMillis        the tick resolution in milliseconds
+     * @param wheelSize         the number of buckets; rounded up to a power of two
+     * @param executorThreads   the number of threads running callbacks
+     * @param executorQueueSize the number of expired timeouts that may wait for a callback thread
+     * @param threadFactory     the factory for the worker and callback threads
+     */
+    @SuppressWarnings("unchecked")
+    public HashedWheelTimer(long tickMillis, int wheelSize, int executorThreads, int executorQueueSize,
+                            ThreadFactory threadFactory) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.wheel = new LinkedList[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            this.wheel[i] = new LinkedList<>();
+        }
+
+        AtomicInteger executorThreadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(executorThreads, executorThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(executorQueueSize), runnable -> {
+            Thread thread = threadFactory.newThread(runnable);
+            thread.setName("timer-wheel-callback-" + executorThreadCount.getAndIncrement());
+            return thread;
+        });
+        this.startTime = System.nanoTime();
+        this.worker = threadFactory.newThread(this::run);
+        this.worker.setName("timer-wheel");
+        this.worker.start();
+    }
+
+    /**
+     * Schedules a task to run once after the given delay.
+     *
+     * @param task        the task
+     * @param delayMillis the delay in milliseconds
+     * @return a handle that can cancel the timeout
+     * @throws IllegalStateException if the timer was stopped
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        if (!running) {
+            throw new IllegalStateException("Timer has been stopped");
+        }
+
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        Timeout timeout = new Timeout(task, deadline);
+
+        pendingCount.incrementAndGet();
+        scheduledCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+
+        return timeout;
+    }
+
+    /**
+     * Stops the wheel. Timeouts that have not expired yet never fire; callbacks already handed to the executor
+     * are given a few seconds to finish.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+
+        try {
+            worker.join(5000);
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the number of timeouts that have been scheduled and have neither fired nor been cancelled
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getScheduledCount() {
+        return scheduledCount.get();
+    }
+
+    public long getFiredCount() {
+        return firedCount.get();
+    }
+
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    /**
+     * @return the number of callbacks run on the worker thread because the callback executor was full
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return the number of callbacks that threw an exception
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return the average time between a deadline and its callback starting, in milliseconds
+     */
+    public double getAverageLagMillis() {
+        long fired = firedCount.get();
+        return fired == 0 ? 0 : totalLagNanos.get() / (double) fired / 1_000_000;
+    }
+
+    /**
+     * @return the longest time between a deadline and its callback starting, in milliseconds
+     */
+    public double getMaxLagMillis() {
+        return maxLagNanos.get() / 1_000_000d;
+    }
+
+    public long getTickMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    public int getWheelSize() {
+        return wheel.length;
+    }
+
+    private void run() {
+        while (running) {
+            long sleepNanos = startTime + tickNanos * (tick + 1) - System.nanoTime();
+
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+
+                continue;
+            }
+
+            transferPendingTimeouts();
+            expireTimeouts(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.state.get() != STATE_PENDING) {
+                continue;
+            }
+
+            long expiryTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+            wheel[(int) (Math.max(expiryTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(LinkedList<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+
+            if (timeout.state.get() == STATE_CANCELLED) {
+                iterator.remove();
+            } else if (timeout.remainingRounds <= 0) {
+                iterator.remove();
+                fire(timeout);
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    private void fire(Timeout timeout) {
+        if (!timeout.state.compareAndSet(STATE_PENDING, STATE_EXPIRED)) {
+            return;
+        }
+
+        pendingCount.decrementAndGet();
+
+        Runnable callback = () -> {
+            long lag = Math.max(0, System.nanoTime() - startTime - timeout.deadline);
+            firedCount.incrementAndGet();
+            totalLagNanos.addAndGet(lag);
+            maxLagNanos.accumulateAndGet(lag, Math::max);
+
+            try {
+                timeout.task.run();
+            } catch (Exception e) {
+                failedCount.incrementAndGet();
+                System.err.println("Timer callback failed [" + e.getMessage() + "]");
+                e.printStackTrace();
+            }
+        };
+
+        try {
+            executor.execute(callback);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            System.err.println("Timer callback executor queue is full, running callback on the wheel thread");
+            callback.run();
+        }
+    }
+
+    /**
+     * Handle for a scheduled task.
+     */
+    public class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task if it has not fired yet.
+         *
+         * @return {@code true} if the task was cancelled by this call
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+                return false;
+            }
+
+            pendingCount.decrementAndGet();
+            cancelledCount.incrementAndGet();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+    }
+}
\ No newline at end of file
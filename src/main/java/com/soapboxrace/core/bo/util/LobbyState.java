@@ -0,0 +1,308 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import com.soapboxrace.core.jpa.EventEntity;
+import com.soapboxrace.core.jpa.LobbyEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The live state of a lobby: its event, seats, deadline and entrants. Lobbies only live for the length of their
+ * countdown, so this is what the server reads while they are open; LOBBY and LOBBY_ENTRANT are only written for
+ * auditing, unless lobbies are shared between nodes (see {@code LobbyRegistryBO}), in which case the state is read
+ * back from them.
+ * <p>
+ * The seats of a lobby are an immutable snapshot that is replaced with compare-and-set, so joins, leaves and the
+ * launch are atomic per lobby without taking a lock: a lobby can never hold more than its maximum number of
+ * players, nor the same persona twice, and nobody can join once it has launched.
+ */
+public class LobbyState {
+    private final Long id;
+    private final int eventId;
+    private final int carClassHash;
+    private final int maxPlayers;
+    private final int countdownTime;
+    private final boolean isPrivate;
+    private final Long personaId;
+    private final long startedTime;
+    private final AtomicReference<Seats> seats;
+
+    public LobbyState(LobbyEntity lobbyEntity, long startedTime) {
+        this(lobbyEntity, startedTime, Collections.emptyList());
+    }
+
+    /**
+     * Creates the state of a lobby whose seats are already taken, e.g. as read back from LOBBY_ENTRANT.
+     *
+     * @param lobbyEntity the lobby
+     * @param startedTime the time at which the lobby was created, in milliseconds since the epoch
+     * @param entrants    the entrants of the lobby
+     */
+    public LobbyState(LobbyEntity lobbyEntity, long startedTime, Collection<Entrant> entrants) {
+        EventEntity eventEntity = lobbyEntity.getEvent();
+
+        this.id = lobbyEntity.getId();
+        this.eventId = eventEntity.getId();
+        this.carClassHash = eventEntity.getCarClassHash();
+        this.maxPlayers = eventEntity.getMaxPlayers();
+        this.countdownTime = eventEntity.getLobbyCountdownTime();
+        this.isPrivate = lobbyEntity.getIsPrivate();
+        this.personaId = lobbyEntity.getPersonaId();
+        this.startedTime = startedTime;
+        this.seats = new AtomicReference<>(entrants.isEmpty() ? Seats.EMPTY
+                : new Seats(entrants.toArray(new Entrant[0]), false));
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public int getEventId() {
+        return eventId;
+    }
+
+    public int getCarClassHash() {
+        return carClassHash;
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    public int getCountdownTime() {
+        return countdownTime;
+    }
+
+    public boolean getIsPrivate() {
+        return isPrivate;
+    }
+
+    /**
+     * @return the ID of the persona that created the lobby
+     */
+    public Long getPersonaId() {
+        return personaId;
+    }
+
+    public long getStartedTime() {
+        return startedTime;
+    }
+
+    /**
+     * @return the time at which the countdown runs out, in milliseconds since the epoch
+     */
+    public long getDeadline() {
+        return startedTime + countdownTime;
+    }
+
+    public int getLobbyCountdownInMilliseconds() {
+        return (int) (getDeadline() - System.currentTimeMillis());
+    }
+
+    public List<Entrant> getEntrants() {
+        return seats.get().getEntrants();
+    }
+
+    public List<Long> getEntrantPersonaIds() {
+        Entrant[] entrants = seats.get().entrants;
+        List<Long> personaIds = new ArrayList<>(entrants.length);
+
+        for (Entrant entrant : entrants) {
+            personaIds.add(entrant.getPersonaId());
+        }
+
+        return personaIds;
+    }
+
+    public int getEntrantCount() {
+        return seats.get().entrants.length;
+    }
+
+    public boolean isFull() {
+        return seats.get().entrants.length >= maxPlayers;
+    }
+
+    /**
+     * @return {@code true} once the lobby has launched
+     */
+    public boolean isClosed() {
+        return seats.get().closed;
+    }
+
+    public boolean hasEntrant(Long personaId) {
+        return getEntrant(personaId) != null;
+    }
+
+    public Entrant getEntrant(Long personaId) {
+        return seats.get().find(personaId);
+    }
+
+    /**
+     * Seats a persona in the lowest free grid slot.
+     *
+     * @param personaId the persona ID
+     * @param level     the level of the persona
+     * @return the new entrant, or {@code null} if the lobby is full or closed, or the persona is already seated
+     */
+    public Entrant tryAddEntrant(Long personaId, int level) {
+        while (true) {
+            Seats current = seats.get();
+
+            if (current.closed || current.entrants.length >= maxPlayers || current.find(personaId) != null) {
+                return null;
+            }
+
+            Entrant entrant = new Entrant(personaId, level, current.getFreeGridIndex());
+
+            if (seats.compareAndSet(current, current.with(entrant))) {
+                return entrant;
+            }
+        }
+    }
+
+    /**
+     * Frees the seat of a persona.
+     *
+     * @param personaId the persona ID
+     * @return {@code true} if the persona was seated and the lobby has not launched yet
+     */
+    public boolean removeEntrant(Long personaId) {
+        while (true) {
+            Seats current = seats.get();
+
+            if (current.closed || current.find(personaId) == null) {
+                return false;
+            }
+
+            if (seats.compareAndSet(current, current.without(personaId))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Closes the lobby for launch. No persona can join or leave afterwards.
+     *
+     * @return the final entrants
+     */
+    public List<Entrant> close() {
+        while (true) {
+            Seats current = seats.get();
+
+            if (current.closed || seats.compareAndSet(current, current.close())) {
+                return current.getEntrants();
+            }
+        }
+    }
+
+    /**
+     * A persona sitting in a lobby.
+     */
+    public static class Entrant {
+        private final Long personaId;
+        private final int level;
+        private final int gridIndex;
+
+        public Entrant(Long personaId, int level, int gridIndex) {
+            this.personaId = personaId;
+            this.level = level;
+            this.gridIndex = gridIndex;
+        }
+
+        public Long getPersonaId() {
+            return personaId;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public int getGridIndex() {
+            return gridIndex;
+        }
+    }
+
+    /**
+     * An immutable snapshot of the seats of a lobby. Lobbies have a handful of seats, so every change copies
+     * the array.
+     */
+    private static class Seats {
+        private static final Seats EMPTY = new Seats(new Entrant[0], false);
+
+        private final Entrant[] entrants;
+        private final boolean closed;
+
+        private Seats(Entrant[] entrants, boolean closed) {
+            this.entrants = entrants;
+            this.closed = closed;
+        }
+
+        private Entrant find(Long personaId) {
+            for (Entrant entrant : entrants) {
+                if (Objects.equals(entrant.getPersonaId(), personaId)) {
+                    return entrant;
+                }
+            }
+
+            return null;
+        }
+
+        private int getFreeGridIndex() {
+            int gridIndex = 0;
+
+            while (isGridIndexTaken(gridIndex)) {
+                gridIndex++;
+            }
+
+            return gridIndex;
+        }
+
+        private boolean isGridIndexTaken(int gridIndex) {
+            for (Entrant entrant : entrants) {
+                if (entrant.getGridIndex() == gridIndex) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private Seats with(Entrant entrant) {
+            Entrant[] newEntrants = Arrays.copyOf(entrants, entrants.length + 1);
+            newEntrants[entrants.length] = entrant;
+            return new Seats(newEntrants, closed);
+        }
+
+        private Seats without(Long personaId) {
+            Entrant[] newEntrants = new Entrant[entrants.length - 1];
+            int i = 0;
+
+            for (Entrant entrant : entrants) {
+                if (!Objects.equals(entrant.getPersonaId(), personaId)) {
+                    newEntrants[i++] = entrant;
+                }
+            }
+
+            return new Seats(newEntrants, closed);
+        }
+
+        private Seats close() {
+            return new Seats(entrants, true);
+        }
+
+        private List<Entrant> getEntrants() {
+            return Collections.unmodifiableList(Arrays.asList(entrants));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,237 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link MatchmakingEngine} backed by concurrent maps in this JVM. Only suitable for single-node deployments.
+ * <p>
+ * There is one queue per (car class, level bucket) and one per level bucket across all classes. Each queue maps a
+ * sequence number to a persona ID, so iterating it yields personas in FIFO order. Changes to the queues are made
+ * under a single lock, because moving a persona touches several maps; lookups are lock-free.
+ * Lists of ignored events expire a fixed time after their last change.
+ */
+public class LocalMatchmakingEngine implements MatchmakingEngine {
+
+    private final Object queueLock = new Object();
+
+    private final Map<Long, QueueEntry> entries = new ConcurrentHashMap<>();
+
+    private final Map<Integer, NavigableMap<Long, Long>> allQueues = new ConcurrentHashMap<>();
+
+    private final Map<Long, NavigableMap<Long, Long>> classQueues = new ConcurrentHashMap<>();
+
+    private final Cache<Long, Set<Long>> ignoredEvents;
+
+    private final LongSupplier clock;
+
+    private long sequence;
+
+    public LocalMatchmakingEngine(long ignoredEventsTtlMinutes) {
+        this(ignoredEventsTtlMinutes, System::currentTimeMillis);
+    }
+
+    /**
+     * @param ignoredEventsTtlMinutes how long a list of ignored events is kept after its last change
+     * @param clock                   the current time in milliseconds, so that tests and simulations can run on
+     *                                their own time
+     */
+    LocalMatchmakingEngine(long ignoredEventsTtlMinutes, LongSupplier clock) {
+        this.clock = clock;
+        this.ignoredEvents = CacheBuilder.newBuilder()
+                .expireAfterWrite(ignoredEventsTtlMinutes, TimeUnit.MINUTES)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return TimeUnit.MILLISECONDS.toNanos(clock.getAsLong());
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public void addPlayer(long personaId, int carClass, int levelBucket) {
+        synchronized (queueLock) {
+            QueueEntry entry = entries.get(personaId);
+
+            if (entry == null) {
+                put(new QueueEntry(personaId, carClass, levelBucket, ++sequence, clock.getAsLong()));
+            } else if (entry.carClass != carClass || entry.levelBucket != levelBucket) {
+                remove(entry);
+                put(new QueueEntry(personaId, carClass, levelBucket, entry.sequence, entry.enqueuedAt));
+            }
+        }
+    }
+
+    @Override
+    public void removePlayer(long personaId) {
+        synchronized (queueLock) {
+            QueueEntry entry = entries.get(personaId);
+
+            if (entry != null) {
+                remove(entry);
+            }
+        }
+    }
+
+    @Override
+    public List<Long> pickPlayers(MatchmakingSearch search) {
+        if (search.getCount() <= 0) {
+            return Collections.emptyList();
+        }
+
+        long now = clock.getAsLong();
+
+        synchronized (queueLock) {
+            List<QueueEntry> candidates = new ArrayList<>();
+
+            for (int distance = 0; distance <= search.getMaxWidenBuckets(); distance++) {
+                long latestEnqueuedAt = now - distance * search.getWidenIntervalMillis();
+
+                collectCandidates(search, search.getLevelBucket() - distance, latestEnqueuedAt, candidates);
+
+                if (distance > 0) {
+                    collectCandidates(search, search.getLevelBucket() + distance, latestEnqueuedAt, candidates);
+                }
+            }
+
+            candidates.sort(Comparator.comparingLong(entry -> entry.sequence));
+
+            List<Long> picked = new ArrayList<>(Math.min(search.getCount(), candidates.size()));
+
+            for (QueueEntry candidate : candidates) {
+                if (picked.size() >= search.getCount()) {
+                    break;
+                }
+
+                remove(candidate);
+                put(new QueueEntry(candidate.personaId, candidate.carClass, candidate.levelBucket, ++sequence,
+                        candidate.enqueuedAt));
+                picked.add(candidate.personaId);
+            }
+
+            return picked;
+        }
+    }
+
+    @Override
+    public void ignoreEvent(long personaId, long eventId) {
+        ignoredEvents.asMap().compute(personaId, (key, events) -> {
+            Set<Long> updated = events != null ? events : ConcurrentHashMap.newKeySet();
+            updated.add(eventId);
+            return updated;
+        });
+    }
+
+    @Override
+    public void resetIgnoredEvents(long personaId) {
+        ignoredEvents.invalidate(personaId);
+    }
+
+    @Override
+    public boolean isEventIgnored(long personaId, long eventId) {
+        Set<Long> events = ignoredEvents.getIfPresent(personaId);
+        return events != null && events.contains(eventId);
+    }
+
+    @Override
+    public List<Long> getQueuedPlayers() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    @Override
+    public void clearQueue() {
+        synchronized (queueLock) {
+            entries.clear();
+            allQueues.clear();
+            classQueues.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        ignoredEvents.invalidateAll();
+    }
+
+    private void collectCandidates(MatchmakingSearch search, int levelBucket, long latestEnqueuedAt,
+                                   List<QueueEntry> candidates) {
+        if (levelBucket < 0) {
+            return;
+        }
+
+        NavigableMap<Long, Long> queue = search.getCarClass() == OPEN_CAR_CLASS
+                ? allQueues.get(levelBucket)
+                : classQueues.get(getClassQueueKey(search.getCarClass(), levelBucket));
+
+        if (queue == null) {
+            return;
+        }
+
+        int scanned = 0;
+
+        for (Long personaId : queue.values()) {
+            if (scanned++ >= search.getScanLimit()) {
+                break;
+            }
+
+            QueueEntry entry = entries.get(personaId);
+
+            if (entry.enqueuedAt <= latestEnqueuedAt && !isEventIgnored(personaId, search.getEventId())) {
+                candidates.add(entry);
+            }
+        }
+    }
+
+    private void put(QueueEntry entry) {
+        entries.put(entry.personaId, entry);
+        allQueues.computeIfAbsent(entry.levelBucket, b -> new ConcurrentSkipListMap<>())
+                .put(entry.sequence, entry.personaId);
+        classQueues.computeIfAbsent(getClassQueueKey(entry.carClass, entry.levelBucket), k -> new ConcurrentSkipListMap<>())
+                .put(entry.sequence, entry.personaId);
+    }
+
+    private void remove(QueueEntry entry) {
+        entries.remove(entry.personaId);
+        allQueues.get(entry.levelBucket).remove(entry.sequence);
+        classQueues.get(getClassQueueKey(entry.carClass, entry.levelBucket)).remove(entry.sequence);
+    }
+
+    private static long getClassQueueKey(int carClass, int levelBucket) {
+        return ((long) carClass << 32) | (levelBucket & 0xFFFFFFFFL);
+    }
+
+    private static class QueueEntry {
+        private final long personaId;
+        private final int carClass;
+        private final int levelBucket;
+        private final long sequence;
+        private final long enqueuedAt;
+
+        private QueueEntry(long personaId, int carClass, int levelBucket, long sequence, long enqueuedAt) {
+            this.personaId = personaId;
+            this.carClass = carClass;
+            this.levelBucket = levelBucket;
+            this.sequence = sequence;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,188 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * {@link TokenSessionStore} backed by concurrent maps in this JVM. On its own it only suits single-node deployments;
+ * with several nodes, {@link com.soapboxrace.core.bo.TokenSessionStoreBO} keeps it as a cache in front of the
+ * database mirror and uses {@link #evictCreatedBefore(long)} and {@link #remove(String)} to drop copies that other
+ * nodes may have changed.
+ * Stored sessions are never changed in place; every change replaces the stored copy inside
+ * {@link ConcurrentHashMap#computeIfPresent}, so readers always get a consistent session and changes to one
+ * session are applied one after the other.
+ */
+public class LocalTokenSessionStore implements TokenSessionStore {
+
+    private final Map<String, TokenSession> sessions = new ConcurrentHashMap<>();
+
+    private final Map<Long, String> tokensByUser = new ConcurrentHashMap<>();
+
+    private final Map<Long, String> tokensByPersona = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> creationTimes = new ConcurrentHashMap<>();
+
+    @Override
+    public TokenSession get(String securityToken) {
+        TokenSession tokenSession = sessions.get(securityToken);
+        return tokenSession == null ? null : new TokenSession(tokenSession);
+    }
+
+    @Override
+    public boolean create(TokenSession tokenSession) {
+        String securityToken = tokenSession.getSecurityToken();
+
+        if (sessions.putIfAbsent(securityToken, new TokenSession(tokenSession)) != null) {
+            return false;
+        }
+
+        creationTimes.put(securityToken, System.currentTimeMillis());
+        tokensByUser.put(tokenSession.getUserId(), securityToken);
+
+        if (tokenSession.getActivePersonaId() != null && tokenSession.getActivePersonaId() != 0L) {
+            tokensByPersona.put(tokenSession.getActivePersonaId(), securityToken);
+        }
+
+        return true;
+    }
+
+    @Override
+    public TokenSession setExpirationDate(String securityToken, long expirationDate) {
+        return update(securityToken, tokenSession -> tokenSession.setExpirationDate(expirationDate));
+    }
+
+    @Override
+    public TokenSession setActivePersonaId(String securityToken, Long personaId) {
+        return update(securityToken, tokenSession -> {
+            Long previousPersonaId = tokenSession.getActivePersonaId();
+
+            if (previousPersonaId != null && !previousPersonaId.equals(personaId)) {
+                tokensByPersona.remove(previousPersonaId, securityToken);
+            }
+
+            if (personaId != null && personaId != 0L) {
+                tokensByPersona.put(personaId, securityToken);
+            }
+
+            tokenSession.setActivePersonaId(personaId);
+        });
+    }
+
+    @Override
+    public TokenSession setActiveLobbyId(String securityToken, Long lobbyId) {
+        return update(securityToken, tokenSession -> tokenSession.setActiveLobbyId(lobbyId));
+    }
+
+    @Override
+    public TokenSession setEventSessionId(String securityToken, Long eventSessionId) {
+        return update(securityToken, tokenSession -> tokenSession.setEventSessionId(eventSessionId));
+    }
+
+    @Override
+    public TokenSession setGameHardwareHash(String securityToken, String gameHardwareHash) {
+        return update(securityToken, tokenSession -> tokenSession.setGameHardwareHash(gameHardwareHash));
+    }
+
+    @Override
+    public void remove(String securityToken) {
+        TokenSession removed = sessions.remove(securityToken);
+
+        if (removed != null) {
+            creationTimes.remove(securityToken);
+            tokensByUser.remove(removed.getUserId(), securityToken);
+
+            if (removed.getActivePersonaId() != null) {
+                tokensByPersona.remove(removed.getActivePersonaId(), securityToken);
+            }
+        }
+    }
+
+    @Override
+    public void removeByUserId(Long userId) {
+        String securityToken = tokensByUser.get(userId);
+
+        if (securityToken != null) {
+            remove(securityToken);
+        }
+    }
+
+    @Override
+    public String findTokenByPersonaId(Long personaId) {
+        return tokensByPersona.get(personaId);
+    }
+
+    @Override
+    public List<TokenSession> updateRelayCryptoTickets(Map<Long, String> ticketsByPersonaId) {
+        List<TokenSession> updatedSessions = new ArrayList<>(ticketsByPersonaId.size());
+
+        for (Map.Entry<Long, String> entry : ticketsByPersonaId.entrySet()) {
+            String securityToken = tokensByPersona.get(entry.getKey());
+
+            if (securityToken == null) {
+                continue;
+            }
+
+            sessions.computeIfPresent(securityToken, (token, tokenSession) -> {
+                if (!entry.getKey().equals(tokenSession.getActivePersonaId())) {
+                    return tokenSession;
+                }
+
+                TokenSession updatedSession = new TokenSession(tokenSession);
+                updatedSession.setRelayCryptoTicket(entry.getValue());
+                updatedSessions.add(new TokenSession(updatedSession));
+                return updatedSession;
+            });
+        }
+
+        return updatedSessions;
+    }
+
+    @Override
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+
+        for (TokenSession tokenSession : sessions.values()) {
+            if (tokenSession.isExpired(now)) {
+                remove(tokenSession.getSecurityToken());
+            }
+        }
+    }
+
+    /**
+     * Removes the sessions that were created (or loaded) in this store before the given time.
+     *
+     * @param time the cut-off time, in milliseconds since the epoch
+     * @return the number of removed sessions
+     */
+    public int evictCreatedBefore(long time) {
+        int evicted = 0;
+
+        for (Map.Entry<String, Long> entry : creationTimes.entrySet()) {
+            if (entry.getValue() < time) {
+                remove(entry.getKey());
+                evicted++;
+            }
+        }
+
+        return evicted;
+    }
+
+    private TokenSession update(String securityToken, Consumer<TokenSession> change) {
+        TokenSession updatedSession = sessions.computeIfPresent(securityToken, (token, tokenSession) -> {
+            TokenSession copy = new TokenSession(tokenSession);
+            change.accept(copy);
+            return copy;
+        });
+
+        return updatedSession == null ? null : new TokenSession(updatedSession);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import java.util.List;
+
+/**
+ * Storage and selection logic for the matchmaking queue and the per-persona lists of ignored events.
+ * Implementations must be thread-safe.
+ */
+public interface MatchmakingEngine {
+
+    /**
+     * Car class hash of open events, which accept players of any class.
+     */
+    int OPEN_CAR_CLASS = 607077938;
+
+    /**
+     * Queues a persona under the given car class and level bucket. A persona that is already queued keeps its place
+     * in the queue and its original enqueue time.
+     *
+     * @param personaId   the persona ID
+     * @param carClass    the class of the persona's current car
+     * @param levelBucket the level bucket of the persona
+     */
+    void addPlayer(long personaId, int carClass, int levelBucket);
+
+    /**
+     * Removes a persona from the queue.
+     *
+     * @param personaId the persona ID
+     */
+    void removePlayer(long personaId);
+
+    /**
+     * Picks distinct queued personas for an event, front of the queue first, among the level buckets the search
+     * covers for each candidate's wait time. Personas that ignore the event are skipped. Picked personas stay queued
+     * but move to the back of the queue.
+     *
+     * @param search the search
+     * @return the picked persona IDs
+     */
+    List<Long> pickPlayers(MatchmakingSearch search);
+
+    /**
+     * Adds an event to the list of ignored events of a persona.
+     *
+     * @param personaId the persona ID
+     * @param eventId   the event ID
+     */
+    void ignoreEvent(long personaId, long eventId);
+
+    /**
+     * Clears the list of ignored events of a persona.
+     *
+     * @param personaId the persona ID
+     */
+    void resetIgnoredEvents(long personaId);
+
+    /**
+     * Checks if a persona ignores an event.
+     *
+     * @param personaId the persona ID
+     * @param eventId   the event ID
+     * @return {@code true} if the event is in the persona's list of ignored events
+     */
+    boolean isEventIgnored(long personaId, long eventId);
+
+    /**
+     * Lists the queued personas, in no particular order.
+     *
+     * @return the persona IDs
+     */
+    List<Long> getQueuedPlayers();
+
+    /**
+     * Empties the queue.
+     */
+    void clearQueue();
+
+    /**
+     * Releases any resources held by the engine.
+     */
+    void close();
+}
\ No newline at end of file
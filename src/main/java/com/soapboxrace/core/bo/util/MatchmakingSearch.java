@@ -0,0 +1,82 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+/**
+ * A request to pick queued personas for a lobby.
+ * <p>
+ * Personas are queued under a car class and a level bucket. A search starts at its own level bucket and widens by
+ * one bucket in each direction for every {@code widenIntervalMillis} a candidate has been waiting, up to
+ * {@code maxWidenBuckets}. Among eligible candidates, the ones at the front of the queue are picked first.
+ */
+public class MatchmakingSearch {
+
+    private final int carClass;
+
+    private final int levelBucket;
+
+    private final long eventId;
+
+    private final int count;
+
+    private final int scanLimit;
+
+    private final long widenIntervalMillis;
+
+    private final int maxWidenBuckets;
+
+    public MatchmakingSearch(int carClass, int levelBucket, long eventId, int count, int scanLimit,
+                             long widenIntervalMillis, int maxWidenBuckets) {
+        this.carClass = carClass;
+        this.levelBucket = levelBucket;
+        this.eventId = eventId;
+        this.count = count;
+        this.scanLimit = scanLimit;
+        this.widenIntervalMillis = widenIntervalMillis;
+        this.maxWidenBuckets = maxWidenBuckets;
+    }
+
+    /**
+     * @return the car class of the event; {@link MatchmakingEngine#OPEN_CAR_CLASS} matches every class
+     */
+    public int getCarClass() {
+        return carClass;
+    }
+
+    /**
+     * @return the level bucket the search is centered on
+     */
+    public int getLevelBucket() {
+        return levelBucket;
+    }
+
+    public long getEventId() {
+        return eventId;
+    }
+
+    /**
+     * @return the maximum number of personas to pick
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the maximum number of entries to look at in each queue
+     */
+    public int getScanLimit() {
+        return scanLimit;
+    }
+
+    public long getWidenIntervalMillis() {
+        return widenIntervalMillis;
+    }
+
+    public int getMaxWidenBuckets() {
+        return maxWidenBuckets;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,353 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link MatchmakingEngine} backed by Redis, so every core node shares the same queue.
+ * <p>
+ * Queued personas are kept in one sorted set per (car class, level bucket), plus one sorted set per level bucket
+ * holding every queued persona for open events. All of them are scored by a shared queue sequence number, so picks
+ * are FIFO and only look at the head of each set. The {@code matchmaking_queue} hashes map each queued persona to
+ * its car class, level bucket and enqueue time. Each queue operation is a Lua script, so it is atomic.
+ * <p>
+ * Ignored events are kept in {@code ignored_events.<personaId>} sets that expire a fixed time after their last
+ * change. Each node keeps a near cache of those sets for {@link #isEventIgnored(long, long)}. Every change publishes
+ * the persona ID on {@code ignored_events_updates}, and each node then drops its cached copy. The pick script
+ * checks ignored events inside Redis and does not use the near cache.
+ * <p>
+ * The scripts derive some key names at run time (a persona's previous queues, the queues of each scanned bucket,
+ * each candidate's ignored-events set), so not every key they touch can be declared in KEYS. Every matchmaking key
+ * therefore carries the {@code {matchmaking}} hash tag and lives in the same slot. The engine is written for a
+ * standalone Redis server, which is what {@code RedisBO} connects to; on Redis Cluster the hash tag keeps all of
+ * these keys on one node.
+ */
+public class RedisMatchmakingEngine implements MatchmakingEngine {
+
+    private static final String IGNORED_EVENTS_CHANNEL = "ignored_events_updates";
+
+    private static final String HASH_TAG = "{matchmaking}";
+
+    private static final String QUEUE_KEY = HASH_TAG + "matchmaking_queue";
+
+    private static final String BUCKET_KEY = QUEUE_KEY + ".bucket";
+
+    private static final String ENQUEUED_AT_KEY = QUEUE_KEY + ".since";
+
+    private static final String SEQUENCE_KEY = QUEUE_KEY + ".seq";
+
+    private static final String CLASS_QUEUE_PREFIX = QUEUE_KEY + ".class.";
+
+    private static final String ALL_QUEUE_PREFIX = QUEUE_KEY + ".all.";
+
+    private static final String IGNORED_EVENTS_PREFIX = HASH_TAG + "ignored_events.";
+
+    /**
+     * Queues a persona, moving it to other queues if its car class or level bucket changed.
+     * A persona that is already queued keeps its place and its enqueue time.
+     * <p>
+     * KEYS: class hash, bucket hash, enqueue time hash, sequence, new class queue, new all-classes queue.
+     * ARGV: persona ID, car class, level bucket, current time, class queue prefix, all-classes queue prefix.
+     */
+    private static final String ADD_SCRIPT = "" +
+            "local previousClass = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+            "local previousBucket = redis.call('HGET', KEYS[2], ARGV[1])\n" +
+            "local score\n" +
+            "if previousClass and previousBucket then\n" +
+            "    score = redis.call('ZSCORE', ARGV[6] .. previousBucket, ARGV[1])\n" +
+            "    redis.call('ZREM', ARGV[5] .. previousClass .. '.' .. previousBucket, ARGV[1])\n" +
+            "    redis.call('ZREM', ARGV[6] .. previousBucket, ARGV[1])\n" +
+            "end\n" +
+            "if not score then\n" +
+            "    score = redis.call('INCR', KEYS[4])\n" +
+            "    redis.call('HSET', KEYS[3], ARGV[1], ARGV[4])\n" +
+            "end\n" +
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "redis.call('HSET', KEYS[2], ARGV[1], ARGV[3])\n" +
+            "redis.call('ZADD', KEYS[5], score, ARGV[1])\n" +
+            "redis.call('ZADD', KEYS[6], score, ARGV[1])\n" +
+            "return 1";
+
+    /**
+     * Removes a persona from the queue hashes and both of its queues.
+     * <p>
+     * KEYS: class hash, bucket hash, enqueue time hash. ARGV: persona ID, class queue prefix, all-classes queue prefix.
+     */
+    private static final String REMOVE_SCRIPT = "" +
+            "local carClass = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+            "local bucket = redis.call('HGET', KEYS[2], ARGV[1])\n" +
+            "redis.call('HDEL', KEYS[1], ARGV[1])\n" +
+            "redis.call('HDEL', KEYS[2], ARGV[1])\n" +
+            "redis.call('HDEL', KEYS[3], ARGV[1])\n" +
+            "if carClass and bucket then\n" +
+            "    redis.call('ZREM', ARGV[2] .. carClass .. '.' .. bucket, ARGV[1])\n" +
+            "    redis.call('ZREM', ARGV[3] .. bucket, ARGV[1])\n" +
+            "end\n" +
+            "return 1";
+
+    /**
+     * Collects candidates from the head of each level bucket queue the search covers. A candidate in a bucket at
+     * distance d from the center must have waited d widen intervals. Candidates ignoring the event are skipped, and
+     * entries without a car class are stale and get dropped. Up to the requested count of candidates are then
+     * picked, front of the queue first, and moved to the back of their queues.
+     * <p>
+     * KEYS: class hash, bucket hash, enqueue time hash, sequence.
+     * ARGV: event ID, count, scan limit, class queue prefix, all-classes queue prefix, car class (empty for open
+     * events), center bucket, maximum widening, current time, widen interval, ignored events prefix.
+     */
+    private static final String PICK_SCRIPT = "" +
+            "local scanLimit = tonumber(ARGV[3])\n" +
+            "local center = tonumber(ARGV[7])\n" +
+            "local now = tonumber(ARGV[9])\n" +
+            "local widen = tonumber(ARGV[10])\n" +
+            "local candidates = {}\n" +
+            "for distance = 0, tonumber(ARGV[8]) do\n" +
+            "    local latest = now - distance * widen\n" +
+            "    local buckets = {center - distance}\n" +
+            "    if distance > 0 then\n" +
+            "        buckets[2] = center + distance\n" +
+            "    end\n" +
+            "    for _, bucket in ipairs(buckets) do\n" +
+            "        if bucket >= 0 then\n" +
+            "            local queue\n" +
+            "            if ARGV[6] == '' then\n" +
+            "                queue = ARGV[5] .. bucket\n" +
+            "            else\n" +
+            "                queue = ARGV[4] .. ARGV[6] .. '.' .. bucket\n" +
+            "            end\n" +
+            "            local entries = redis.call('ZRANGE', queue, 0, scanLimit - 1, 'WITHSCORES')\n" +
+            "            for i = 1, #entries, 2 do\n" +
+            "                local personaId = entries[i]\n" +
+            "                local carClass = redis.call('HGET', KEYS[1], personaId)\n" +
+            "                if not carClass then\n" +
+            "                    redis.call('ZREM', queue, personaId)\n" +
+            "                elseif tonumber(redis.call('HGET', KEYS[3], personaId) or '0') <= latest\n" +
+            "                        and redis.call('SISMEMBER', ARGV[11] .. personaId, ARGV[1]) == 0 then\n" +
+            "                    candidates[#candidates + 1] = {personaId, tonumber(entries[i + 1]), carClass, bucket}\n" +
+            "                end\n" +
+            "            end\n" +
+            "        end\n" +
+            "    end\n" +
+            "end\n" +
+            "table.sort(candidates, function(a, b) return a[2] < b[2] end)\n" +
+            "local picked = {}\n" +
+            "for i = 1, math.min(tonumber(ARGV[2]), #candidates) do\n" +
+            "    local candidate = candidates[i]\n" +
+            "    local score = redis.call('INCR', KEYS[4])\n" +
+            "    redis.call('ZADD', ARGV[4] .. candidate[3] .. '.' .. candidate[4], score, candidate[1])\n" +
+            "    redis.call('ZADD', ARGV[5] .. candidate[4], score, candidate[1])\n" +
+            "    picked[i] = candidate[1]\n" +
+            "end\n" +
+            "return picked";
+
+    private final StatefulRedisConnection<String, String> connection;
+
+    private final StatefulRedisPubSubConnection<String, String> pubSubConnection;
+
+    private final IgnoredEventsListener listener = new IgnoredEventsListener();
+
+    private final long ignoredEventsTtlSeconds;
+
+    private final Cache<Long, Set<String>> ignoredEventsCache;
+
+    /**
+     * Bumped on every invalidation, so a set loaded from Redis is only cached if nothing changed while it loaded.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public RedisMatchmakingEngine(StatefulRedisConnection<String, String> connection,
+                                  StatefulRedisPubSubConnection<String, String> pubSubConnection,
+                                  long ignoredEventsTtlSeconds, long nearCacheSeconds, long nearCacheSize) {
+        this.connection = connection;
+        this.pubSubConnection = pubSubConnection;
+        this.ignoredEventsTtlSeconds = ignoredEventsTtlSeconds;
+        this.ignoredEventsCache = CacheBuilder.newBuilder()
+                .maximumSize(nearCacheSize)
+                .expireAfterWrite(nearCacheSeconds, TimeUnit.SECONDS)
+                .build();
+        this.pubSubConnection.addListener(this.listener);
+        this.pubSubConnection.sync().subscribe(IGNORED_EVENTS_CHANNEL);
+    }
+
+    @Override
+    public void addPlayer(long personaId, int carClass, int levelBucket) {
+        connection.sync().eval(ADD_SCRIPT, ScriptOutputType.INTEGER,
+                new String[]{QUEUE_KEY, BUCKET_KEY, ENQUEUED_AT_KEY, SEQUENCE_KEY,
+                        CLASS_QUEUE_PREFIX + carClass + "." + levelBucket, ALL_QUEUE_PREFIX + levelBucket},
+                Long.toString(personaId), Integer.toString(carClass), Integer.toString(levelBucket),
+                Long.toString(System.currentTimeMillis()), CLASS_QUEUE_PREFIX, ALL_QUEUE_PREFIX);
+    }
+
+    @Override
+    public void removePlayer(long personaId) {
+        connection.sync().eval(REMOVE_SCRIPT, ScriptOutputType.INTEGER,
+                new String[]{QUEUE_KEY, BUCKET_KEY, ENQUEUED_AT_KEY},
+                Long.toString(personaId), CLASS_QUEUE_PREFIX, ALL_QUEUE_PREFIX);
+    }
+
+    @Override
+    public List<Long> pickPlayers(MatchmakingSearch search) {
+        if (search.getCount() <= 0) {
+            return Collections.emptyList();
+        }
+
+        String carClass = search.getCarClass() == OPEN_CAR_CLASS ? "" : Integer.toString(search.getCarClass());
+        List<Object> picked = connection.sync().eval(PICK_SCRIPT, ScriptOutputType.MULTI,
+                new String[]{QUEUE_KEY, BUCKET_KEY, ENQUEUED_AT_KEY, SEQUENCE_KEY},
+                Long.toString(search.getEventId()), Integer.toString(search.getCount()),
+                Integer.toString(search.getScanLimit()), CLASS_QUEUE_PREFIX, ALL_QUEUE_PREFIX, carClass,
+                Integer.toString(search.getLevelBucket()), Integer.toString(search.getMaxWidenBuckets()),
+                Long.toString(System.currentTimeMillis()), Long.toString(search.getWidenIntervalMillis()),
+                IGNORED_EVENTS_PREFIX);
+        List<Long> personaIds = new ArrayList<>(picked.size());
+
+        for (Object personaId : picked) {
+            personaIds.add(Long.parseLong(personaId.toString()));
+        }
+
+        return personaIds;
+    }
+
+    @Override
+    public void ignoreEvent(long personaId, long eventId) {
+        RedisCommands<String, String> commands = connection.sync();
+        String key = getIgnoredEventsKey(personaId);
+
+        commands.sadd(key, Long.toString(eventId));
+        commands.expire(key, ignoredEventsTtlSeconds);
+        publishInvalidation(personaId);
+    }
+
+    @Override
+    public void resetIgnoredEvents(long personaId) {
+        connection.sync().del(getIgnoredEventsKey(personaId));
+        publishInvalidation(personaId);
+    }
+
+    @Override
+    public boolean isEventIgnored(long personaId, long eventId) {
+        Set<String> events = ignoredEventsCache.getIfPresent(personaId);
+
+        if (events == null) {
+            long invalidationCount = invalidations.get();
+            events = connection.sync().smembers(getIgnoredEventsKey(personaId));
+
+            if (invalidations.get() == invalidationCount) {
+                ignoredEventsCache.put(personaId, events);
+            }
+        }
+
+        return events.contains(Long.toString(eventId));
+    }
+
+    @Override
+    public List<Long> getQueuedPlayers() {
+        List<String> queued = connection.sync().hkeys(QUEUE_KEY);
+        List<Long> personaIds = new ArrayList<>(queued.size());
+
+        for (String personaId : queued) {
+            personaIds.add(Long.parseLong(personaId));
+        }
+
+        return personaIds;
+    }
+
+    @Override
+    public void clearQueue() {
+        RedisCommands<String, String> commands = connection.sync();
+        Map<String, String> carClasses = commands.hgetall(QUEUE_KEY);
+        Map<String, String> buckets = commands.hgetall(BUCKET_KEY);
+        Set<String> queueKeys = new HashSet<>();
+
+        for (Map.Entry<String, String> entry : buckets.entrySet()) {
+            queueKeys.add(ALL_QUEUE_PREFIX + entry.getValue());
+
+            String carClass = carClasses.get(entry.getKey());
+
+            if (carClass != null) {
+                queueKeys.add(CLASS_QUEUE_PREFIX + carClass + "." + entry.getValue());
+            }
+        }
+
+        queueKeys.add(QUEUE_KEY);
+        queueKeys.add(BUCKET_KEY);
+        queueKeys.add(ENQUEUED_AT_KEY);
+        queueKeys.add(SEQUENCE_KEY);
+        commands.del(queueKeys.toArray(new String[0]));
+    }
+
+    @Override
+    public void close() {
+        pubSubConnection.removeListener(listener);
+        pubSubConnection.close();
+        ignoredEventsCache.invalidateAll();
+    }
+
+    private void publishInvalidation(long personaId) {
+        invalidate(personaId);
+        connection.sync().publish(IGNORED_EVENTS_CHANNEL, Long.toString(personaId));
+    }
+
+    private void invalidate(long personaId) {
+        invalidations.incrementAndGet();
+        ignoredEventsCache.invalidate(personaId);
+    }
+
+    private static String getIgnoredEventsKey(long personaId) {
+        return IGNORED_EVENTS_PREFIX + personaId;
+    }
+
+    private class IgnoredEventsListener implements RedisPubSubListener<String, String> {
+        @Override
+        public void message(String channel, String message) {
+            if (IGNORED_EVENTS_CHANNEL.equals(channel)) {
+                invalidate(Long.parseLong(message));
+            }
+        }
+
+        @Override
+        public void message(String pattern, String channel, String message) {
+
+        }
+
+        @Override
+        public void subscribed(String channel, long count) {
+
+        }
+
+        @Override
+        public void psubscribed(String pattern, long count) {
+
+        }
+
+        @Override
+        public void unsubscribed(String channel, long count) {
+
+        }
+
+        @Override
+        public void punsubscribed(String pattern, long count) {
+
+        }
+    }
+}
\ No newline at end of file
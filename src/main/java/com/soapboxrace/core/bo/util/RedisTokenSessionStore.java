@@ -0,0 +1,424 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link TokenSessionStore} backed by Redis, so every core node sees the same sessions.
+ * Each session is a hash under {@code token_session.<token>}; user and persona indexes are plain keys.
+ * All keys expire together with the session. Writes that touch several keys run as one Lua script,
+ * so other nodes never see a session hash without its indexes.
+ * <p>
+ * Only {@link #create(TokenSession)} writes a whole hash, and only if it does not exist yet. Every other change
+ * sets just its own fields, and only while the hash still exists, so a change racing with a logout cannot
+ * bring the removed session or its user index back. Scripts that need the key of the active persona are passed
+ * the persona read just before, and check that it is still the active one; if not, the caller reads again and
+ * retries.
+ */
+public class RedisTokenSessionStore implements TokenSessionStore {
+
+    /**
+     * Sets the relay crypto ticket of each session that still has the expected persona active,
+     * and returns the updated sessions (an empty list for skipped ones).
+     * <p>
+     * KEYS: session keys.
+     * ARGV: pairs of persona ID and ticket, one per key.
+     */
+    private static final String UPDATE_TICKETS_SCRIPT = "" +
+            "local result = {}\n" +
+            "for i, key in ipairs(KEYS) do\n" +
+            "    if redis.call('HGET', key, 'activePersonaId') == ARGV[i * 2 - 1] then\n" +
+            "        redis.call('HSET', key, 'relayCryptoTicket', ARGV[i * 2])\n" +
+            "        result[i] = redis.call('HGETALL', key)\n" +
+            "    else\n" +
+            "        result[i] = {}\n" +
+            "    end\n" +
+            "end\n" +
+            "return result";
+
+    /**
+     * Writes a new session hash together with its expiry and index keys. Returns 0 without writing anything if
+     * the hash already exists.
+     * <p>
+     * KEYS: session key, user key, [persona key].
+     * ARGV: security token, expiry timestamp, time to live, then field/value pairs of the hash.
+     */
+    private static final String CREATE_SCRIPT = "" +
+            "if redis.call('EXISTS', KEYS[1]) == 1 then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "redis.call('HMSET', KEYS[1], unpack(ARGV, 4))\n" +
+            "redis.call('PEXPIREAT', KEYS[1], ARGV[2])\n" +
+            "redis.call('SET', KEYS[2], ARGV[1], 'PX', ARGV[3])\n" +
+            "if KEYS[3] then\n" +
+            "    redis.call('SET', KEYS[3], ARGV[1], 'PX', ARGV[3])\n" +
+            "end\n" +
+            "return 1";
+
+    /**
+     * Sets fields of an existing session hash, optionally moving its expiry and persona index along.
+     * Returns {-1} if the hash does not exist, {0} if the active persona is not the expected one,
+     * and {1, hash} after a successful update.
+     * <p>
+     * KEYS: session key, user key, key of the expected active persona, [key of the new active persona].
+     * ARGV: security token, expected active persona ID, new expiry timestamp ('' to keep it),
+     * '1' if the active persona changes, then field/value pairs to set.
+     */
+    private static final String UPDATE_SCRIPT = "" +
+            "local persona = redis.call('HGET', KEYS[1], 'activePersonaId')\n" +
+            "if not persona then\n" +
+            "    return {-1}\n" +
+            "end\n" +
+            "if persona ~= ARGV[2] then\n" +
+            "    return {0}\n" +
+            "end\n" +
+            "redis.call('HMSET', KEYS[1], unpack(ARGV, 5))\n" +
+            "if ARGV[3] ~= '' then\n" +
+            "    redis.call('PEXPIREAT', KEYS[1], ARGV[3])\n" +
+            "    for i = 2, 3 do\n" +
+            "        if redis.call('GET', KEYS[i]) == ARGV[1] then\n" +
+            "            redis.call('PEXPIREAT', KEYS[i], ARGV[3])\n" +
+            "        end\n" +
+            "    end\n" +
+            "end\n" +
+            "if ARGV[4] == '1' then\n" +
+            "    if redis.call('GET', KEYS[3]) == ARGV[1] then\n" +
+            "        redis.call('DEL', KEYS[3])\n" +
+            "    end\n" +
+            "    if KEYS[4] then\n" +
+            "        redis.call('SET', KEYS[4], ARGV[1], 'PX', redis.call('PTTL', KEYS[1]))\n" +
+            "    end\n" +
+            "end\n" +
+            "return {1, redis.call('HGETALL', KEYS[1])}";
+
+    /**
+     * Removes a session hash and the index keys that still point to it.
+     * Returns 0 without removing anything if the active persona is not the expected one.
+     * <p>
+     * KEYS: session key, user key, key of the expected active persona.
+     * ARGV: security token, expected active persona ID.
+     */
+    private static final String REMOVE_SCRIPT = "" +
+            "local persona = redis.call('HGET', KEYS[1], 'activePersonaId')\n" +
+            "if not persona then\n" +
+            "    return 1\n" +
+            "end\n" +
+            "if persona ~= ARGV[2] then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "redis.call('DEL', KEYS[1])\n" +
+            "for i = 2, 3 do\n" +
+            "    if redis.call('GET', KEYS[i]) == ARGV[1] then\n" +
+            "        redis.call('DEL', KEYS[i])\n" +
+            "    end\n" +
+            "end\n" +
+            "return 1";
+
+    /**
+     * Number of times a script that checks the active persona is retried after another write changed it.
+     */
+    private static final int ATTEMPTS = 5;
+
+    private final StatefulRedisConnection<String, String> connection;
+
+    public RedisTokenSessionStore(StatefulRedisConnection<String, String> connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public TokenSession get(String securityToken) {
+        Map<String, String> hash = connection.sync().hgetall(getSessionKey(securityToken));
+
+        if (hash == null || hash.isEmpty()) {
+            return null;
+        }
+
+        return toTokenSession(securityToken, hash);
+    }
+
+    @Override
+    public boolean create(TokenSession tokenSession) {
+        String securityToken = tokenSession.getSecurityToken();
+        Long activePersonaId = tokenSession.getActivePersonaId();
+        long ttl = Math.max(1L, tokenSession.getExpirationDate() - System.currentTimeMillis());
+
+        List<String> keys = new ArrayList<>(3);
+        keys.add(getSessionKey(securityToken));
+        keys.add(getUserKey(tokenSession.getUserId()));
+
+        if (activePersonaId != null && activePersonaId != 0L) {
+            keys.add(getPersonaKey(activePersonaId));
+        }
+
+        List<String> args = new ArrayList<>(25);
+        args.add(securityToken);
+        args.add(Long.toString(tokenSession.getExpirationDate()));
+        args.add(Long.toString(ttl));
+        addField(args, "userId", format(tokenSession.getUserId()));
+        addField(args, "expirationDate", Long.toString(tokenSession.getExpirationDate()));
+        addField(args, "activePersonaId", format(activePersonaId));
+        addField(args, "relayCryptoTicket", format(tokenSession.getRelayCryptoTicket()));
+        addField(args, "activeLobbyId", format(tokenSession.getActiveLobbyId()));
+        addField(args, "eventSessionId", format(tokenSession.getEventSessionId()));
+        addField(args, "premium", Boolean.toString(tokenSession.isPremium()));
+        addField(args, "admin", Boolean.toString(tokenSession.isAdmin()));
+        addField(args, "clientHostIp", format(tokenSession.getClientHostIp()));
+        addField(args, "gameHardwareHash", format(tokenSession.getGameHardwareHash()));
+
+        Long created = connection.sync().eval(CREATE_SCRIPT, ScriptOutputType.INTEGER, keys.toArray(new String[0]),
+                args.toArray(new String[0]));
+
+        return created != null && created == 1L;
+    }
+
+    @Override
+    public TokenSession setExpirationDate(String securityToken, long expirationDate) {
+        return update(securityToken, null, expirationDate, "expirationDate", Long.toString(expirationDate));
+    }
+
+    @Override
+    public TokenSession setActivePersonaId(String securityToken, Long personaId) {
+        Long activePersonaId = personaId == null ? 0L : personaId;
+        return update(securityToken, activePersonaId, null, "activePersonaId", activePersonaId.toString());
+    }
+
+    @Override
+    public TokenSession setActiveLobbyId(String securityToken, Long lobbyId) {
+        return update(securityToken, null, null, "activeLobbyId", format(lobbyId));
+    }
+
+    @Override
+    public TokenSession setEventSessionId(String securityToken, Long eventSessionId) {
+        return update(securityToken, null, null, "eventSessionId", format(eventSessionId));
+    }
+
+    @Override
+    public TokenSession setGameHardwareHash(String securityToken, String gameHardwareHash) {
+        return update(securityToken, null, null, "gameHardwareHash", format(gameHardwareHash));
+    }
+
+    @Override
+    public void remove(String securityToken) {
+        RedisCommands<String, String> commands = connection.sync();
+        String sessionKey = getSessionKey(securityToken);
+
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            List<KeyValue<String, String>> current = commands.hmget(sessionKey, "userId", "activePersonaId");
+
+            if (!current.get(0).hasValue()) {
+                return;
+            }
+
+            String activePersonaId = current.get(1).getValueOrElse("");
+            String[] keys = {sessionKey, getUserKey(current.get(0).getValue()), getPersonaKey(activePersonaId)};
+            Long removed = commands.eval(REMOVE_SCRIPT, ScriptOutputType.INTEGER, keys, securityToken,
+                    activePersonaId);
+
+            if (removed != null && removed == 1L) {
+                return;
+            }
+        }
+
+        System.err.println("RedisTokenSessionStore: gave up removing a session after " + ATTEMPTS
+                + " concurrent persona changes");
+    }
+
+    @Override
+    public void removeByUserId(Long userId) {
+        String securityToken = connection.sync().get(getUserKey(userId));
+
+        if (securityToken != null) {
+            remove(securityToken);
+        }
+    }
+
+    @Override
+    public String findTokenByPersonaId(Long personaId) {
+        return connection.sync().get(getPersonaKey(personaId));
+    }
+
+    @Override
+    public List<TokenSession> updateRelayCryptoTickets(Map<Long, String> ticketsByPersonaId) {
+        List<TokenSession> updatedSessions = new ArrayList<>(ticketsByPersonaId.size());
+
+        if (ticketsByPersonaId.isEmpty()) {
+            return updatedSessions;
+        }
+
+        RedisCommands<String, String> commands = connection.sync();
+        List<Long> personaIds = new ArrayList<>(ticketsByPersonaId.keySet());
+        String[] personaKeys = new String[personaIds.size()];
+
+        for (int i = 0; i < personaKeys.length; i++) {
+            personaKeys[i] = getPersonaKey(personaIds.get(i));
+        }
+
+        List<KeyValue<String, String>> tokens = commands.mget(personaKeys);
+        List<String> securityTokens = new ArrayList<>(tokens.size());
+        List<String> sessionKeys = new ArrayList<>(tokens.size());
+        List<String> args = new ArrayList<>(tokens.size() * 2);
+
+        for (int i = 0; i < tokens.size(); i++) {
+            KeyValue<String, String> token = tokens.get(i);
+
+            if (token.hasValue()) {
+                Long personaId = personaIds.get(i);
+                securityTokens.add(token.getValue());
+                sessionKeys.add(getSessionKey(token.getValue()));
+                args.add(personaId.toString());
+                args.add(ticketsByPersonaId.get(personaId));
+            }
+        }
+
+        if (sessionKeys.isEmpty()) {
+            return updatedSessions;
+        }
+
+        List<Object> hashes = commands.eval(UPDATE_TICKETS_SCRIPT, ScriptOutputType.MULTI,
+                sessionKeys.toArray(new String[0]), args.toArray(new String[0]));
+
+        for (int i = 0; i < hashes.size(); i++) {
+            List<?> fields = (List<?>) hashes.get(i);
+
+            if (fields.isEmpty()) {
+                continue;
+            }
+
+            updatedSessions.add(toTokenSession(securityTokens.get(i), toHash(fields)));
+        }
+
+        return updatedSessions;
+    }
+
+    @Override
+    public void purgeExpired() {
+        // keys expire on their own
+    }
+
+    /**
+     * Runs {@link #UPDATE_SCRIPT} against the session's current active persona, retrying if that persona changes
+     * in the meantime.
+     *
+     * @param newPersonaId   the new active persona, or {@code null} if it does not change
+     * @param expirationDate the new expiration date, or {@code null} if it does not change
+     * @return the updated session, or {@code null} if there is no such session
+     */
+    private TokenSession update(String securityToken, Long newPersonaId, Long expirationDate,
+                                String... fieldsAndValues) {
+        RedisCommands<String, String> commands = connection.sync();
+        String sessionKey = getSessionKey(securityToken);
+
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            List<KeyValue<String, String>> current = commands.hmget(sessionKey, "userId", "activePersonaId");
+
+            if (!current.get(0).hasValue()) {
+                return null;
+            }
+
+            String activePersonaId = current.get(1).getValueOrElse("");
+            boolean personaChanges = newPersonaId != null && !format(newPersonaId).equals(activePersonaId);
+
+            List<String> keys = new ArrayList<>(4);
+            keys.add(sessionKey);
+            keys.add(getUserKey(current.get(0).getValue()));
+            keys.add(getPersonaKey(activePersonaId));
+
+            if (personaChanges && newPersonaId != 0L) {
+                keys.add(getPersonaKey(newPersonaId));
+            }
+
+            List<String> args = new ArrayList<>(4 + fieldsAndValues.length);
+            args.add(securityToken);
+            args.add(activePersonaId);
+            args.add(format(expirationDate));
+            args.add(personaChanges ? "1" : "0");
+            Collections.addAll(args, fieldsAndValues);
+
+            List<Object> result = commands.eval(UPDATE_SCRIPT, ScriptOutputType.MULTI, keys.toArray(new String[0]),
+                    args.toArray(new String[0]));
+            long status = (Long) result.get(0);
+
+            if (status == -1L) {
+                return null;
+            }
+
+            if (status == 1L) {
+                return toTokenSession(securityToken, toHash((List<?>) result.get(1)));
+            }
+        }
+
+        System.err.println("RedisTokenSessionStore: gave up updating a session after " + ATTEMPTS
+                + " concurrent persona changes");
+        return null;
+    }
+
+    private static Map<String, String> toHash(List<?> fields) {
+        Map<String, String> hash = new HashMap<>();
+
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            hash.put(fields.get(i).toString(), fields.get(i + 1).toString());
+        }
+
+        return hash;
+    }
+
+    private static TokenSession toTokenSession(String securityToken, Map<String, String> hash) {
+        TokenSession tokenSession = new TokenSession();
+        tokenSession.setSecurityToken(securityToken);
+        tokenSession.setUserId(parseLong(hash.get("userId")));
+        tokenSession.setExpirationDate(Long.parseLong(hash.get("expirationDate")));
+        tokenSession.setActivePersonaId(parseLong(hash.get("activePersonaId")));
+        tokenSession.setRelayCryptoTicket(parseString(hash.get("relayCryptoTicket")));
+        tokenSession.setActiveLobbyId(parseLong(hash.get("activeLobbyId")));
+        tokenSession.setEventSessionId(parseLong(hash.get("eventSessionId")));
+        tokenSession.setPremium(Boolean.parseBoolean(hash.get("premium")));
+        tokenSession.setAdmin(Boolean.parseBoolean(hash.get("admin")));
+        tokenSession.setClientHostIp(parseString(hash.get("clientHostIp")));
+        tokenSession.setGameHardwareHash(parseString(hash.get("gameHardwareHash")));
+
+        return tokenSession;
+    }
+
+    private static String getSessionKey(String securityToken) {
+        return "token_session." + securityToken;
+    }
+
+    private static String getUserKey(Object userId) {
+        return "token_session_user." + userId;
+    }
+
+    private static String getPersonaKey(Object personaId) {
+        return "token_session_persona." + personaId;
+    }
+
+    private static void addField(List<String> args, String field, String value) {
+        args.add(field);
+        args.add(value);
+    }
+
+    private static String format(Object value) {
+        return value == null ? "" : value.toString();
+    }
+
+    private static String parseString(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static Long parseLong(String value) {
+        return value == null || value.isEmpty() ? null : Long.valueOf(value);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Builds the UDP relay crypto tickets for the entrants of one launching lobby. A ticket is 48 bytes: the grid
+ * index, the hello packet, the event session ID, the number of racers and the persona ID, followed by random
+ * padding so that tickets cannot be guessed from the public fields.
+ * <p>
+ * The padding of all tickets of the lobby is drawn in one call, when the first ticket is built, from the DRBG
+ * {@link SecureRandom}. The platform default on Linux reads /dev/urandom and mixes it with SHA1PRNG for every
+ * byte, which made the padding most of the cost of building the tickets.
+ * <p>
+ * One generator reuses a single buffer for all of its tickets, so it must not be shared between threads.
+ */
+public class RelayCryptoTicketGenerator {
+
+    private static final int TICKET_LENGTH = 48;
+
+    private static final int HEADER_LENGTH = 14;
+
+    private static final int PADDING_LENGTH = TICKET_LENGTH - HEADER_LENGTH;
+
+    private static final byte[] HELLO_PACKET = {10, 11, 12, 13};
+
+    private static final SecureRandom secureRandom = createSecureRandom();
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(TICKET_LENGTH);
+
+    private final byte[] padding;
+
+    private int paddingOffset;
+
+    private final Base64.Encoder encoder = Base64.getEncoder();
+
+    private final int eventSessionId;
+
+    private final byte numOfRacers;
+
+    public RelayCryptoTicketGenerator(long eventSessionId, int numOfRacers) {
+        this.eventSessionId = (int) eventSessionId;
+        this.numOfRacers = (byte) numOfRacers;
+        this.padding = new byte[Math.max(numOfRacers, 1) * PADDING_LENGTH];
+        this.paddingOffset = padding.length;
+    }
+
+    /**
+     * Builds the ticket of one entrant.
+     *
+     * @param gridIndex the grid index of the entrant
+     * @param personaId the persona ID of the entrant
+     * @return the ticket, Base64-encoded
+     */
+    public String generate(int gridIndex, long personaId) {
+        buffer.clear();
+        buffer.put((byte) gridIndex);
+        buffer.put(HELLO_PACKET);
+        buffer.putInt(eventSessionId);
+        buffer.put(numOfRacers);
+        buffer.putInt((int) personaId);
+
+        if (paddingOffset == padding.length) {
+            secureRandom.nextBytes(padding);
+            paddingOffset = 0;
+        }
+
+        buffer.put(padding, paddingOffset, PADDING_LENGTH);
+        paddingOffset += PADDING_LENGTH;
+
+        return encoder.encodeToString(buffer.array());
+    }
+
+    private static SecureRandom createSecureRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+}
\ No newline at end of file
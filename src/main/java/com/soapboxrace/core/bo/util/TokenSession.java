@@ -0,0 +1,134 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+/**
+ * Everything the server needs to know about a logged-in client, kept in a {@link TokenSessionStore}
+ * instead of being read from TOKEN_SESSION on every request.
+ */
+public class TokenSession {
+    private String securityToken;
+    private Long userId;
+    private long expirationDate;
+    private Long activePersonaId = 0L;
+    private String relayCryptoTicket;
+    private Long activeLobbyId;
+    private Long eventSessionId;
+    private boolean premium;
+    private boolean admin;
+    private String clientHostIp;
+    private String gameHardwareHash;
+
+    public TokenSession() {
+    }
+
+    public TokenSession(TokenSession other) {
+        this.securityToken = other.securityToken;
+        this.userId = other.userId;
+        this.expirationDate = other.expirationDate;
+        this.activePersonaId = other.activePersonaId;
+        this.relayCryptoTicket = other.relayCryptoTicket;
+        this.activeLobbyId = other.activeLobbyId;
+        this.eventSessionId = other.eventSessionId;
+        this.premium = other.premium;
+        this.admin = other.admin;
+        this.clientHostIp = other.clientHostIp;
+        this.gameHardwareHash = other.gameHardwareHash;
+    }
+
+    public String getSecurityToken() {
+        return securityToken;
+    }
+
+    public void setSecurityToken(String securityToken) {
+        this.securityToken = securityToken;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public long getExpirationDate() {
+        return expirationDate;
+    }
+
+    public void setExpirationDate(long expirationDate) {
+        this.expirationDate = expirationDate;
+    }
+
+    public Long getActivePersonaId() {
+        return activePersonaId;
+    }
+
+    public void setActivePersonaId(Long activePersonaId) {
+        this.activePersonaId = activePersonaId;
+    }
+
+    public String getRelayCryptoTicket() {
+        return relayCryptoTicket;
+    }
+
+    public void setRelayCryptoTicket(String relayCryptoTicket) {
+        this.relayCryptoTicket = relayCryptoTicket;
+    }
+
+    public Long getActiveLobbyId() {
+        return activeLobbyId;
+    }
+
+    public void setActiveLobbyId(Long activeLobbyId) {
+        this.activeLobbyId = activeLobbyId;
+    }
+
+    public Long getEventSessionId() {
+        return eventSessionId;
+    }
+
+    public void setEventSessionId(Long eventSessionId) {
+        this.eventSessionId = eventSessionId;
+    }
+
+    public boolean isPremium() {
+        return premium;
+    }
+
+    public void setPremium(boolean premium) {
+        this.premium = premium;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    public void setAdmin(boolean admin) {
+        this.admin = admin;
+    }
+
+    public String getClientHostIp() {
+        return clientHostIp;
+    }
+
+    public void setClientHostIp(String clientHostIp) {
+        this.clientHostIp = clientHostIp;
+    }
+
+    public String getGameHardwareHash() {
+        return gameHardwareHash;
+    }
+
+    public void setGameHardwareHash(String gameHardwareHash) {
+        this.gameHardwareHash = gameHardwareHash;
+    }
+
+    public boolean isExpired(long now) {
+        return now > expirationDate;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage for {@link TokenSession} objects. Implementations must be thread-safe.
+ * Sessions handed out by a store are copies. A session is written in full only when it is created; after that,
+ * every change sets just its own field, so changes made at the same time to different fields of one session
+ * (e.g. a request setting the event session while a lobby launch sets the relay crypto ticket) do not overwrite
+ * each other. Changes to a session that no longer exists are ignored, so a removed token never comes back.
+ */
+public interface TokenSessionStore {
+
+    /**
+     * Gets the session for the given security token.
+     *
+     * @param securityToken the security token
+     * @return a copy of the session, or {@code null} if there is no such session
+     */
+    TokenSession get(String securityToken);
+
+    /**
+     * Stores a new session, unless there already is a session with the same security token.
+     *
+     * @param tokenSession the session to store
+     * @return {@code true} if the session was stored
+     */
+    boolean create(TokenSession tokenSession);
+
+    /**
+     * Sets the expiration date of a session.
+     *
+     * @param securityToken  the security token
+     * @param expirationDate the new expiration date, in milliseconds since the epoch
+     * @return a copy of the updated session, or {@code null} if there is no such session
+     */
+    TokenSession setExpirationDate(String securityToken, long expirationDate);
+
+    /**
+     * Sets the active persona of a session and moves the persona index along with it.
+     *
+     * @param securityToken the security token
+     * @param personaId     the persona ID, or 0 if no persona is active
+     * @return a copy of the updated session, or {@code null} if there is no such session
+     */
+    TokenSession setActivePersonaId(String securityToken, Long personaId);
+
+    /**
+     * Sets the active lobby of a session.
+     *
+     * @param securityToken the security token
+     * @param lobbyId       the lobby ID
+     * @return a copy of the updated session, or {@code null} if there is no such session
+     */
+    TokenSession setActiveLobbyId(String securityToken, Long lobbyId);
+
+    /**
+     * Sets the event session of a session.
+     *
+     * @param securityToken  the security token
+     * @param eventSessionId the event session ID, or {@code null}
+     * @return a copy of the updated session, or {@code null} if there is no such session
+     */
+    TokenSession setEventSessionId(String securityToken, Long eventSessionId);
+
+    /**
+     * Sets the game hardware hash of a session.
+     *
+     * @param securityToken    the security token
+     * @param gameHardwareHash the hardware hash
+     * @return a copy of the updated session, or {@code null} if there is no such session
+     */
+    TokenSession setGameHardwareHash(String securityToken, String gameHardwareHash);
+
+    /**
+     * Removes the session for the given security token.
+     *
+     * @param securityToken the security token
+     */
+    void remove(String securityToken);
+
+    /**
+     * Removes the session belonging to the given user, if there is one.
+     *
+     * @param userId the user ID
+     */
+    void removeByUserId(Long userId);
+
+    /**
+     * Finds the security token of the session that has the given persona active.
+     *
+     * @param personaId the persona ID
+     * @return the security token, or {@code null} if the persona is not active in any session
+     */
+    String findTokenByPersonaId(Long personaId);
+
+    /**
+     * Sets the relay crypto tickets of the sessions that have the given personas active, in one round trip
+     * where the store supports it.
+     *
+     * @param ticketsByPersonaId the encoded relay crypto tickets, keyed by persona ID
+     * @return copies of the updated sessions; personas that are not active in any session are left out
+     */
+    List<TokenSession> updateRelayCryptoTickets(Map<Long, String> ticketsByPersonaId);
+
+    /**
+     * Drops sessions that have expired. Stores that expire entries on their own may do nothing.
+     */
+    void purgeExpired();
+}
\ No newline at end of file
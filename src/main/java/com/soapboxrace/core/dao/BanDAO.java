@@ -36,6 +36,13 @@ public class BanDAO extends BaseDAO<BanEntity> {
         return results.isEmpty() ? null : results.get(0);
     }
 
+    public List<BanEntity> findAllActive() {
+        TypedQuery<BanEntity> query = entityManager.createQuery("SELECT obj FROM BanEntity obj WHERE obj.willEnd = " +
+                "false OR obj.endsAt > :now", BanEntity.class);
+        query.setParameter("now", LocalDateTime.now());
+        return query.getResultList();
+    }
+
     public void unbanUser(UserEntity userEntity) {
         Query createQuery = entityManager.createQuery("DELETE FROM BanEntity obj WHERE obj.userEntity = :user");
         createQuery.setParameter("user", userEntity);
@@ -45,4 +45,10 @@ public class HardwareInfoDAO extends BaseDAO<HardwareInfoEntity> {
         return resultList.get(0);
     }
 
+    public List<String> findBannedHardwareHashes() {
+        TypedQuery<String> query = entityManager.createNamedQuery("HardwareInfoEntity.findBannedHardwareHashes",
+                String.class);
+        return query.getResultList();
+    }
+
 }
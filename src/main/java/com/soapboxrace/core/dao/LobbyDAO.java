@@ -9,19 +9,32 @@ package com.soapboxrace.core.dao;
 import com.soapboxrace.core.dao.util.BaseDAO;
 import com.soapboxrace.core.jpa.EventEntity;
 import com.soapboxrace.core.jpa.LobbyEntity;
-import com.soapboxrace.core.jpa.LobbyEntrantEntity;
 
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
 
 @Stateless
 public class LobbyDAO extends BaseDAO<LobbyEntity> {
 
+    private static final String FIND_EXPIRED_IDS_SQL = "SELECT ID FROM LOBBY WHERE startedTime < ? ORDER BY startedTime " +
+            "LIMIT ?";
+
+    private static final String DETACH_EVENT_SESSIONS_SQL = "UPDATE EVENT_SESSION SET LOBBYID = NULL " +
+            "WHERE LOBBYID IN (:ids)";
+
+    private static final String DETACH_NEXT_EVENT_SESSIONS_SQL = "UPDATE EVENT_SESSION SET NEXTLOBBYID = NULL " +
+            "WHERE NEXTLOBBYID IN (:ids)";
+
+    private static final String DELETE_LOBBIES_SQL = "DELETE FROM LOBBY WHERE ID IN (:ids)";
+
     @PersistenceContext
     protected void setEntityManager(EntityManager entityManager) {
         this.entityManager = entityManager;
@@ -38,6 +51,23 @@ public class LobbyDAO extends BaseDAO<LobbyEntity> {
         return null;
     }
 
+    /**
+     * Loads a lobby and its entrants, and locks the LOBBY row until the current transaction ends.
+     *
+     * @param id the lobby ID
+     * @return the lobby, or {@code null} if it does not exist
+     */
+    public LobbyEntity findByIdForUpdate(Long id) {
+        LobbyEntity lobbyEntity = entityManager.find(LobbyEntity.class, id, LockModeType.PESSIMISTIC_WRITE);
+
+        if (lobbyEntity != null) {
+            lobbyEntity.getEntrants().size();
+            return lobbyEntity;
+        }
+
+        return null;
+    }
+
     public List<LobbyEntity> findAllOpen(int carClassHash) {
         LocalDateTime dateNow = LocalDateTime.now();
         LocalDateTime datePast = LocalDateTime.now().minusSeconds(35);
@@ -50,26 +80,7 @@ public class LobbyDAO extends BaseDAO<LobbyEntity> {
         return query.getResultList();
     }
 
-    public List<LobbyEntity> findAllRunning() {
-        Date dateNow = new Date();
-        Date datePast = new Date(dateNow.getTime() - 50000);
-
-        TypedQuery<LobbyEntity> query = entityManager.createNamedQuery("LobbyEntity.findAllOpen", LobbyEntity.class);
-        query.setParameter("dateTime1", datePast);
-        query.setParameter("dateTime2", dateNow);
-        List<LobbyEntity> resultList = query.getResultList();
-        for (LobbyEntity lobbyEntity : resultList) {
-            List<LobbyEntrantEntity> entrants = lobbyEntity.getEntrants();
-            for (LobbyEntrantEntity lobbyEntrantEntity : entrants) {
-                lobbyEntrantEntity.getPersona();
-            }
-        }
-        return resultList;
-    }
-
     public List<LobbyEntity> findByEventStarted(int eventId) {
-//		Date dateNow = new Date();
-//		Date datePast = new Date(dateNow.getTime() - 35000);
         LocalDateTime dateNow = LocalDateTime.now();
         LocalDateTime datePast = LocalDateTime.now().minusSeconds(35);
 
@@ -100,4 +111,50 @@ public class LobbyDAO extends BaseDAO<LobbyEntity> {
         List<LobbyEntity> resultList = query.getResultList();
         return !resultList.isEmpty() ? resultList.get(0) : null;
     }
+
+    /**
+     * Returns a reference to a lobby without loading it or its entrants.
+     *
+     * @param id the lobby ID
+     * @return the lobby reference
+     */
+    public LobbyEntity getReference(Long id) {
+        return entityManager.getReference(LobbyEntity.class, id);
+    }
+
+    /**
+     * Finds at most {@code limit} lobbies that started before the given date.
+     *
+     * @param cutoff the cutoff date
+     * @param limit  the maximum number of lobbies to return
+     * @return the lobby IDs, oldest first
+     */
+    public List<Long> findExpiredIds(LocalDateTime cutoff, int limit) {
+        Query query = entityManager.createNativeQuery(FIND_EXPIRED_IDS_SQL);
+        query.setParameter(1, Timestamp.valueOf(cutoff));
+        query.setParameter(2, limit);
+
+        List<Long> ids = new ArrayList<>();
+        for (Object id : query.getResultList()) {
+            ids.add(((Number) id).longValue());
+        }
+        return ids;
+    }
+
+    /**
+     * Deletes the given lobbies. Event sessions that still point at one of them are detached from it first.
+     * The entrants of the lobbies must already be gone.
+     *
+     * @param ids the lobby IDs
+     * @return the number of deleted lobbies
+     */
+    public int deleteByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        entityManager.createNativeQuery(DETACH_EVENT_SESSIONS_SQL).setParameter("ids", ids).executeUpdate();
+        entityManager.createNativeQuery(DETACH_NEXT_EVENT_SESSIONS_SQL).setParameter("ids", ids).executeUpdate();
+        return entityManager.createNativeQuery(DELETE_LOBBIES_SQL).setParameter("ids", ids).executeUpdate();
+    }
 }
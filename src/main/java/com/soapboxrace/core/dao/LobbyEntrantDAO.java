@@ -10,15 +10,29 @@ import com.soapboxrace.core.dao.util.BaseDAO;
 import com.soapboxrace.core.jpa.LobbyEntity;
 import com.soapboxrace.core.jpa.LobbyEntrantEntity;
 import com.soapboxrace.core.jpa.PersonaEntity;
+import org.hibernate.Session;
 
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
 
 @Stateless
 public class LobbyEntrantDAO extends BaseDAO<LobbyEntrantEntity> {
 
+    private static final String DELETE_ENTRANT_SQL = "DELETE FROM LOBBY_ENTRANT WHERE LOBBYID = ? AND PERSONAID = ?";
+
+    private static final String DELETE_ORPHANS_SQL = "DELETE FROM LOBBY_ENTRANT WHERE LOBBYID IS NULL " +
+            "OR PERSONAID IS NULL LIMIT ?";
+
+    private static final String DELETE_BY_LOBBIES_SQL = "DELETE FROM LOBBY_ENTRANT WHERE LOBBYID IN (:ids)";
+
+    private static final String INSERT_ENTRANT_SQL = "INSERT INTO LOBBY_ENTRANT (LOBBYID, PERSONAID, gridIndex) " +
+            "VALUES (?, ?, ?)";
+
     @PersistenceContext
     protected void setEntityManager(EntityManager entityManager) {
         this.entityManager = entityManager;
@@ -40,4 +54,73 @@ public class LobbyEntrantDAO extends BaseDAO<LobbyEntrantEntity> {
         query.setParameter("lobby", lobbyEntity);
         query.executeUpdate();
     }
+
+    /**
+     * Deletes the entrants of the given lobbies.
+     *
+     * @param lobbyIds the lobby IDs
+     * @return the number of deleted rows
+     */
+    public int deleteByLobbyIds(List<Long> lobbyIds) {
+        if (lobbyIds.isEmpty()) {
+            return 0;
+        }
+
+        Query query = entityManager.createNativeQuery(DELETE_BY_LOBBIES_SQL);
+        query.setParameter("ids", lobbyIds);
+        return query.executeUpdate();
+    }
+
+    /**
+     * Deletes at most {@code limit} entrants that no longer belong to a lobby or a persona.
+     *
+     * @param limit the maximum number of rows to delete
+     * @return the number of deleted rows
+     */
+    public int deleteOrphans(int limit) {
+        Query query = entityManager.createNativeQuery(DELETE_ORPHANS_SQL);
+        query.setParameter(1, limit);
+        return query.executeUpdate();
+    }
+
+    /**
+     * Writes a set of entrant changes with two JDBC batches: removed entrants are deleted first,
+     * then added entrants are inserted.
+     *
+     * @param removedEntrants the entrants that left their lobby
+     * @param addedEntrants   the entrants that joined a lobby
+     */
+    public void updateEntrants(Collection<LobbyEntrantEntity> removedEntrants,
+                               Collection<LobbyEntrantEntity> addedEntrants) {
+        if (removedEntrants.isEmpty() && addedEntrants.isEmpty()) {
+            return;
+        }
+
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            if (!removedEntrants.isEmpty()) {
+                try (PreparedStatement statement = connection.prepareStatement(DELETE_ENTRANT_SQL)) {
+                    for (LobbyEntrantEntity lobbyEntrant : removedEntrants) {
+                        statement.setLong(1, lobbyEntrant.getLobby().getId());
+                        statement.setLong(2, lobbyEntrant.getPersona().getPersonaId());
+                        statement.addBatch();
+                    }
+
+                    statement.executeBatch();
+                }
+            }
+
+            if (!addedEntrants.isEmpty()) {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_ENTRANT_SQL)) {
+                    for (LobbyEntrantEntity lobbyEntrant : addedEntrants) {
+                        statement.setLong(1, lobbyEntrant.getLobby().getId());
+                        statement.setLong(2, lobbyEntrant.getPersona().getPersonaId());
+                        statement.setInt(3, lobbyEntrant.getGridIndex());
+                        statement.addBatch();
+                    }
+
+                    statement.executeBatch();
+                }
+            }
+        });
+    }
 }
@@ -8,16 +8,37 @@ package com.soapboxrace.core.dao;
 
 import com.soapboxrace.core.dao.util.BaseDAO;
 import com.soapboxrace.core.jpa.TokenSessionEntity;
+import org.hibernate.Session;
 
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TemporalType;
 import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 @Stateless
 public class TokenSessionDAO extends BaseDAO<TokenSessionEntity> {
 
+    private static final String UPDATE_STATE_SQL = "UPDATE TOKEN_SESSION SET activePersonaId = ?, activeLobbyId = ?, " +
+            "eventSessionId = ?, relayCryptoTicket = ? WHERE ID = ?";
+
+    private static final String UPDATE_RELAY_CRYPTO_TICKET_SQL = "UPDATE TOKEN_SESSION SET relayCryptoTicket = ? " +
+            "WHERE activePersonaId = ?";
+
+    private static final String FIND_ACTIVE_PERSONA_IDS_SQL = "SELECT activePersonaId FROM TOKEN_SESSION " +
+            "WHERE activePersonaId IN (:personaIds) AND expirationDate >= :now";
+
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM TOKEN_SESSION WHERE expirationDate < ? LIMIT ?";
+
     @PersistenceContext
     protected void setEntityManager(EntityManager entityManager) {
         this.entityManager = entityManager;
@@ -47,6 +68,119 @@ public class TokenSessionDAO extends BaseDAO<TokenSessionEntity> {
         query.executeUpdate();
     }
 
+    /**
+     * Sets the relay crypto tickets of the sessions that have the given personas active, in a single JDBC batch.
+     *
+     * @param ticketsByPersonaId the encoded relay crypto tickets, keyed by persona ID
+     */
+    public void updateRelayCryptoTickets(Map<Long, String> ticketsByPersonaId) {
+        if (ticketsByPersonaId.isEmpty()) {
+            return;
+        }
+
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_RELAY_CRYPTO_TICKET_SQL)) {
+                for (Map.Entry<Long, String> entry : ticketsByPersonaId.entrySet()) {
+                    statement.setString(1, entry.getValue());
+                    statement.setLong(2, entry.getKey());
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+            }
+        });
+    }
+
+    public void updateState(String securityToken, Long activePersonaId, Long activeLobbyId, Long eventSessionId,
+                            String relayCryptoTicket) {
+        Query query = entityManager.createNamedQuery("TokenSessionEntity.updateState");
+        query.setParameter("securityToken", securityToken);
+        query.setParameter("activePersonaId", activePersonaId);
+        query.setParameter("activeLobbyId", activeLobbyId);
+        query.setParameter("eventSessionId", eventSessionId);
+        query.setParameter("relayCryptoTicket", relayCryptoTicket);
+        query.executeUpdate();
+    }
+
+    /**
+     * Writes the transient state (persona, lobby, event session, relay ticket) of several sessions
+     * in a single JDBC batch.
+     *
+     * @param tokenSessions detached entities carrying the security token and the state to write
+     */
+    public void updateStates(Collection<TokenSessionEntity> tokenSessions) {
+        if (tokenSessions.isEmpty()) {
+            return;
+        }
+
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_STATE_SQL)) {
+                for (TokenSessionEntity tokenSession : tokenSessions) {
+                    setLong(statement, 1, tokenSession.getActivePersonaId());
+                    setLong(statement, 2, tokenSession.getActiveLobbyId());
+                    setLong(statement, 3, tokenSession.getEventSessionId());
+                    statement.setString(4, tokenSession.getRelayCryptoTicket());
+                    statement.setString(5, tokenSession.getSecurityToken());
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+            }
+        });
+    }
+
+    private static void setLong(PreparedStatement statement, int index, Long value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.BIGINT);
+        } else {
+            statement.setLong(index, value);
+        }
+    }
+
+    public void updateExpirationDate(String securityToken, Date expirationDate) {
+        Query query = entityManager.createNamedQuery("TokenSessionEntity.updateExpirationDate");
+        query.setParameter("securityToken", securityToken);
+        query.setParameter("expirationDate", expirationDate);
+        query.executeUpdate();
+    }
+
+    /**
+     * Finds which of the given personas are active in a session that has not expired yet.
+     *
+     * @param personaIds the persona IDs
+     * @param now        the current date
+     * @return the IDs of the active personas
+     */
+    public List<Long> findActivePersonaIds(Collection<Long> personaIds, Date now) {
+        if (personaIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Query query = entityManager.createNativeQuery(FIND_ACTIVE_PERSONA_IDS_SQL);
+        query.setParameter("personaIds", personaIds);
+        query.setParameter("now", now, TemporalType.TIMESTAMP);
+
+        List<Long> activePersonaIds = new ArrayList<>();
+        for (Object personaId : query.getResultList()) {
+            activePersonaIds.add(((Number) personaId).longValue());
+        }
+        return activePersonaIds;
+    }
+
+    /**
+     * Deletes at most {@code limit} sessions that expired before the given date.
+     *
+     * @param now   the cutoff date
+     * @param limit the maximum number of rows to delete
+     * @return the number of deleted rows
+     */
+    public int deleteExpired(Date now, int limit) {
+        Query query = entityManager.createNativeQuery(DELETE_EXPIRED_SQL);
+        query.setParameter(1, now, TemporalType.TIMESTAMP);
+        query.setParameter(2, limit);
+        return query.executeUpdate();
+    }
+
     public void updateLobbyIdByPersonaId(Long personaId, Long lobbyId) {
         Query query = entityManager.createNamedQuery("TokenSessionEntity.updateLobbyId");
         query.setParameter("personaId", personaId);
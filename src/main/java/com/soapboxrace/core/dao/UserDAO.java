@@ -8,16 +8,21 @@ package com.soapboxrace.core.dao;
 
 import com.soapboxrace.core.dao.util.BaseDAO;
 import com.soapboxrace.core.jpa.UserEntity;
+import org.hibernate.Session;
 
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
 import java.util.List;
+import java.util.Map;
 
 @Stateless
 public class UserDAO extends BaseDAO<UserEntity> {
 
+    private static final String UPDATE_HWID_SQL = "UPDATE USER SET HWID = ? WHERE EMAIL = ?";
+
     @PersistenceContext
     protected void setEntityManager(EntityManager entityManager) {
         this.entityManager = entityManager;
@@ -39,6 +44,29 @@ public class UserDAO extends BaseDAO<UserEntity> {
         return !resultList.isEmpty() ? resultList.get(0) : null;
     }
 
+    /**
+     * Sets the HWID of several users in a single JDBC batch.
+     *
+     * @param hwidsByEmail the new HWID for each user's email address
+     */
+    public void updateHwids(Map<String, String> hwidsByEmail) {
+        if (hwidsByEmail.isEmpty()) {
+            return;
+        }
+
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_HWID_SQL)) {
+                for (Map.Entry<String, String> entry : hwidsByEmail.entrySet()) {
+                    statement.setString(1, entry.getValue());
+                    statement.setString(2, entry.getKey());
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+            }
+        });
+    }
+
     public UserEntity findByIpAddress(String ipAddress) {
         TypedQuery<UserEntity> query = entityManager.createNamedQuery("UserEntity.findByIpAddress", UserEntity.class);
         query.setParameter("ipAddress", ipAddress);
@@ -14,7 +14,9 @@ import javax.persistence.*;
         @NamedQuery(name = "HardwareInfoEntity.findByHardwareHash", query = "SELECT obj FROM HardwareInfoEntity obj " +
                 "WHERE obj.hardwareHash = :hardwareHash"), //
         @NamedQuery(name = "HardwareInfoEntity.findByUserId", query = "SELECT obj FROM HardwareInfoEntity obj WHERE " +
-                "obj.userId = :userId") //
+                "obj.userId = :userId"), //
+        @NamedQuery(name = "HardwareInfoEntity.findBannedHardwareHashes", query = "SELECT obj.hardwareHash FROM " +
+                "HardwareInfoEntity obj WHERE obj.banned = true") //
 })
 public class HardwareInfoEntity {
 
@@ -21,7 +21,15 @@ import java.util.Date;
                         + "SET obj.relayCryptoTicket = :relayCryptoTicket WHERE obj.activePersonaId = :personaId"), //
         @NamedQuery(name = "TokenSessionEntity.updateLobbyId", //
                 query = "UPDATE TokenSessionEntity obj " //
-                        + "SET obj.activeLobbyId = :activeLobbyId WHERE obj.activePersonaId = :personaId") //
+                        + "SET obj.activeLobbyId = :activeLobbyId WHERE obj.activePersonaId = :personaId"), //
+        @NamedQuery(name = "TokenSessionEntity.updateExpirationDate", //
+                query = "UPDATE TokenSessionEntity obj " //
+                        + "SET obj.expirationDate = :expirationDate WHERE obj.securityToken = :securityToken"), //
+        @NamedQuery(name = "TokenSessionEntity.updateState", //
+                query = "UPDATE TokenSessionEntity obj " //
+                        + "SET obj.activePersonaId = :activePersonaId, obj.activeLobbyId = :activeLobbyId, " //
+                        + "obj.eventSessionId = :eventSessionId, obj.relayCryptoTicket = :relayCryptoTicket " //
+                        + "WHERE obj.securityToken = :securityToken") //
 })
 public class TokenSessionEntity {
 
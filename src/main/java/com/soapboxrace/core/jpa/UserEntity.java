@@ -32,7 +32,8 @@ public class UserEntity {
     @Column(name = "PASSWORD", length = 50)
     private String password;
 
-    @Column(name = "HWID")
+    // written only by UserDAO.updateHwids, so that merging a user loaded earlier cannot overwrite a newer HWID
+    @Column(name = "HWID", updatable = false)
     private String hwid;
 
     private String gameHardwareHash;
@@ -1,5 +1,7 @@
 package com.soapboxrace.core.xmpp;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.soapboxrace.core.bo.ParameterBO;
 import org.jivesoftware.smack.ReconnectionManager;
 import org.jivesoftware.smack.SmackException;
@@ -7,26 +9,43 @@ import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection;
 import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.jxmpp.jid.EntityBareJid;
 import org.jxmpp.jid.impl.JidCreate;
 import org.jxmpp.stringprep.XmppStringprepException;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Lock;
 import javax.ejb.LockType;
 import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.net.ssl.X509TrustManager;
 import java.io.IOException;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Interacts to OpenFire XMPP server using the Smack library.
  * Capable of sending messages.
+ * <p>
+ * Messages are not written on the caller's thread: {@link #send(String, Long)} puts them on a bounded
+ * {@link XmppOutboundQueue} with XMPP_SEND_THREADS lanes, each drained by its own sender thread. Personas are mapped
+ * to lanes by consistent hashing so messages to one persona stay in order. There are XMPP_CONNECTION_POOL_SIZE
+ * connections (shards), and lane {@code n} writes to shard {@code n % XMPP_CONNECTION_POOL_SIZE}; Smack connections
+ * can be written to from several threads. There are never fewer lanes than shards.
+ * With XMPP_STUB_MODE, no connections are made and messages go to an {@link XmppStubEndpoint}.
  * TODO add presence monitoring + chat logging
  */
 @Singleton
 public class OpenFireConnector {
 
+    /**
+     * The number of points each lane owns on the {@link XmppShardRing}.
+     */
+    static final int POINTS_PER_SHARD = 64;
+
     private String ipAddress;
 
     private Integer port;
@@ -38,7 +57,18 @@ public class OpenFireConnector {
     @EJB
     private ParameterBO parameterBO;
 
-    private XMPPTCPConnection connection;
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private XMPPTCPConnection[] connections = new XMPPTCPConnection[0];
+
+    private XmppShardRing laneRing;
+
+    private XmppStubEndpoint stubEndpoint;
+
+    private XmppOutboundQueue outboundQueue;
+
+    private final Cache<Long, EntityBareJid> jidCache = CacheBuilder.newBuilder().maximumSize(50000).build();
 
     private static X509TrustManager getX509TrustManager() {
         return new X509TrustManager() {
@@ -67,27 +97,75 @@ public class OpenFireConnector {
         this.debugMode = parameterBO.getBoolParam("XMPP_DEBUG");
     }
 
+    @PreDestroy
+    public void shutdown() {
+        if (this.outboundQueue != null) {
+            this.outboundQueue.shutdown(5000);
+        }
+
+        for (XMPPTCPConnection connection : this.connections) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
     /**
      * Connects to the XMPP server.
      */
     public void connect() {
-        this.connection = new XMPPTCPConnection(getConnectionConfiguration());
+        int poolSize = Math.max(1, parameterBO.getIntParam("XMPP_CONNECTION_POOL_SIZE", 1));
+        int laneCount = Math.max(poolSize, parameterBO.getIntParam("XMPP_SEND_THREADS", 2));
+        XmppOutboundQueue.Sender sender;
+
+        if (parameterBO.getBoolParam("XMPP_STUB_MODE")) {
+            XmppStubEndpoint stubEndpoint = new XmppStubEndpoint(poolSize,
+                    parameterBO.getIntParam("XMPP_STUB_LATENCY_MS", 0));
+            this.stubEndpoint = stubEndpoint;
+            sender = (lane, message) -> stubEndpoint.send(lane % poolSize, message);
+            System.out.println("Using stub XMPP endpoint with " + poolSize + " shard(s)");
+        } else {
+            this.connections = new XMPPTCPConnection[poolSize];
+
+            for (int shard = 0; shard < poolSize; shard++) {
+                this.connections[shard] = openConnection(shard);
+            }
+
+            sender = (lane, message) -> sendNow(this.connections[lane % poolSize], message);
+            System.out.println("Logged in to Openfire server! (" + poolSize + " connection(s))");
+        }
+
+        this.laneRing = new XmppShardRing(laneCount, POINTS_PER_SHARD);
+        this.outboundQueue = new XmppOutboundQueue(
+                laneCount,
+                parameterBO.getIntParam("XMPP_QUEUE_CAPACITY", 10000),
+                XmppOverflowPolicy.valueOf(parameterBO.getStrParam("XMPP_QUEUE_OVERFLOW_POLICY", "DROP_OLDEST")),
+                parameterBO.getIntParam("XMPP_QUEUE_BLOCK_TIMEOUT_MS", 1000),
+                sender,
+                this.threadFactory);
+    }
+
+    /**
+     * Opens and logs in one shard connection. Each shard uses its own resource and reconnects on its own.
+     */
+    private XMPPTCPConnection openConnection(int shard) {
+        XMPPTCPConnection connection = new XMPPTCPConnection(getConnectionConfiguration(shard));
         try {
-            this.connection.connect();
-            this.connection.login();
+            connection.connect();
+            connection.login();
 
-            ReconnectionManager.getInstanceFor(this.connection).enableAutomaticReconnection();
-            ReconnectionManager.getInstanceFor(this.connection)
+            ReconnectionManager.getInstanceFor(connection).enableAutomaticReconnection();
+            ReconnectionManager.getInstanceFor(connection)
                     .setReconnectionPolicy(ReconnectionManager.ReconnectionPolicy.RANDOM_INCREASING_DELAY);
 
-            System.out.println("Logged in to Openfire server!");
+            return connection;
         } catch (IOException | SmackException | XMPPException | InterruptedException e) {
             throw new RuntimeException("Failed to connect to Openfire server", e);
         }
     }
 
     /**
-     * Sends a message to a persona.
+     * Queues a message to a persona.
      *
      * @param msg       The message to send.
      * @param personaId The ID of the persona to send the message to.
@@ -98,23 +176,80 @@ public class OpenFireConnector {
             System.out.println("MESSAGE TO " + personaId);
             System.out.println(msg);
         }
+        this.outboundQueue.enqueue(this.laneRing.getShard(personaId), new XmppOutboundMessage(personaId, msg));
+    }
+
+    /**
+     * Gets the outbound queue, e.g. to read its metrics.
+     *
+     * @return the outbound queue
+     */
+    @Lock(LockType.READ)
+    public XmppOutboundQueue getOutboundQueue() {
+        return this.outboundQueue;
+    }
+
+    /**
+     * Gets the stub endpoint used instead of the shard connections.
+     *
+     * @return the stub endpoint, or {@code null} unless XMPP_STUB_MODE is enabled
+     */
+    @Lock(LockType.READ)
+    public XmppStubEndpoint getStubEndpoint() {
+        return this.stubEndpoint;
+    }
+
+    /**
+     * Gets the number of shard connections.
+     *
+     * @return the number of shards
+     */
+    @Lock(LockType.READ)
+    public int getShardCount() {
+        return this.stubEndpoint != null ? this.stubEndpoint.getShardCount() : this.connections.length;
+    }
+
+    /**
+     * Counts the shard connections that are currently authenticated.
+     *
+     * @return the number of connected shards
+     */
+    @Lock(LockType.READ)
+    public int getConnectedShardCount() {
+        if (this.stubEndpoint != null) {
+            return this.stubEndpoint.getShardCount();
+        }
+
+        int connected = 0;
+
+        for (XMPPTCPConnection connection : this.connections) {
+            if (connection.isAuthenticated()) {
+                connected++;
+            }
+        }
+
+        return connected;
+    }
+
+    private void sendNow(XMPPTCPConnection connection, XmppOutboundMessage outboundMessage)
+            throws SmackException.NotConnectedException, InterruptedException, ExecutionException {
         Message message = new Message();
         message.setSubject("1337733113377331");
         message.setStanzaId("JN_1234567");
-        message.setBody(msg);
-        try {
-            message.setTo(JidCreate.entityBareFrom("sbrw." + personaId + "@" + ipAddress));
-            connection.sendStanza(message);
-        } catch (SmackException.NotConnectedException | InterruptedException | XmppStringprepException e) {
-            throw new RuntimeException("Failed to send XMPP message", e);
-        }
+        message.setBody(outboundMessage.getBody());
+        message.setTo(getJid(outboundMessage.getPersonaId()));
+        connection.sendStanza(message);
+    }
+
+    private EntityBareJid getJid(Long personaId) throws ExecutionException {
+        return jidCache.get(personaId, () -> JidCreate.entityBareFrom("sbrw." + personaId + "@" + ipAddress));
     }
 
-    private XMPPTCPConnectionConfiguration getConnectionConfiguration() {
+    private XMPPTCPConnectionConfiguration getConnectionConfiguration(int shard) {
         try {
             XMPPTCPConnectionConfiguration.Builder configBuilder = XMPPTCPConnectionConfiguration.builder()
                     .setUsernameAndPassword("sbrw.engine.engine", this.engineToken)
-                    .setResource("EA_Chat")
+                    .setResource(shard == 0 ? "EA_Chat" : "EA_Chat_" + shard)
                     .setXmppDomain(this.ipAddress)
                     .setPort(this.port)
                     .setCustomX509TrustManager(getX509TrustManager())
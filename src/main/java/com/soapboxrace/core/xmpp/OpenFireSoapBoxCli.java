@@ -10,6 +10,7 @@ import com.soapboxrace.jaxb.util.JAXBUtility;
 
 import javax.annotation.PostConstruct;
 import javax.ejb.*;
+import java.util.Collection;
 
 @Startup
 @Singleton
@@ -32,4 +33,23 @@ public class OpenFireSoapBoxCli {
     public void send(Object object, Long to) {
         openFireConnector.send(JAXBUtility.marshal(object), to);
     }
+
+    /**
+     * Sends the same payload to several personas, marshalling it only once.
+     *
+     * @param object     the payload
+     * @param recipients the recipient persona IDs
+     */
+    @Lock(LockType.READ)
+    public void broadcast(Object object, Collection<Long> recipients) {
+        if (recipients.isEmpty()) {
+            return;
+        }
+
+        String msg = JAXBUtility.marshal(object);
+
+        for (Long to : recipients) {
+            openFireConnector.send(msg, to);
+        }
+    }
 }
\ No newline at end of file
@@ -9,27 +9,32 @@ package com.soapboxrace.core.xmpp;
 import com.soapboxrace.core.jpa.EventSessionEntity;
 import com.soapboxrace.jaxb.xmpp.*;
 
+import java.util.Collection;
+
+/**
+ * Sends event result and timing messages to a group of racers. Each payload is marshalled once for all of them.
+ */
 public class XmppEvent {
 
-    private final long personaId;
+    private final Collection<Long> personaIds;
 
     private final OpenFireSoapBoxCli openFireSoapBoxCli;
 
-    public XmppEvent(long personaId, OpenFireSoapBoxCli openFireSoapBoxCli) {
-        this.personaId = personaId;
+    public XmppEvent(Collection<Long> personaIds, OpenFireSoapBoxCli openFireSoapBoxCli) {
+        this.personaIds = personaIds;
         this.openFireSoapBoxCli = openFireSoapBoxCli;
     }
 
     public void sendRaceEnd(XMPP_ResponseTypeRouteEntrantResult routeEntrantResultResponse) {
-        openFireSoapBoxCli.send(routeEntrantResultResponse, personaId);
+        openFireSoapBoxCli.broadcast(routeEntrantResultResponse, personaIds);
     }
 
     public void sendTeamEscapeEnd(XMPP_ResponseTypeTeamEscapeEntrantResult teamEscapeEntrantResultResponse) {
-        openFireSoapBoxCli.send(teamEscapeEntrantResultResponse, personaId);
+        openFireSoapBoxCli.broadcast(teamEscapeEntrantResultResponse, personaIds);
     }
 
     public void sendDragEnd(XMPP_ResponseTypeDragEntrantResult dragEntrantResultResponse) {
-        openFireSoapBoxCli.send(dragEntrantResultResponse, personaId);
+        openFireSoapBoxCli.broadcast(dragEntrantResultResponse, personaIds);
     }
 
     public void sendEventTimingOut(EventSessionEntity eventSessionEntity) {
@@ -38,7 +43,7 @@ public class XmppEvent {
         eventTimingOut.setTimeInMilliseconds(eventSessionEntity.getEvent().getDnfTimerTime());
         XMPP_ResponseTypeEventTimingOut eventTimingOutResponse = new XMPP_ResponseTypeEventTimingOut();
         eventTimingOutResponse.setEventTimingOut(eventTimingOut);
-        openFireSoapBoxCli.send(eventTimingOutResponse, personaId);
+        openFireSoapBoxCli.broadcast(eventTimingOutResponse, personaIds);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.xmpp;
+
+import com.soapboxrace.jaxb.util.JAXBUtility;
+import com.soapboxrace.jaxb.xmpp.XMPP_LobbyLaunchedType;
+import com.soapboxrace.jaxb.xmpp.XMPP_P2PCryptoTicketType;
+import com.soapboxrace.jaxb.xmpp.XMPP_ResponseTypeLobbyLaunched;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A lobby launch message marshalled once for every entrant of the lobby.
+ * <p>
+ * Each entrant receives the crypto tickets of every <i>other</i> entrant. Instead of marshalling the whole document
+ * per entrant, the document is marshalled once with all tickets and cut into a shared prefix, one encoded fragment
+ * per ticket and a shared suffix. Rendering a recipient's message only concatenates those pieces.
+ */
+public class XmppLobbyLaunchedTemplate {
+
+    private static final String TICKET_OPEN = "<P2PCryptoTicket>";
+
+    private static final String TICKET_CLOSE = "</P2PCryptoTicket>";
+
+    private final String prefix;
+
+    private final String suffix;
+
+    private final long[] ticketPersonaIds;
+
+    private final String[] ticketFragments;
+
+    private final int length;
+
+    public XmppLobbyLaunchedTemplate(XMPP_LobbyLaunchedType lobbyLaunched) {
+        XMPP_ResponseTypeLobbyLaunched response = new XMPP_ResponseTypeLobbyLaunched();
+        response.setLobbyInvite(lobbyLaunched);
+
+        String document = JAXBUtility.marshal(response);
+        List<XMPP_P2PCryptoTicketType> tickets = lobbyLaunched.getCryptoTickets() != null
+                ? lobbyLaunched.getCryptoTickets().getP2PCryptoTicket()
+                : Collections.emptyList();
+
+        this.ticketPersonaIds = new long[tickets.size()];
+        this.ticketFragments = new String[tickets.size()];
+        this.length = document.length();
+
+        if (tickets.isEmpty()) {
+            this.prefix = document;
+            this.suffix = "";
+            return;
+        }
+
+        // CryptoTickets is the first element of LobbyLaunched, so the first ticket tags in the document are the
+        // tickets, in list order.
+        int firstTicket = -1;
+        int position = 0;
+
+        for (int i = 0; i < tickets.size(); i++) {
+            int start = document.indexOf(TICKET_OPEN, position);
+            int end = start == -1 ? -1 : document.indexOf(TICKET_CLOSE, start);
+
+            if (end == -1) {
+                throw new IllegalStateException("Could not locate crypto ticket " + i + " in lobby launch message");
+            }
+
+            end += TICKET_CLOSE.length();
+
+            if (i == 0) {
+                firstTicket = start;
+            }
+
+            ticketPersonaIds[i] = tickets.get(i).getPersonaId();
+            ticketFragments[i] = document.substring(start, end);
+            position = end;
+        }
+
+        this.prefix = document.substring(0, firstTicket);
+        this.suffix = document.substring(position);
+    }
+
+    /**
+     * Builds the message for one entrant, leaving out that entrant's own ticket.
+     *
+     * @param personaId the recipient persona ID
+     * @return the message
+     */
+    public String render(long personaId) {
+        StringBuilder stringBuilder = new StringBuilder(length);
+        stringBuilder.append(prefix);
+
+        for (int i = 0; i < ticketFragments.length; i++) {
+            if (ticketPersonaIds[i] != personaId) {
+                stringBuilder.append(ticketFragments[i]);
+            }
+        }
+
+        return stringBuilder.append(suffix).toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,37 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.xmpp;
+
+/**
+ * A message waiting in the {@link XmppOutboundQueue}.
+ */
+public class XmppOutboundMessage {
+
+    private final Long personaId;
+
+    private final String body;
+
+    private final long enqueuedAt;
+
+    public XmppOutboundMessage(Long personaId, String body) {
+        this.personaId = personaId;
+        this.body = body;
+        this.enqueuedAt = System.nanoTime();
+    }
+
+    public Long getPersonaId() {
+        return personaId;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,209 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.xmpp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of outbound XMPP messages, drained by one sender thread per lane.
+ * <p>
+ * Callers pick the lane of a persona from {@link XmppShardRing}, so every message for a persona goes through the
+ * same lane and is sent in the order it was queued. When a lane is full, the {@link XmppOverflowPolicy} decides
+ * whether the oldest message is dropped or the caller waits (up to a timeout).
+ */
+public class XmppOutboundQueue {
+
+    /**
+     * Writes a message to the XMPP server.
+     */
+    public interface Sender {
+        /**
+         * @param lane    the lane the message was queued on
+         * @param message the message
+         * @throws Exception if the message could not be sent
+         */
+        void send(int lane, XmppOutboundMessage message) throws Exception;
+    }
+
+    private final BlockingQueue<XmppOutboundMessage>[] lanes;
+
+    private final Thread[] threads;
+
+    private final XmppOverflowPolicy overflowPolicy;
+
+    private final long blockTimeoutMillis;
+
+    private final Sender sender;
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    @SuppressWarnings("unchecked")
+    public XmppOutboundQueue(int laneCount, int capacity, XmppOverflowPolicy overflowPolicy, long blockTimeoutMillis,
+                             Sender sender, ThreadFactory threadFactory) {
+        this.lanes = new BlockingQueue[laneCount];
+        this.threads = new Thread[laneCount];
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.sender = sender;
+
+        int laneCapacity = Math.max(1, capacity / laneCount);
+
+        for (int i = 0; i < laneCount; i++) {
+            int lane = i;
+            this.lanes[i] = new ArrayBlockingQueue<>(laneCapacity);
+            this.threads[i] = threadFactory.newThread(() -> drain(lane));
+            this.threads[i].setName("xmpp-sender-" + i);
+            this.threads[i].start();
+        }
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Queues a message on the given lane.
+     *
+     * @param lane    the lane
+     * @param message the message
+     * @return {@code false} if the message was dropped
+     */
+    public boolean enqueue(int lane, XmppOutboundMessage message) {
+        BlockingQueue<XmppOutboundMessage> queue = lanes[lane];
+
+        if (!running) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+
+        if (overflowPolicy == XmppOverflowPolicy.BLOCK) {
+            try {
+                if (queue.offer(message, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            droppedCount.incrementAndGet();
+            return false;
+        }
+
+        while (!queue.offer(message)) {
+            if (queue.poll() != null) {
+                droppedCount.incrementAndGet();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops accepting messages and waits for the sender threads to drain their lanes.
+     *
+     * @param timeoutMillis how long to wait in total before interrupting the sender threads
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        for (Thread thread : threads) {
+            try {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    public int getDepth() {
+        int depth = 0;
+
+        for (BlockingQueue<XmppOutboundMessage> lane : lanes) {
+            depth += lane.size();
+        }
+
+        return depth;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the average time between queueing and sending a message, in milliseconds
+     */
+    public double getAverageLatencyMillis() {
+        long sent = sentCount.get();
+        return sent == 0 ? 0 : totalLatencyNanos.get() / (double) sent / 1_000_000;
+    }
+
+    /**
+     * @return the longest time between queueing and sending a message, in milliseconds
+     */
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1_000_000d;
+    }
+
+    private void drain(int lane) {
+        BlockingQueue<XmppOutboundMessage> queue = lanes[lane];
+
+        while (running || !queue.isEmpty()) {
+            XmppOutboundMessage message;
+
+            try {
+                message = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (message == null) {
+                continue;
+            }
+
+            try {
+                sender.send(lane, message);
+                long latency = System.nanoTime() - message.getEnqueuedAt();
+                sentCount.incrementAndGet();
+                totalLatencyNanos.addAndGet(latency);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                failedCount.incrementAndGet();
+                System.err.println("Failed to send XMPP message to " + message.getPersonaId() + " [" + e.getMessage() + "]");
+            }
+        }
+    }
+}
\ No newline at end of file
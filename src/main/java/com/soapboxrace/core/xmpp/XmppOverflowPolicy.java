@@ -0,0 +1,21 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.xmpp;
+
+/**
+ * What the {@link XmppOutboundQueue} does when a lane is full.
+ */
+public enum XmppOverflowPolicy {
+    /**
+     * Discard the oldest queued message of the lane to make room.
+     */
+    DROP_OLDEST,
+    /**
+     * Wait up to the configured timeout for room, then discard the new message.
+     */
+    BLOCK
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.xmpp;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring that maps personas to XMPP connection shards.
+ * Each shard owns several points on the ring, so changing the pool size only moves a fraction of the personas.
+ */
+public class XmppShardRing {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+
+    /**
+     * @param shardCount     the number of shards
+     * @param pointsPerShard the number of ring points per shard
+     */
+    public XmppShardRing(int shardCount, int pointsPerShard) {
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int point = 0; point < pointsPerShard; point++) {
+                ring.put(HASH_FUNCTION.hashLong(((long) shard << 32) | point).asInt(), shard);
+            }
+        }
+    }
+
+    /**
+     * Gets the shard for a persona.
+     *
+     * @param personaId the persona ID
+     * @return the shard index
+     */
+    public int getShard(Long personaId) {
+        Map.Entry<Integer, Integer> entry = ring.ceilingEntry(HASH_FUNCTION.hashLong(personaId).asInt());
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.xmpp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stand-in for the OpenFire server, enabled with XMPP_STUB_MODE.
+ * It replaces the shard connections: messages are still mapped to lanes by the {@link XmppShardRing}, drained by the
+ * per-lane sender threads and handed to the shard of their lane, but no XMPPTCPConnection is opened and no stanza is
+ * built, so connection handling and reconnects are not exercised. Each message is counted on its shard,
+ * optionally after a simulated write delay (XMPP_STUB_LATENCY_MS). Meant for load-testing the shard ring and
+ * outbound queue without an XMPP server; the counts are shown by /XmppStatus/queue.
+ */
+public class XmppStubEndpoint {
+
+    private final AtomicLongArray received;
+
+    private final long latencyMillis;
+
+    public XmppStubEndpoint(int shardCount, long latencyMillis) {
+        this.received = new AtomicLongArray(shardCount);
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void send(int shard, XmppOutboundMessage outboundMessage) throws InterruptedException {
+        if (latencyMillis > 0) {
+            Thread.sleep(latencyMillis);
+        }
+
+        received.incrementAndGet(shard);
+    }
+
+    public int getShardCount() {
+        return received.length();
+    }
+
+    public long getReceivedCount(int shard) {
+        return received.get(shard);
+    }
+}
\ No newline at end of file
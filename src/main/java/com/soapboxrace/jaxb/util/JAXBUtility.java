@@ -15,25 +15,37 @@ import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class JAXBUtility {
 
-    private static final Map<Class<?>, JAXBContext> contextStore = new ConcurrentHashMap<>();
+    /**
+     * Maximum number of idle marshallers (and unmarshallers) kept per class.
+     */
+    private static final int POOL_SIZE = 16;
+
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+
+    private static final Map<Class<?>, ContextEntry> contextStore = new ConcurrentHashMap<>();
 
     protected static JAXBContext getContextInstance(Class<?> objectClass) throws JAXBException {
-        JAXBContext context = contextStore.get(objectClass);
-        if (context == null) {
-            context = JAXBContext.newInstance(objectClass);
-            contextStore.put(objectClass, context);
+        return getContextEntry(objectClass).context;
+    }
+
+    private static ContextEntry getContextEntry(Class<?> objectClass) throws JAXBException {
+        try {
+            return contextStore.computeIfAbsent(objectClass, ContextEntry::create);
+        } catch (ContextCreationException e) {
+            throw e.getCause();
         }
-        return context;
     }
 
-    @SuppressWarnings("unchecked")
     public static String marshal(Object obj) {
         if (obj == null) {
             return "";
@@ -41,35 +53,50 @@ public class JAXBUtility {
 
         StringWriter stringWriter = new StringWriter();
         try {
-            JAXBContext jaxbContext = getContextInstance(obj.getClass());
-            Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-            jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
-            jaxbMarshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
-            XmlRootElement xmlRootAnnotation = obj.getClass().getAnnotation(XmlRootElement.class);
-            if (xmlRootAnnotation == null) {
-                XmlType xmlTypeAnnotation = obj.getClass().getAnnotation(XmlType.class);
-                QName qname = new QName("", xmlTypeAnnotation.name());
-                JAXBElement<Object> jaxbElement = new JAXBElement<>(qname, (Class<Object>) obj.getClass(), null, obj);
-                jaxbMarshaller.marshal(jaxbElement, stringWriter);
-            } else {
-                jaxbMarshaller.marshal(obj, stringWriter);
-            }
+            ContextEntry entry = getContextEntry(obj.getClass());
+            Marshaller jaxbMarshaller = entry.borrowMarshaller();
+            jaxbMarshaller.marshal(entry.wrap(obj), stringWriter);
+            entry.returnMarshaller(jaxbMarshaller);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return stringWriter.toString();
     }
 
+    /**
+     * Marshals the given object straight to a stream as UTF-8,
+     * producing the same document as {@link #marshal(Object)}.
+     *
+     * @param obj the object to marshal
+     * @param os  the stream to write to
+     * @throws JAXBException if the object cannot be marshalled
+     */
+    public static void marshal(Object obj, OutputStream os) throws JAXBException {
+        if (obj == null) {
+            return;
+        }
+
+        ContextEntry entry = getContextEntry(obj.getClass());
+        Marshaller jaxbMarshaller = entry.borrowMarshaller();
+        jaxbMarshaller.marshal(entry.wrap(obj), os);
+        entry.returnMarshaller(jaxbMarshaller);
+    }
+
     @SuppressWarnings("deprecated")
     public static <T> T unMarshal(InputStream is, Class<T> classz) {
         try {
             InputStreamReader inputStreamReader = new InputStreamReader(is);
-            JAXBContext jaxbContext = getContextInstance(classz);
-            Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-            XMLStreamReader xsr = XMLInputFactory.newFactory().createXMLStreamReader(inputStreamReader);
-            XMLReaderWithoutNamespace xr = new XMLReaderWithoutNamespace(xsr);
-            JAXBElement<T> jaxbElement = jaxbUnmarshaller.unmarshal(xr, classz);
-            return jaxbElement.getValue();
+            ContextEntry entry = getContextEntry(classz);
+            Unmarshaller jaxbUnmarshaller = entry.borrowUnmarshaller();
+            XMLStreamReader xsr = xmlInputFactory.createXMLStreamReader(inputStreamReader);
+            try {
+                XMLReaderWithoutNamespace xr = new XMLReaderWithoutNamespace(xsr);
+                JAXBElement<T> jaxbElement = jaxbUnmarshaller.unmarshal(xr, classz);
+                entry.returnUnmarshaller(jaxbUnmarshaller);
+                return jaxbElement.getValue();
+            } finally {
+                xsr.close();
+            }
         } catch (Exception e) {
             throw new RuntimeException("Failed to unmarshal stream to " + classz.getCanonicalName() + " instance", e);
         }
@@ -79,4 +106,85 @@ public class JAXBUtility {
         InputStream is = new ByteArrayInputStream(xmlStr.getBytes(StandardCharsets.UTF_8));
         return unMarshal(is, classz);
     }
+
+    /**
+     * A JAXB context together with pools of idle marshallers and unmarshallers created from it.
+     * Marshallers and unmarshallers are not thread-safe, so each one is used by a single caller at a time
+     * and only returned to the pool once that caller has finished with it successfully.
+     */
+    private static class ContextEntry {
+        private final JAXBContext context;
+        private final QName typeName;
+        private final BlockingQueue<Marshaller> marshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+        private final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        private ContextEntry(JAXBContext context, QName typeName) {
+            this.context = context;
+            this.typeName = typeName;
+        }
+
+        private static ContextEntry create(Class<?> objectClass) {
+            try {
+                QName typeName = null;
+
+                if (objectClass.getAnnotation(XmlRootElement.class) == null) {
+                    XmlType xmlTypeAnnotation = objectClass.getAnnotation(XmlType.class);
+
+                    if (xmlTypeAnnotation != null) {
+                        typeName = new QName("", xmlTypeAnnotation.name());
+                    }
+                }
+
+                return new ContextEntry(JAXBContext.newInstance(objectClass), typeName);
+            } catch (JAXBException e) {
+                throw new ContextCreationException(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object wrap(Object obj) {
+            if (typeName == null) {
+                return obj;
+            }
+
+            return new JAXBElement<>(typeName, (Class<Object>) obj.getClass(), null, obj);
+        }
+
+        private Marshaller borrowMarshaller() throws JAXBException {
+            Marshaller marshaller = marshallers.poll();
+
+            if (marshaller == null) {
+                marshaller = context.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
+                marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+                marshaller.setProperty(Marshaller.JAXB_ENCODING, StandardCharsets.UTF_8.name());
+            }
+
+            return marshaller;
+        }
+
+        private void returnMarshaller(Marshaller marshaller) {
+            marshallers.offer(marshaller);
+        }
+
+        private Unmarshaller borrowUnmarshaller() throws JAXBException {
+            Unmarshaller unmarshaller = unmarshallers.poll();
+            return unmarshaller != null ? unmarshaller : context.createUnmarshaller();
+        }
+
+        private void returnUnmarshaller(Unmarshaller unmarshaller) {
+            unmarshallers.offer(unmarshaller);
+        }
+    }
+
+    private static class ContextCreationException extends RuntimeException {
+        private ContextCreationException(JAXBException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized JAXBException getCause() {
+            return (JAXBException) super.getCause();
+        }
+    }
 }
\ No newline at end of file
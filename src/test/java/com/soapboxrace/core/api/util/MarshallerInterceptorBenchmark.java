@@ -0,0 +1,91 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.api.util;
+
+import com.soapboxrace.jaxb.http.ArrayOfProductTrans;
+import com.soapboxrace.jaxb.util.JAXBUtility;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Compares heap churn and latency of writing a large catalog response three ways: marshalling to a String and
+ * encoding it, marshalling into a fresh buffer per response, and {@link MarshallerInterceptor} with its reused
+ * buffer. Allocation is read from the HotSpot per-thread allocation counter.
+ * <p>
+ * Not part of the test suite; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.soapboxrace.core.api.util.MarshallerInterceptorBenchmark}.
+ */
+public class MarshallerInterceptorBenchmark {
+
+    private static final int PRODUCTS = 300;
+
+    private static final int WARMUP_RESPONSES = 2000;
+
+    private static final int MEASURED_RESPONSES = 10000;
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        ArrayOfProductTrans catalog = MarshallerInterceptorTest.createCatalog(PRODUCTS);
+        MarshallerInterceptor marshallerInterceptor = new MarshallerInterceptor();
+
+        System.out.println("Catalog of " + PRODUCTS + " products, " + JAXBUtility.marshal(catalog).length()
+                + " chars");
+
+        measure("string", () -> DISCARD.write(JAXBUtility.marshal(catalog).getBytes()));
+        measure("fresh buffer", () -> {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+            JAXBUtility.marshal(catalog, buffer);
+            buffer.writeTo(DISCARD);
+        });
+        measure("reused buffer", () -> marshallerInterceptor.writeTo(catalog, catalog.getClass(),
+                catalog.getClass(), null, MediaType.APPLICATION_XML_TYPE, null, DISCARD));
+    }
+
+    private static void measure(String name, Strategy strategy) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long[] nanos = new long[MEASURED_RESPONSES];
+
+        for (int i = 0; i < WARMUP_RESPONSES; i++) {
+            strategy.write();
+        }
+
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        for (int i = 0; i < MEASURED_RESPONSES; i++) {
+            long start = System.nanoTime();
+            strategy.write();
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        Arrays.sort(nanos);
+
+        System.out.println(String.format("%-14s %8d bytes/response, p50 %7.1f us, p99 %7.1f us", name,
+                allocated / MEASURED_RESPONSES, nanos[MEASURED_RESPONSES / 2] / 1000d,
+                nanos[MEASURED_RESPONSES * 99 / 100] / 1000d));
+    }
+
+    private interface Strategy {
+        void write() throws Exception;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.api.util;
+
+import com.soapboxrace.jaxb.http.ArrayOfProductTrans;
+import com.soapboxrace.jaxb.http.ProductTrans;
+import com.soapboxrace.jaxb.util.JAXBUtility;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that responses written through the reused buffer are byte for byte the documents
+ * {@link JAXBUtility#marshal(Object)} builds, and that the buffer is only kept while it is small.
+ */
+public class MarshallerInterceptorTest {
+
+    private final MarshallerInterceptor marshallerInterceptor = new MarshallerInterceptor();
+
+    @Test
+    public void writesSameDocumentAsMarshal() {
+        ArrayOfProductTrans catalog = createCatalog(50);
+
+        assertEquals(JAXBUtility.marshal(catalog), write(catalog));
+    }
+
+    @Test
+    public void laterResponseDoesNotContainEarlierOne() {
+        ArrayOfProductTrans largeCatalog = createCatalog(50);
+        ArrayOfProductTrans smallCatalog = createCatalog(1);
+
+        write(largeCatalog);
+
+        assertEquals(JAXBUtility.marshal(smallCatalog), write(smallCatalog));
+    }
+
+    @Test
+    public void keepsBufferUntilItGrowsTooLarge() {
+        write(createCatalog(1));
+        MarshallerInterceptor.ResponseBuffer buffer = MarshallerInterceptor.buffers.get();
+
+        write(createCatalog(10));
+        assertSame(buffer, MarshallerInterceptor.buffers.get());
+
+        String document = write(createCatalog(2000));
+        assertTrue(document.length() > MarshallerInterceptor.MAX_RETAINED_BUFFER_SIZE);
+        assertNotSame(buffer, MarshallerInterceptor.buffers.get());
+    }
+
+    @Test
+    public void failedMarshalWritesNothing() {
+        ByteArrayOutputStream entityStream = new ByteArrayOutputStream();
+
+        try {
+            marshallerInterceptor.writeTo(new NotXml(), NotXml.class, NotXml.class, null,
+                    MediaType.APPLICATION_XML_TYPE, null, entityStream);
+            fail("NotXml has no XML mapping");
+        } catch (WebApplicationException e) {
+            assertEquals(0, entityStream.size());
+        }
+    }
+
+    private String write(Object object) {
+        ByteArrayOutputStream entityStream = new ByteArrayOutputStream();
+        marshallerInterceptor.writeTo(object, object.getClass(), object.getClass(), null,
+                MediaType.APPLICATION_XML_TYPE, null, entityStream);
+        return new String(entityStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static ArrayOfProductTrans createCatalog(int size) {
+        ArrayOfProductTrans catalog = new ArrayOfProductTrans();
+
+        for (int i = 0; i < size; i++) {
+            ProductTrans productTrans = new ProductTrans();
+            productTrans.setProductId("DL-" + i);
+            productTrans.setProductTitle("Product " + i);
+            productTrans.setDescription("Pi\u00e8ce d\u00e9tach\u00e9e " + i);
+            productTrans.setLongDescription("A product with a longer description, number " + i);
+            productTrans.setCategoryId("NFSW_NA_EP_PERFORMANCEPARTS");
+            productTrans.setCurrency("_NS");
+            productTrans.setIcon("product_icon_" + i);
+            productTrans.setProductType("PERFORMANCEPART");
+            productTrans.setHash(i * 31);
+            productTrans.setLevel(i % 60);
+            productTrans.setPrice(1000.0 + i);
+            productTrans.setPriority(i);
+            catalog.getProductTrans().add(productTrans);
+        }
+
+        return catalog;
+    }
+
+    public static class NotXml {
+        public int value;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,220 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.api.util;
+
+import com.soapboxrace.core.bo.HardwareInfoBO;
+import com.soapboxrace.core.bo.ParameterBO;
+import com.soapboxrace.core.bo.TokenSessionBO;
+import com.soapboxrace.core.bo.TokenSessionStoreBO;
+import com.soapboxrace.core.bo.util.LocalTokenSessionStore;
+import com.soapboxrace.core.bo.util.TokenSession;
+import com.soapboxrace.core.dao.TokenSessionDAO;
+import com.soapboxrace.core.engine.EngineException;
+import com.soapboxrace.core.jpa.TokenSessionEntity;
+import com.soapboxrace.core.jpa.UserEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs a secured request the way {@code /powerups/activated} sees it (authentication filter, hardware ban filter,
+ * then the session reads of the resource) and counts how often the security token is looked up. Also checks that
+ * a change the request makes to its session keeps what a timer changed in the meantime, and does not bring back a
+ * session that was removed in the meantime.
+ */
+public class SessionContextTest {
+
+    private static final String SECURITY_TOKEN = "token";
+
+    private static final long USER_ID = 1L;
+
+    private final AtomicInteger storeLookups = new AtomicInteger();
+
+    private final AtomicInteger databaseLookups = new AtomicInteger();
+
+    private final AtomicBoolean aborted = new AtomicBoolean();
+
+    private LocalTokenSessionStore store;
+
+    private TokenSessionEntity tokenSessionEntity;
+
+    private SessionContext sessionContext;
+
+    private TokenSessionBO tokenSessionBO;
+
+    private AuthenticationFilter authenticationFilter;
+
+    private HwBanFilter hwBanFilter;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new LocalTokenSessionStore() {
+            @Override
+            public TokenSession get(String securityToken) {
+                storeLookups.incrementAndGet();
+                return super.get(securityToken);
+            }
+        };
+
+        TokenSessionDAO tokenSessionDAO = new TokenSessionDAO() {
+            @Override
+            public TokenSessionEntity findById(String securityToken) {
+                databaseLookups.incrementAndGet();
+                return SECURITY_TOKEN.equals(securityToken) ? tokenSessionEntity : null;
+            }
+        };
+
+        TokenSessionStoreBO tokenSessionStoreBO = new TokenSessionStoreBO();
+        inject(tokenSessionStoreBO, "store", store);
+        inject(tokenSessionStoreBO, "mirrorEnabled", true);
+
+        sessionContext = new SessionContext();
+
+        tokenSessionBO = new TokenSessionBO();
+        inject(tokenSessionBO, "tokenDAO", tokenSessionDAO);
+        inject(tokenSessionBO, "parameterBO", new ParameterBO());
+        inject(tokenSessionBO, "tokenSessionStoreBO", tokenSessionStoreBO);
+        inject(tokenSessionBO, "sessionContext", sessionContext);
+
+        authenticationFilter = new AuthenticationFilter();
+        inject(authenticationFilter, "tokenSessionBO", tokenSessionBO);
+        inject(authenticationFilter, "sessionContext", sessionContext);
+
+        hwBanFilter = new HwBanFilter();
+        inject(hwBanFilter, "hardwareInfoBO", new HardwareInfoBO() {
+            @Override
+            public boolean isHardwareHashBanned(String hardwareHash) {
+                return false;
+            }
+        });
+        inject(hwBanFilter, "tokenBO", tokenSessionBO);
+        inject(hwBanFilter, "sessionContext", sessionContext);
+    }
+
+    @Test
+    public void storedSessionIsLookedUpOnce() {
+        store.create(createTokenSession());
+
+        runPowerupRequest();
+
+        assertFalse(aborted.get());
+        assertEquals(1, storeLookups.get());
+        assertEquals(0, databaseLookups.get());
+    }
+
+    @Test
+    public void mirroredSessionCostsOneDatabaseLookup() {
+        UserEntity userEntity = new UserEntity();
+        userEntity.setId(USER_ID);
+        userEntity.setGameHardwareHash("hash");
+
+        tokenSessionEntity = new TokenSessionEntity();
+        tokenSessionEntity.setSecurityToken(SECURITY_TOKEN);
+        tokenSessionEntity.setUserEntity(userEntity);
+        tokenSessionEntity.setExpirationDate(new Date(System.currentTimeMillis() + 60000));
+        tokenSessionEntity.setActivePersonaId(100L);
+        tokenSessionEntity.setEventSessionId(7L);
+
+        runPowerupRequest();
+
+        assertFalse(aborted.get());
+        assertEquals(1, storeLookups.get());
+        assertEquals(1, databaseLookups.get());
+    }
+
+    @Test
+    public void requestChangeKeepsTicketSetDuringRequest() {
+        store.create(createTokenSession());
+        runPowerupRequest();
+
+        // the lobby launch timer hands out relay tickets while the request is still running
+        tokenSessionBO.updateRelayCryptoTickets(Collections.singletonMap(100L, "ticket"));
+        tokenSessionBO.setEventSessionId(SECURITY_TOKEN, 8L);
+
+        TokenSession tokenSession = store.get(SECURITY_TOKEN);
+        assertEquals("ticket", tokenSession.getRelayCryptoTicket());
+        assertEquals(Long.valueOf(8L), tokenSession.getEventSessionId());
+        assertEquals("ticket", tokenSessionBO.getActiveRelayCryptoTicket(SECURITY_TOKEN));
+        assertEquals(Long.valueOf(8L), sessionContext.getEventSessionId());
+    }
+
+    @Test
+    public void changeAfterRemovalDoesNotRestoreSession() {
+        store.create(createTokenSession());
+        runPowerupRequest();
+
+        // the user logs in again elsewhere while this request is still running
+        store.removeByUserId(USER_ID);
+
+        try {
+            tokenSessionBO.setEventSessionId(SECURITY_TOKEN, 8L);
+            fail("changed a removed session");
+        } catch (EngineException e) {
+            assertNull(store.get(SECURITY_TOKEN));
+            assertNull(store.findTokenByPersonaId(100L));
+        }
+    }
+
+    private void runPowerupRequest() {
+        ContainerRequestContext requestContext = createRequestContext();
+
+        authenticationFilter.filter(requestContext);
+        hwBanFilter.filter(requestContext);
+
+        assertEquals(Long.valueOf(100L), sessionContext.getActivePersonaId());
+        assertEquals(Long.valueOf(100L), tokenSessionBO.getActivePersonaId(SECURITY_TOKEN));
+        assertEquals(Long.valueOf(7L), tokenSessionBO.getEventSessionId(SECURITY_TOKEN));
+        assertFalse(tokenSessionBO.isAdmin(SECURITY_TOKEN));
+    }
+
+    private ContainerRequestContext createRequestContext() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("userId", Long.toString(USER_ID));
+        headers.put("securityToken", SECURITY_TOKEN);
+
+        return (ContainerRequestContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ContainerRequestContext.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getHeaderString":
+                            return headers.get((String) args[0]);
+                        case "abortWith":
+                            aborted.set(true);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static TokenSession createTokenSession() {
+        TokenSession tokenSession = new TokenSession();
+        tokenSession.setSecurityToken(SECURITY_TOKEN);
+        tokenSession.setUserId(USER_ID);
+        tokenSession.setExpirationDate(System.currentTimeMillis() + 60000);
+        tokenSession.setActivePersonaId(100L);
+        tokenSession.setEventSessionId(7L);
+        tokenSession.setGameHardwareHash("hash");
+        return tokenSession;
+    }
+
+    private static void inject(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,242 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.soapboxrace.core.bo.util.LocalMatchmakingEngine;
+import com.soapboxrace.core.bo.util.LocalTokenSessionStore;
+import com.soapboxrace.core.bo.util.MatchmakingEngine;
+import com.soapboxrace.core.bo.util.TokenSession;
+import com.soapboxrace.core.bo.util.TokenSessionStore;
+import com.soapboxrace.core.dao.LobbyDAO;
+import com.soapboxrace.core.dao.LobbyEntrantDAO;
+import com.soapboxrace.core.dao.ParameterDAO;
+import com.soapboxrace.core.dao.TokenSessionDAO;
+import com.soapboxrace.core.jpa.ParameterEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link LobbyReaperBO} on stub DAOs and checks that it deletes in bounded batches, counts what it removed and
+ * only drops queued personas that have no session left.
+ */
+public class LobbyReaperBOTest {
+
+    private final Map<String, String> parameters = new HashMap<>();
+
+    private final List<Long> expiredLobbyIds = new ArrayList<>();
+
+    private final List<LocalDateTime> cutoffs = new ArrayList<>();
+
+    private final List<Long> mirroredPersonaIds = new ArrayList<>();
+
+    private final TokenSessionStore store = new LocalTokenSessionStore();
+
+    private final MatchmakingEngine engine = new LocalMatchmakingEngine(60);
+
+    private int orphanEntrants;
+
+    private int findExpiredCalls;
+
+    private int deleteOrphansCalls;
+
+    private boolean mirrorEnabled;
+
+    @Before
+    public void setUp() {
+        parameters.put("LOBBY_REAP_BATCH_SIZE", "3");
+        parameters.put("LOBBY_REAP_MAX_BATCHES", "2");
+        parameters.put("LOBBY_RETENTION_MINUTES", "30");
+    }
+
+    @Test
+    public void deletesAtMostMaxBatchesPerRun() throws Exception {
+        addExpiredLobbies(10);
+        orphanEntrants = 8;
+        LobbyReaperBO lobbyReaperBO = createReaper();
+
+        lobbyReaperBO.reap();
+
+        assertEquals(2, findExpiredCalls);
+        assertEquals(2, deleteOrphansCalls);
+        assertEquals(4, expiredLobbyIds.size());
+        assertEquals(2, orphanEntrants);
+        assertEquals(6, lobbyReaperBO.getLastLobbies());
+        assertEquals(6 * 2 + 6, lobbyReaperBO.getLastEntrants());
+        assertTrue(cutoffs.get(0).isBefore(LocalDateTime.now().minusMinutes(29)));
+        assertTrue(cutoffs.get(0).isAfter(LocalDateTime.now().minusMinutes(31)));
+
+        lobbyReaperBO.reap();
+
+        assertTrue(expiredLobbyIds.isEmpty());
+        assertEquals(0, orphanEntrants);
+        assertEquals(2, lobbyReaperBO.getReapCount());
+        assertEquals(4, lobbyReaperBO.getLastLobbies());
+        assertEquals(10, lobbyReaperBO.getTotalLobbies());
+        assertEquals(10 * 2 + 8, lobbyReaperBO.getTotalEntrants());
+    }
+
+    @Test
+    public void stopsAtFirstShortBatch() throws Exception {
+        addExpiredLobbies(4);
+        LobbyReaperBO lobbyReaperBO = createReaper();
+
+        lobbyReaperBO.reap();
+
+        assertEquals(2, findExpiredCalls);
+        assertEquals(1, deleteOrphansCalls);
+        assertTrue(expiredLobbyIds.isEmpty());
+        assertEquals(4, lobbyReaperBO.getLastLobbies());
+        assertEquals(8, lobbyReaperBO.getLastEntrants());
+    }
+
+    @Test
+    public void dropsQueuedPersonasWithoutSession() throws Exception {
+        engine.addPlayer(1, 1, 0);
+        engine.addPlayer(2, 1, 0);
+        engine.addPlayer(3, 1, 0);
+        createSession(2L);
+        LobbyReaperBO lobbyReaperBO = createReaper();
+
+        lobbyReaperBO.reap();
+
+        assertEquals(Collections.singletonList(2L), engine.getQueuedPlayers());
+        assertEquals(2, lobbyReaperBO.getLastQueueEntries());
+        assertEquals(2, lobbyReaperBO.getTotalQueueEntries());
+    }
+
+    @Test
+    public void keepsQueuedPersonasActiveInMirror() throws Exception {
+        engine.addPlayer(1, 1, 0);
+        engine.addPlayer(3, 1, 0);
+        mirrorEnabled = true;
+        mirroredPersonaIds.add(3L);
+        LobbyReaperBO lobbyReaperBO = createReaper();
+
+        lobbyReaperBO.reap();
+
+        assertEquals(Collections.singletonList(3L), engine.getQueuedPlayers());
+        assertEquals(1, lobbyReaperBO.getLastQueueEntries());
+    }
+
+    @Test
+    public void doesNothingWhenDisabled() throws Exception {
+        parameters.put("ENABLE_LOBBY_REAPER", "false");
+        addExpiredLobbies(2);
+        engine.addPlayer(1, 1, 0);
+        LobbyReaperBO lobbyReaperBO = createReaper();
+
+        lobbyReaperBO.reap();
+
+        assertEquals(0, findExpiredCalls);
+        assertEquals(2, expiredLobbyIds.size());
+        assertEquals(Collections.singletonList(1L), engine.getQueuedPlayers());
+        assertEquals(0, lobbyReaperBO.getReapCount());
+    }
+
+    private LobbyReaperBO createReaper() throws ReflectiveOperationException {
+        ParameterBO parameterBO = new ParameterBO();
+        inject(parameterBO, "parameterDao", new ParameterDAO() {
+            @Override
+            public List<ParameterEntity> findAll() {
+                List<ParameterEntity> parameterEntities = new ArrayList<>();
+
+                for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                    ParameterEntity parameterEntity = new ParameterEntity();
+                    parameterEntity.setName(parameter.getKey());
+                    parameterEntity.setValue(parameter.getValue());
+                    parameterEntities.add(parameterEntity);
+                }
+
+                return parameterEntities;
+            }
+        });
+        parameterBO.loadParameters();
+
+        MatchmakingBO matchmakingBO = new MatchmakingBO();
+        inject(matchmakingBO, "engine", engine);
+
+        LobbyReaperBO lobbyReaperBO = new LobbyReaperBO();
+        inject(lobbyReaperBO, "parameterBO", parameterBO);
+        inject(lobbyReaperBO, "matchmakingBO", matchmakingBO);
+        inject(lobbyReaperBO, "lobbyDAO", new LobbyDAO() {
+            @Override
+            public List<Long> findExpiredIds(LocalDateTime cutoff, int limit) {
+                findExpiredCalls++;
+                cutoffs.add(cutoff);
+                return new ArrayList<>(expiredLobbyIds.subList(0, Math.min(limit, expiredLobbyIds.size())));
+            }
+
+            @Override
+            public int deleteByIds(List<Long> ids) {
+                expiredLobbyIds.removeAll(ids);
+                return ids.size();
+            }
+        });
+        inject(lobbyReaperBO, "lobbyEntrantDAO", new LobbyEntrantDAO() {
+            @Override
+            public int deleteByLobbyIds(List<Long> lobbyIds) {
+                // two entrants per lobby
+                return lobbyIds.size() * 2;
+            }
+
+            @Override
+            public int deleteOrphans(int limit) {
+                deleteOrphansCalls++;
+                int deleted = Math.min(limit, orphanEntrants);
+                orphanEntrants -= deleted;
+                return deleted;
+            }
+        });
+        inject(lobbyReaperBO, "tokenSessionDAO", new TokenSessionDAO() {
+            @Override
+            public List<Long> findActivePersonaIds(Collection<Long> personaIds, Date now) {
+                List<Long> activePersonaIds = new ArrayList<>(personaIds);
+                activePersonaIds.retainAll(mirroredPersonaIds);
+                return activePersonaIds;
+            }
+        });
+        inject(lobbyReaperBO, "tokenSessionStoreBO", new TokenSessionStoreBO() {
+            @Override
+            public TokenSessionStore getStore() {
+                return store;
+            }
+
+            @Override
+            public boolean isMirrorEnabled() {
+                return mirrorEnabled;
+            }
+        });
+        return lobbyReaperBO;
+    }
+
+    private void addExpiredLobbies(int count) {
+        for (long id = 1; id <= count; id++) {
+            expiredLobbyIds.add(id);
+        }
+    }
+
+    private void createSession(Long personaId) {
+        TokenSession tokenSession = new TokenSession();
+        tokenSession.setSecurityToken("token-" + personaId);
+        tokenSession.setUserId(personaId);
+        tokenSession.setActivePersonaId(personaId);
+        tokenSession.setExpirationDate(System.currentTimeMillis() + 60000);
+        store.create(tokenSession);
+    }
+
+    private static void inject(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
\ No newline at end of file
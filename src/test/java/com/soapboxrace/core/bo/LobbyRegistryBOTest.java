@@ -0,0 +1,289 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.soapboxrace.core.bo.util.LobbyState;
+import com.soapboxrace.core.bo.util.MatchmakingEngine;
+import com.soapboxrace.core.dao.LobbyDAO;
+import com.soapboxrace.core.dao.LobbyEntrantDAO;
+import com.soapboxrace.core.dao.ParameterDAO;
+import com.soapboxrace.core.jpa.*;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the lobby searches and the entrant writes of {@link LobbyRegistryBO}, both with lobbies kept in memory and
+ * with lobbies kept in LOBBY and LOBBY_ENTRANT for several nodes.
+ */
+public class LobbyRegistryBOTest {
+
+    private static final int CAR_CLASS = 1;
+
+    private final Map<String, String> parameters = new HashMap<>();
+
+    private final Map<Long, LobbyEntity> lobbyEntities = new HashMap<>();
+
+    private final List<Long> lockedLobbyIds = new ArrayList<>();
+
+    private final List<String> entrantWrites = new ArrayList<>();
+
+    @Test
+    public void findsOpenLobbiesOldestFirst() throws Exception {
+        LobbyRegistryBO lobbyRegistryBO = createRegistry();
+        LobbyState first = lobbyRegistryBO.register(createLobbyEntity(1L, 10, CAR_CLASS, false));
+        LobbyState open = lobbyRegistryBO.register(createLobbyEntity(2L, 11, MatchmakingEngine.OPEN_CAR_CLASS, false));
+        lobbyRegistryBO.register(createLobbyEntity(3L, 10, CAR_CLASS, true));
+        lobbyRegistryBO.register(createLobbyEntity(4L, 12, CAR_CLASS + 1, false));
+
+        assertEquals(Arrays.asList(first.getId(), open.getId()), getIds(lobbyRegistryBO.findAllOpen(CAR_CLASS)));
+        assertEquals(Collections.singletonList(open.getId()),
+                getIds(lobbyRegistryBO.findAllOpen(MatchmakingEngine.OPEN_CAR_CLASS)));
+        assertEquals(Collections.singletonList(first.getId()), getIds(lobbyRegistryBO.findByEventStarted(10)));
+        assertSame(first, lobbyRegistryBO.get(1L));
+        assertEquals(4, lobbyRegistryBO.getLobbyCount());
+
+        lobbyRegistryBO.remove(1L);
+
+        assertNull(lobbyRegistryBO.get(1L));
+        assertTrue(lobbyRegistryBO.findByEventStarted(10).isEmpty());
+        assertTrue(lockedLobbyIds.isEmpty());
+    }
+
+    @Test
+    public void fullLobbiesAreNotFound() throws Exception {
+        LobbyRegistryBO lobbyRegistryBO = createRegistry();
+        LobbyState lobbyState = lobbyRegistryBO.register(createLobbyEntity(1L, 10, CAR_CLASS, false));
+
+        assertNotNull(lobbyRegistryBO.addEntrant(lobbyState, createPersona(100L)));
+        assertNotNull(lobbyRegistryBO.addEntrant(lobbyState, createPersona(101L)));
+        assertNull(lobbyRegistryBO.addEntrant(lobbyState, createPersona(102L)));
+
+        assertTrue(lobbyRegistryBO.findAllOpen(CAR_CLASS).isEmpty());
+    }
+
+    @Test
+    public void entrantChangesAreWrittenInBatches() throws Exception {
+        LobbyRegistryBO lobbyRegistryBO = createRegistry();
+        LobbyState lobbyState = lobbyRegistryBO.register(createLobbyEntity(1L, 10, CAR_CLASS, false));
+
+        lobbyRegistryBO.addEntrant(lobbyState, createPersona(100L));
+        lobbyRegistryBO.addEntrant(lobbyState, createPersona(101L));
+        lobbyRegistryBO.removeEntrant(lobbyState, 101L);
+
+        assertTrue(entrantWrites.isEmpty());
+
+        lobbyRegistryBO.flushEntrants();
+
+        assertEquals(Collections.singletonList("+1:100@0"), entrantWrites);
+
+        entrantWrites.clear();
+        lobbyRegistryBO.removeEntrant(lobbyState, 100L);
+        lobbyRegistryBO.addEntrant(lobbyState, createPersona(100L));
+        lobbyRegistryBO.flushEntrants();
+
+        assertEquals(Arrays.asList("-1:100", "+1:100@0"), entrantWrites);
+    }
+
+    @Test
+    public void entrantChangesAreDroppedWhenPersistenceIsOff() throws Exception {
+        parameters.put("ENABLE_LOBBY_ENTRANT_PERSISTENCE", "false");
+        LobbyRegistryBO lobbyRegistryBO = createRegistry();
+        LobbyState lobbyState = lobbyRegistryBO.register(createLobbyEntity(1L, 10, CAR_CLASS, false));
+
+        lobbyRegistryBO.addEntrant(lobbyState, createPersona(100L));
+        lobbyRegistryBO.flushEntrants();
+
+        assertTrue(entrantWrites.isEmpty());
+        assertTrue(lobbyState.hasEntrant(100L));
+    }
+
+    @Test
+    public void purgeDropsLobbiesPastTheirGracePeriod() throws Exception {
+        parameters.put("LOBBY_REGISTRY_GRACE_SECONDS", "60");
+        LobbyRegistryBO lobbyRegistryBO = createRegistry();
+        lobbyRegistryBO.register(createLobbyEntity(1L, 10, CAR_CLASS, false));
+
+        // registered five minutes ago with a one minute countdown, so four minutes past its deadline
+        LobbyState expired = new LobbyState(createLobbyEntity(2L, 10, CAR_CLASS, false),
+                System.currentTimeMillis() - 300000);
+        getLobbies(lobbyRegistryBO).put(expired.getId(), expired);
+
+        lobbyRegistryBO.purgeExpired();
+
+        assertNotNull(lobbyRegistryBO.get(1L));
+        assertNull(lobbyRegistryBO.get(2L));
+        assertEquals(1, lobbyRegistryBO.getLobbyCount());
+    }
+
+    @Test
+    public void sharedRegistryReadsAndWritesDatabase() throws Exception {
+        parameters.put("ENABLE_REDIS", "true");
+        LobbyRegistryBO lobbyRegistryBO = createRegistry();
+        LobbyEntity lobbyEntity = createLobbyEntity(1L, 10, CAR_CLASS, false);
+        lobbyEntity.add(createLobbyEntrant(lobbyEntity, 100L, 0));
+        lobbyEntities.put(1L, lobbyEntity);
+
+        lobbyRegistryBO.register(lobbyEntity);
+
+        assertEquals(0, lobbyRegistryBO.getLobbyCount());
+
+        LobbyState lobbyState = lobbyRegistryBO.get(1L);
+
+        assertEquals(Collections.singletonList(1L), lockedLobbyIds);
+        assertEquals(Collections.singletonList(100L), lobbyState.getEntrantPersonaIds());
+
+        assertEquals(1, lobbyRegistryBO.addEntrant(lobbyState, createPersona(101L)).getGridIndex());
+        assertEquals(Collections.singletonList("+1:101@1"), entrantWrites);
+
+        assertTrue(lobbyRegistryBO.removeEntrant(lobbyState, 100L));
+        assertEquals(Arrays.asList("+1:101@1", "-1:100"), entrantWrites);
+        assertNull(lobbyRegistryBO.get(2L));
+    }
+
+    @Test
+    public void sharedRegistrySearchesDatabase() throws Exception {
+        parameters.put("ENABLE_REDIS", "true");
+        LobbyRegistryBO lobbyRegistryBO = createRegistry();
+        lobbyEntities.put(1L, createLobbyEntity(1L, 10, CAR_CLASS, false));
+        lobbyEntities.put(2L, createLobbyEntity(2L, 10, CAR_CLASS, true));
+        lobbyEntities.get(1L).setStartedTime(LocalDateTime.now().minusSeconds(5));
+
+        assertEquals(Collections.singletonList(1L), getIds(lobbyRegistryBO.findAllOpen(CAR_CLASS)));
+        assertEquals(Collections.singletonList(1L), getIds(lobbyRegistryBO.findByEventStarted(10)));
+    }
+
+    @Test
+    public void singleNodeSettingKeepsLobbiesInMemory() throws Exception {
+        parameters.put("ENABLE_REDIS", "true");
+        parameters.put("LOBBY_REGISTRY_SINGLE_NODE", "true");
+        LobbyRegistryBO lobbyRegistryBO = createRegistry();
+
+        LobbyState lobbyState = lobbyRegistryBO.register(createLobbyEntity(1L, 10, CAR_CLASS, false));
+
+        assertSame(lobbyState, lobbyRegistryBO.get(1L));
+        assertTrue(lockedLobbyIds.isEmpty());
+    }
+
+    private LobbyRegistryBO createRegistry() throws ReflectiveOperationException {
+        ParameterBO parameterBO = new ParameterBO();
+        inject(parameterBO, "parameterDao", new ParameterDAO() {
+            @Override
+            public List<ParameterEntity> findAll() {
+                List<ParameterEntity> parameterEntities = new ArrayList<>();
+
+                for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                    ParameterEntity parameterEntity = new ParameterEntity();
+                    parameterEntity.setName(parameter.getKey());
+                    parameterEntity.setValue(parameter.getValue());
+                    parameterEntities.add(parameterEntity);
+                }
+
+                return parameterEntities;
+            }
+        });
+        parameterBO.loadParameters();
+
+        LobbyRegistryBO lobbyRegistryBO = new LobbyRegistryBO();
+        inject(lobbyRegistryBO, "parameterBO", parameterBO);
+        inject(lobbyRegistryBO, "lobbyDAO", new LobbyDAO() {
+            @Override
+            public LobbyEntity findByIdForUpdate(Long id) {
+                lockedLobbyIds.add(id);
+                return lobbyEntities.get(id);
+            }
+
+            @Override
+            public List<LobbyEntity> findAllOpen(int carClassHash) {
+                return new ArrayList<>(lobbyEntities.values());
+            }
+
+            @Override
+            public List<LobbyEntity> findByEventStarted(int eventId) {
+                return new ArrayList<>(lobbyEntities.values());
+            }
+        });
+        inject(lobbyRegistryBO, "lobbyEntrantDAO", new LobbyEntrantDAO() {
+            @Override
+            public void updateEntrants(Collection<LobbyEntrantEntity> removedEntrants,
+                                       Collection<LobbyEntrantEntity> addedEntrants) {
+                for (LobbyEntrantEntity lobbyEntrantEntity : removedEntrants) {
+                    entrantWrites.add("-" + lobbyEntrantEntity.getLobby().getId() + ":"
+                            + lobbyEntrantEntity.getPersona().getPersonaId());
+                }
+
+                for (LobbyEntrantEntity lobbyEntrantEntity : addedEntrants) {
+                    entrantWrites.add("+" + lobbyEntrantEntity.getLobby().getId() + ":"
+                            + lobbyEntrantEntity.getPersona().getPersonaId() + "@"
+                            + lobbyEntrantEntity.getGridIndex());
+                }
+            }
+        });
+        lobbyRegistryBO.init();
+        return lobbyRegistryBO;
+    }
+
+    private static LobbyEntity createLobbyEntity(Long id, int eventId, int carClassHash, boolean isPrivate) {
+        EventEntity eventEntity = new EventEntity();
+        eventEntity.setId(eventId);
+        eventEntity.setCarClassHash(carClassHash);
+        eventEntity.setMaxPlayers(2);
+        eventEntity.setLobbyCountdownTime(60000);
+
+        LobbyEntity lobbyEntity = new LobbyEntity();
+        lobbyEntity.setId(id);
+        lobbyEntity.setEvent(eventEntity);
+        lobbyEntity.setIsPrivate(isPrivate);
+        lobbyEntity.setPersonaId(100L);
+        lobbyEntity.setStartedTime(LocalDateTime.now());
+        lobbyEntity.setEntrants(new ArrayList<>());
+        return lobbyEntity;
+    }
+
+    private static LobbyEntrantEntity createLobbyEntrant(LobbyEntity lobbyEntity, Long personaId, int gridIndex) {
+        LobbyEntrantEntity lobbyEntrantEntity = new LobbyEntrantEntity();
+        lobbyEntrantEntity.setLobby(lobbyEntity);
+        lobbyEntrantEntity.setPersona(createPersona(personaId));
+        lobbyEntrantEntity.setGridIndex(gridIndex);
+        return lobbyEntrantEntity;
+    }
+
+    private static PersonaEntity createPersona(Long personaId) {
+        PersonaEntity personaEntity = new PersonaEntity();
+        personaEntity.setPersonaId(personaId);
+        personaEntity.setLevel(10);
+        return personaEntity;
+    }
+
+    private static List<Long> getIds(List<LobbyState> lobbyStates) {
+        List<Long> ids = new ArrayList<>();
+
+        for (LobbyState lobbyState : lobbyStates) {
+            ids.add(lobbyState.getId());
+        }
+
+        return ids;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Long, LobbyState> getLobbies(LobbyRegistryBO lobbyRegistryBO)
+            throws ReflectiveOperationException {
+        Field field = LobbyRegistryBO.class.getDeclaredField("lobbies");
+        field.setAccessible(true);
+        return (Map<Long, LobbyState>) field.get(lobbyRegistryBO);
+    }
+
+    private static void inject(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo;
+
+import com.soapboxrace.core.dao.ParameterDAO;
+import com.soapboxrace.core.jpa.ParameterEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link ParameterBO} answers reads from its snapshot without going back to the database, and that
+ * {@link ParameterBO#loadParameters()} swaps in a new snapshot.
+ */
+public class ParameterBOTest {
+
+    private final List<ParameterEntity> parameterEntities = new ArrayList<>();
+
+    private final AtomicInteger databaseLookups = new AtomicInteger();
+
+    private ParameterBO parameterBO;
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        setParameter("MAX_CAR_SLOTS_FREE", "100");
+        setParameter("ENABLE_REDIS", "true");
+        setParameter("XMPP_IP", "10.0.0.1");
+        setParameter("RACE_REWARD_MULTIPLIER", "1.5");
+        setParameter("BROKEN_NUMBER", "ten");
+        setParameter("EMPTY_NUMBER", "");
+
+        parameterBO = new ParameterBO();
+        Field field = ParameterBO.class.getDeclaredField("parameterDao");
+        field.setAccessible(true);
+        field.set(parameterBO, new ParameterDAO() {
+            @Override
+            public ParameterEntity findById(String name) {
+                databaseLookups.incrementAndGet();
+                throw new AssertionError("parameter " + name + " was read from the database");
+            }
+
+            @Override
+            public List<ParameterEntity> findAll() {
+                databaseLookups.incrementAndGet();
+                return new ArrayList<>(parameterEntities);
+            }
+        });
+        parameterBO.loadParameters();
+    }
+
+    @Test
+    public void readsDecodedValuesFromSnapshot() {
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(100, (int) parameterBO.getIntParam("MAX_CAR_SLOTS_FREE"));
+            assertTrue(parameterBO.getBoolParam("ENABLE_REDIS"));
+            assertEquals("10.0.0.1", parameterBO.getStrParam("XMPP_IP"));
+            assertEquals(1.5f, parameterBO.getFloatParam("RACE_REWARD_MULTIPLIER"), 0);
+        }
+
+        assertEquals(1, databaseLookups.get());
+        assertEquals(1, parameterBO.getSnapshotVersion());
+    }
+
+    @Test
+    public void missingAndEmptyValuesFallBackToDefault() {
+        assertEquals(42, (int) parameterBO.getIntParam("UNKNOWN", 42));
+        assertEquals(42, (int) parameterBO.getIntParam("EMPTY_NUMBER", 42));
+        assertEquals("default", parameterBO.getStrParam("UNKNOWN", "default"));
+        assertNull(parameterBO.getStrParam("UNKNOWN"));
+        assertFalse(parameterBO.getBoolParam("UNKNOWN"));
+    }
+
+    @Test
+    public void badNumbersStillFailOnRead() {
+        try {
+            parameterBO.getIntParam("BROKEN_NUMBER", 1);
+            fail("BROKEN_NUMBER is not a number");
+        } catch (NumberFormatException e) {
+            // expected, as before the snapshot
+        }
+
+        try {
+            parameterBO.getIntParam("UNKNOWN");
+            fail("UNKNOWN is not set");
+        } catch (RuntimeException e) {
+            assertEquals("Cannot find integer parameter: UNKNOWN", e.getMessage());
+        }
+    }
+
+    @Test
+    public void reloadSwapsSnapshot() {
+        setParameter("MAX_CAR_SLOTS_FREE", "200");
+        parameterEntities.removeIf(parameterEntity -> parameterEntity.getName().equals("XMPP_IP"));
+
+        assertEquals(100, (int) parameterBO.getIntParam("MAX_CAR_SLOTS_FREE"));
+
+        parameterBO.loadParameters();
+
+        assertEquals(200, (int) parameterBO.getIntParam("MAX_CAR_SLOTS_FREE"));
+        assertEquals("127.0.0.1", parameterBO.getStrParam("XMPP_IP", "127.0.0.1"));
+        assertEquals(2, parameterBO.getSnapshotVersion());
+        assertEquals(2, databaseLookups.get());
+    }
+
+    private void setParameter(String name, String value) {
+        parameterEntities.removeIf(parameterEntity -> parameterEntity.getName().equals(name));
+
+        ParameterEntity parameterEntity = new ParameterEntity();
+        parameterEntity.setName(name);
+        parameterEntity.setValue(value);
+        parameterEntities.add(parameterEntity);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,216 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import com.soapboxrace.core.jpa.EventEntity;
+import com.soapboxrace.core.jpa.LobbyEntity;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hammers the seats of a single lobby from a thread pool and checks that they never overfill or double-book.
+ */
+public class LobbyStateTest {
+
+    private static final int MAX_PLAYERS = 8;
+
+    private static final int THREADS = 16;
+
+    private static final int JOINS = 500;
+
+    private static final int CYCLES = 20000;
+
+    /**
+     * The lowest acceptable rate of join and leave pairs on one lobby from all threads together. A single thread
+     * manages millions per second, so this only catches a collapse, such as threads retrying without end.
+     */
+    private static final int MIN_CYCLES_PER_SECOND = 100000;
+
+    @Test
+    public void concurrentJoinsFillExactlyMaxPlayers() throws Exception {
+        LobbyState lobbyState = createLobby();
+        AtomicInteger seated = new AtomicInteger();
+
+        runConcurrently(JOINS, i -> {
+            // every persona tries to join twice, so duplicate joins race as well
+            if (lobbyState.tryAddEntrant((long) (i / 2), 10) != null) {
+                seated.incrementAndGet();
+            }
+        });
+
+        assertEquals(MAX_PLAYERS, seated.get());
+        assertSeatsConsistent(lobbyState, MAX_PLAYERS);
+    }
+
+    @Test
+    public void concurrentJoinsAndLeavesNeverOverfill() throws Exception {
+        LobbyState lobbyState = createLobby();
+        AtomicInteger overfilled = new AtomicInteger();
+
+        runConcurrently(JOINS * 4, i -> {
+            long personaId = i % (MAX_PLAYERS * 4);
+
+            if (lobbyState.tryAddEntrant(personaId, 10) != null && (i & 1) == 0) {
+                lobbyState.removeEntrant(personaId);
+            }
+
+            if (lobbyState.getEntrantCount() > MAX_PLAYERS) {
+                overfilled.incrementAndGet();
+            }
+        });
+
+        assertEquals(0, overfilled.get());
+        assertSeatsConsistent(lobbyState, lobbyState.getEntrantCount());
+    }
+
+    @Test
+    public void nobodyJoinsOrLeavesAfterClose() throws Exception {
+        LobbyState lobbyState = createLobby();
+        lobbyState.tryAddEntrant(1L, 10);
+        lobbyState.tryAddEntrant(2L, 10);
+
+        List<LobbyState.Entrant> entrants = lobbyState.close();
+        AtomicInteger changed = new AtomicInteger();
+
+        runConcurrently(JOINS, i -> {
+            if (lobbyState.tryAddEntrant((long) i + 3, 10) != null || lobbyState.removeEntrant(1L)) {
+                changed.incrementAndGet();
+            }
+        });
+
+        assertEquals(0, changed.get());
+        assertEquals(2, entrants.size());
+        assertTrue(lobbyState.isClosed());
+        assertSeatsConsistent(lobbyState, 2);
+    }
+
+    @Test
+    public void joinRateHoldsUnderContention() throws Exception {
+        LobbyState lobbyState = createLobby();
+        // warm up, so the measured run is not timing the interpreter
+        runCycles(lobbyState);
+
+        long nanos = runCycles(lobbyState);
+        double cyclesPerSecond = THREADS * CYCLES / (nanos / 1e9);
+
+        assertTrue(String.format("%.0f join/leave cycles per second", cyclesPerSecond),
+                cyclesPerSecond >= MIN_CYCLES_PER_SECOND);
+        assertSeatsConsistent(lobbyState, 0);
+    }
+
+    @Test
+    public void freedGridIndexIsReused() {
+        LobbyState lobbyState = createLobby();
+        lobbyState.tryAddEntrant(1L, 10);
+        lobbyState.tryAddEntrant(2L, 10);
+        lobbyState.tryAddEntrant(3L, 10);
+
+        assertTrue(lobbyState.removeEntrant(2L));
+        assertEquals(1, lobbyState.tryAddEntrant(4L, 10).getGridIndex());
+        assertNull(lobbyState.tryAddEntrant(4L, 10));
+    }
+
+    private static LobbyState createLobby() {
+        EventEntity eventEntity = new EventEntity();
+        eventEntity.setId(1);
+        eventEntity.setCarClassHash(607077938);
+        eventEntity.setMaxPlayers(MAX_PLAYERS);
+        eventEntity.setLobbyCountdownTime(60000);
+
+        LobbyEntity lobbyEntity = new LobbyEntity();
+        lobbyEntity.setId(1L);
+        lobbyEntity.setEvent(eventEntity);
+        lobbyEntity.setIsPrivate(false);
+        lobbyEntity.setPersonaId(1L);
+
+        return new LobbyState(lobbyEntity, System.currentTimeMillis());
+    }
+
+    private static void assertSeatsConsistent(LobbyState lobbyState, int expectedCount) {
+        List<LobbyState.Entrant> entrants = lobbyState.getEntrants();
+        Set<Long> personaIds = new HashSet<>();
+        Set<Integer> gridIndexes = new HashSet<>();
+
+        for (LobbyState.Entrant entrant : entrants) {
+            assertTrue("duplicate persona " + entrant.getPersonaId(), personaIds.add(entrant.getPersonaId()));
+            assertTrue("duplicate grid index " + entrant.getGridIndex(), gridIndexes.add(entrant.getGridIndex()));
+            assertTrue(entrant.getGridIndex() >= 0 && entrant.getGridIndex() < MAX_PLAYERS);
+        }
+
+        assertEquals(expectedCount, entrants.size());
+        assertTrue(entrants.size() <= MAX_PLAYERS);
+    }
+
+    /**
+     * Has every thread join and leave the lobby {@link #CYCLES} times with its own personas.
+     */
+    private static long runCycles(LobbyState lobbyState) throws Exception {
+        return runConcurrently(THREADS, thread -> {
+            for (int i = 0; i < CYCLES; i++) {
+                long personaId = thread * (long) CYCLES + i;
+
+                if (lobbyState.tryAddEntrant(personaId, 10) != null) {
+                    assertTrue(lobbyState.removeEntrant(personaId));
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the given number of tasks on a pool of {@link #THREADS} threads, all released at once, and rethrows the
+     * first failure of any of them.
+     *
+     * @return the time from the release of the tasks until the last one finished, in nanoseconds
+     */
+    private static long runConcurrently(int tasks, IntTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < tasks; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(index);
+                    return null;
+                }));
+            }
+
+            long startTime = System.nanoTime();
+            start.countDown();
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+
+                    throw (Exception) e.getCause();
+                }
+            }
+
+            return System.nanoTime() - startTime;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface IntTask {
+        void run(int index);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the queue order, car class and level bucket matching, ignored events and their expiry of
+ * {@link LocalMatchmakingEngine}, on a clock the test moves by hand.
+ */
+public class LocalMatchmakingEngineTest {
+
+    private static final int CAR_CLASS = 1;
+
+    private static final int OTHER_CAR_CLASS = 2;
+
+    private static final long EVENT_ID = 10;
+
+    private static final long WIDEN_INTERVAL = 15000;
+
+    private final long[] now = {1000000};
+
+    private final LocalMatchmakingEngine engine = new LocalMatchmakingEngine(60, () -> now[0]);
+
+    @Test
+    public void picksInQueueOrder() {
+        engine.addPlayer(3, CAR_CLASS, 0);
+        engine.addPlayer(1, CAR_CLASS, 0);
+        engine.addPlayer(2, CAR_CLASS, 0);
+
+        assertEquals(Arrays.asList(3L, 1L), engine.pickPlayers(search(CAR_CLASS, 0, 2, 0)));
+    }
+
+    @Test
+    public void pickedPlayersMoveToTheBack() {
+        engine.addPlayer(1, CAR_CLASS, 0);
+        engine.addPlayer(2, CAR_CLASS, 0);
+        engine.addPlayer(3, CAR_CLASS, 0);
+
+        assertEquals(Collections.singletonList(1L), engine.pickPlayers(search(CAR_CLASS, 0, 1, 0)));
+        assertEquals(Arrays.asList(2L, 3L, 1L), engine.pickPlayers(search(CAR_CLASS, 0, 3, 0)));
+    }
+
+    @Test
+    public void queueingAgainKeepsPlace() {
+        engine.addPlayer(1, CAR_CLASS, 0);
+        engine.addPlayer(2, CAR_CLASS, 0);
+        engine.addPlayer(1, CAR_CLASS, 0);
+
+        assertEquals(Arrays.asList(1L, 2L), engine.pickPlayers(search(CAR_CLASS, 0, 2, 0)));
+    }
+
+    @Test
+    public void matchesCarClassOrAnyClassForOpenEvents() {
+        engine.addPlayer(1, OTHER_CAR_CLASS, 0);
+        engine.addPlayer(2, CAR_CLASS, 0);
+
+        assertEquals(Collections.singletonList(2L), engine.pickPlayers(search(CAR_CLASS, 0, 8, 0)));
+        assertEquals(Arrays.asList(1L, 2L),
+                engine.pickPlayers(search(MatchmakingEngine.OPEN_CAR_CLASS, 0, 8, 0)));
+    }
+
+    @Test
+    public void removedPlayersAreNotPicked() {
+        engine.addPlayer(1, CAR_CLASS, 0);
+        engine.addPlayer(2, CAR_CLASS, 0);
+        engine.removePlayer(1);
+
+        assertEquals(Collections.singletonList(2L), engine.pickPlayers(search(CAR_CLASS, 0, 8, 0)));
+        assertEquals(Collections.singletonList(2L), engine.getQueuedPlayers());
+    }
+
+    @Test
+    public void searchWidensWithWaitTime() {
+        engine.addPlayer(1, CAR_CLASS, 2);
+        now[0] += WIDEN_INTERVAL - 1;
+
+        assertTrue(engine.pickPlayers(search(CAR_CLASS, 0, 8, 6)).isEmpty());
+
+        now[0] += 1;
+        assertTrue(engine.pickPlayers(search(CAR_CLASS, 0, 8, 6)).isEmpty());
+
+        now[0] += WIDEN_INTERVAL;
+        assertEquals(Collections.singletonList(1L), engine.pickPlayers(search(CAR_CLASS, 0, 8, 6)));
+        assertTrue(engine.pickPlayers(search(CAR_CLASS, 0, 8, 1)).isEmpty());
+    }
+
+    @Test
+    public void ignoredEventsAreSkipped() {
+        engine.addPlayer(1, CAR_CLASS, 0);
+        engine.addPlayer(2, CAR_CLASS, 0);
+        engine.ignoreEvent(1, EVENT_ID);
+
+        assertTrue(engine.isEventIgnored(1, EVENT_ID));
+        assertFalse(engine.isEventIgnored(1, EVENT_ID + 1));
+        assertEquals(Collections.singletonList(2L), engine.pickPlayers(search(CAR_CLASS, 0, 8, 0)));
+
+        engine.resetIgnoredEvents(1);
+
+        assertFalse(engine.isEventIgnored(1, EVENT_ID));
+    }
+
+    @Test
+    public void ignoredEventsExpireAfterLastChange() {
+        engine.ignoreEvent(1, EVENT_ID);
+        now[0] += 59 * 60000;
+
+        assertTrue(engine.isEventIgnored(1, EVENT_ID));
+
+        engine.ignoreEvent(1, EVENT_ID + 1);
+        now[0] += 59 * 60000;
+
+        assertTrue(engine.isEventIgnored(1, EVENT_ID));
+
+        now[0] += 60000;
+
+        assertFalse(engine.isEventIgnored(1, EVENT_ID));
+        assertFalse(engine.isEventIgnored(1, EVENT_ID + 1));
+    }
+
+    private static MatchmakingSearch search(int carClass, int levelBucket, int count, int maxWidenBuckets) {
+        return new MatchmakingSearch(carClass, levelBucket, EVENT_ID, count, 50, WIDEN_INTERVAL, maxWidenBuckets);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures {@link LocalMatchmakingEngine#pickPlayers(MatchmakingSearch)} with 100 up to 100,000 queued players,
+ * to show that the cost of filling a lobby is bounded by the scan limit and the number of widened buckets: it grows
+ * until each queue a search looks at holds more than MATCHMAKING_PICK_SCAN_LIMIT players, and stays flat from
+ * there on, however long the queue gets. Players are spread over five car classes and all level buckets and have
+ * waited long enough for the search to be fully widened, which is the worst case. Picked players stay queued, so the
+ * queue size is the same for every pick.
+ * <p>
+ * Not part of the test suite; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.soapboxrace.core.bo.util.MatchmakingPickBenchmark}.
+ */
+public class MatchmakingPickBenchmark {
+
+    private static final int[] QUEUE_SIZES = {100, 1000, 10000, 100000};
+
+    private static final int CAR_CLASSES = 5;
+
+    private static final int LEVEL_BUCKETS = 7;
+
+    private static final int WARMUP_PICKS = 20000;
+
+    private static final int MEASURED_PICKS = 100000;
+
+    public static void main(String[] args) {
+        for (int queueSize : QUEUE_SIZES) {
+            measure(queueSize, 1);
+            measure(queueSize, MatchmakingEngine.OPEN_CAR_CLASS);
+        }
+    }
+
+    private static void measure(int queueSize, int carClass) {
+        long[] now = {0};
+        LocalMatchmakingEngine engine = new LocalMatchmakingEngine(60, () -> now[0]);
+        Random random = new Random(42);
+
+        for (long personaId = 1; personaId <= queueSize; personaId++) {
+            engine.addPlayer(personaId, 1 + random.nextInt(CAR_CLASSES), random.nextInt(LEVEL_BUCKETS));
+        }
+
+        now[0] = 3600000;
+        long[] nanos = new long[MEASURED_PICKS];
+        int picked = 0;
+
+        for (int i = 0; i < WARMUP_PICKS + MEASURED_PICKS; i++) {
+            MatchmakingSearch search = new MatchmakingSearch(carClass, i % LEVEL_BUCKETS, i % 10, 7, 50, 15000, 6);
+            long start = System.nanoTime();
+            int count = engine.pickPlayers(search).size();
+
+            if (i >= WARMUP_PICKS) {
+                nanos[i - WARMUP_PICKS] = System.nanoTime() - start;
+                picked += count;
+            }
+        }
+
+        Arrays.sort(nanos);
+        long total = 0;
+
+        for (long pickNanos : nanos) {
+            total += pickNanos;
+        }
+
+        System.out.println(String.format("%6d queued, %-10s: %5.1f players/pick, mean %6.2f us, p50 %6.2f us, "
+                        + "p99 %6.2f us", queueSize, carClass == MatchmakingEngine.OPEN_CAR_CLASS ? "open class" : "one class",
+                picked / (double) MEASURED_PICKS, total / 1000.0 / MEASURED_PICKS,
+                nanos[MEASURED_PICKS / 2] / 1000.0, nanos[MEASURED_PICKS * 99 / 100] / 1000.0));
+    }
+}
\ No newline at end of file
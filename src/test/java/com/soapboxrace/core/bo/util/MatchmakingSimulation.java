@@ -0,0 +1,187 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays synthetic player arrivals through {@link LocalMatchmakingEngine#pickPlayers(MatchmakingSearch)} on a
+ * simulated clock and reports the median and 95th percentile time-to-match, so that the level buckets and the
+ * wait-time widening can be tuned without real players.
+ * <p>
+ * Players arrive at random with a fixed average rate, each with a random car class and level. A share of them host
+ * a lobby, which picks up to seven queued players the way {@code LobbyBO.createLobby} does; everyone else queues.
+ * Some picked players decline and ignore the event, the others are matched. Players who wait longer than
+ * {@link #MAX_WAIT_MILLIS} give up. Each arrival rate runs once without widening and once with the default
+ * MATCHMAKING_MAX_WIDEN_BUCKETS, using the default MATCHMAKING_* parameters otherwise.
+ * <p>
+ * Not part of the test suite; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.soapboxrace.core.bo.util.MatchmakingSimulation}, optionally followed by
+ * {@code -Dexec.args="<arrivals per minute>..."}.
+ */
+public class MatchmakingSimulation {
+
+    private static final double[] DEFAULT_ARRIVALS_PER_MINUTE = {5, 20, 60, 240};
+
+    private static final int[] CAR_CLASSES = {1, 2, 3, 4, 5};
+
+    private static final int EVENTS_PER_CLASS = 3;
+
+    private static final int MAX_LEVEL = 60;
+
+    private static final int LEVEL_BUCKET_SIZE = 10;
+
+    private static final int LOBBY_SIZE = 8;
+
+    private static final int SCAN_LIMIT = 50;
+
+    private static final long WIDEN_INTERVAL_MILLIS = 15000;
+
+    private static final int MAX_WIDEN_BUCKETS = 6;
+
+    private static final double HOST_SHARE = 0.15;
+
+    private static final double OPEN_EVENT_SHARE = 0.2;
+
+    private static final double DECLINE_SHARE = 0.1;
+
+    private static final long MAX_WAIT_MILLIS = 300000;
+
+    private static final long DURATION_MILLIS = 4 * 3600000;
+
+    public static void main(String[] args) {
+        double[] arrivalsPerMinute = DEFAULT_ARRIVALS_PER_MINUTE;
+
+        if (args.length > 0) {
+            arrivalsPerMinute = new double[args.length];
+
+            for (int i = 0; i < args.length; i++) {
+                arrivalsPerMinute[i] = Double.parseDouble(args[i]);
+            }
+        }
+
+        for (double rate : arrivalsPerMinute) {
+            System.out.println(run(rate, 0));
+            System.out.println(run(rate, MAX_WIDEN_BUCKETS));
+        }
+    }
+
+    static Result run(double arrivalsPerMinute, int maxWidenBuckets) {
+        long[] now = {0};
+        LocalMatchmakingEngine engine = new LocalMatchmakingEngine(60, () -> now[0]);
+        Random random = new Random(42);
+        Map<Long, Long> arrivals = new LinkedHashMap<>();
+        Result result = new Result(arrivalsPerMinute, maxWidenBuckets);
+        double meanGapMillis = 60000 / arrivalsPerMinute;
+        long personaId = 0;
+
+        for (now[0] = nextGap(random, meanGapMillis); now[0] < DURATION_MILLIS;
+             now[0] += nextGap(random, meanGapMillis)) {
+            personaId++;
+            int carClassIndex = random.nextInt(CAR_CLASSES.length);
+            int levelBucket = (1 + random.nextInt(MAX_LEVEL)) / LEVEL_BUCKET_SIZE;
+
+            giveUp(engine, arrivals, now[0], result);
+
+            if (random.nextDouble() >= HOST_SHARE) {
+                engine.addPlayer(personaId, CAR_CLASSES[carClassIndex], levelBucket);
+                arrivals.put(personaId, now[0]);
+                continue;
+            }
+
+            boolean openEvent = random.nextDouble() < OPEN_EVENT_SHARE;
+            int carClass = openEvent ? MatchmakingEngine.OPEN_CAR_CLASS : CAR_CLASSES[carClassIndex];
+            long eventId = (openEvent ? CAR_CLASSES.length : carClassIndex) * EVENTS_PER_CLASS
+                    + random.nextInt(EVENTS_PER_CLASS);
+
+            for (Long picked : engine.pickPlayers(new MatchmakingSearch(carClass, levelBucket, eventId,
+                    LOBBY_SIZE - 1, SCAN_LIMIT, WIDEN_INTERVAL_MILLIS, maxWidenBuckets))) {
+                if (random.nextDouble() < DECLINE_SHARE) {
+                    engine.ignoreEvent(picked, eventId);
+                } else {
+                    engine.removePlayer(picked);
+                    result.timesToMatch.add(now[0] - arrivals.remove(picked));
+                }
+            }
+        }
+
+        result.stillWaiting = arrivals.size();
+        return result;
+    }
+
+    private static void giveUp(MatchmakingEngine engine, Map<Long, Long> arrivals, long now, Result result) {
+        Iterator<Map.Entry<Long, Long>> iterator = arrivals.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> arrival = iterator.next();
+
+            if (arrival.getValue() > now - MAX_WAIT_MILLIS) {
+                break;
+            }
+
+            engine.removePlayer(arrival.getKey());
+            iterator.remove();
+            result.gaveUp++;
+        }
+    }
+
+    private static long nextGap(Random random, double meanGapMillis) {
+        return Math.max(1, Math.round(-Math.log(1 - random.nextDouble()) * meanGapMillis));
+    }
+
+    static class Result {
+        private final double arrivalsPerMinute;
+        private final int maxWidenBuckets;
+        private final List<Long> timesToMatch = new ArrayList<>();
+        private int gaveUp;
+        private int stillWaiting;
+
+        private Result(double arrivalsPerMinute, int maxWidenBuckets) {
+            this.arrivalsPerMinute = arrivalsPerMinute;
+            this.maxWidenBuckets = maxWidenBuckets;
+        }
+
+        int getMatched() {
+            return timesToMatch.size();
+        }
+
+        int getGaveUp() {
+            return gaveUp;
+        }
+
+        /**
+         * @param percentile the percentile, between 0 and 100
+         * @return the time-to-match at that percentile, in milliseconds
+         */
+        long getTimeToMatch(double percentile) {
+            if (timesToMatch.isEmpty()) {
+                return 0;
+            }
+
+            List<Long> sorted = new ArrayList<>(timesToMatch);
+            Collections.sort(sorted);
+            return sorted.get(Math.max(0, (int) Math.ceil(percentile / 100 * sorted.size()) - 1));
+        }
+
+        @Override
+        public String toString() {
+            int queued = getMatched() + gaveUp + stillWaiting;
+
+            return String.format("%6.1f arrivals/min, widening up to %d buckets: matched %5.1f%%, gave up %5.1f%%, "
+                            + "time-to-match median %6.1fs, p95 %6.1fs", arrivalsPerMinute, maxWidenBuckets,
+                    100.0 * getMatched() / queued, 100.0 * gaveUp / queued, getTimeToMatch(50) / 1000.0,
+                    getTimeToMatch(95) / 1000.0);
+        }
+    }
+}
\ No newline at end of file
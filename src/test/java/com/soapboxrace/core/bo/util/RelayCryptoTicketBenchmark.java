@@ -0,0 +1,61 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Consumer;
+
+/**
+ * Compares the relay crypto ticket assignment of a launching lobby before and after batching: one ticket buffer and
+ * one store read-modify-write per entrant, against one {@link RelayCryptoTicketGenerator} and one store call. Both
+ * run against the in-process store, so the timings cover the CPU side of a launch only, not Redis or database round
+ * trips. The per-entrant path builds its tickets without random padding, as it did then, so it is the cheaper of the
+ * two here; batching pays off in the round trips it saves. The last line times the {@link RelayCryptoTicketGenerator}
+ * alone, which is mostly the SecureRandom call for the padding. Allocation is read from the HotSpot per-thread
+ * allocation counter.
+ * <p>
+ * Not part of the test suite; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.soapboxrace.core.bo.util.RelayCryptoTicketBenchmark}.
+ */
+public class RelayCryptoTicketBenchmark {
+
+    private static final int WARMUP_LAUNCHES = 20000;
+
+    private static final int MEASURED_LAUNCHES = 100000;
+
+    public static void main(String[] args) {
+        measure("per entrant", RelayCryptoTicketGeneratorTest::launchPerEntrant);
+        measure("batched", RelayCryptoTicketGeneratorTest::launchBatched);
+        measure("tickets", store -> RelayCryptoTicketGeneratorTest.generateTickets());
+    }
+
+    private static void measure(String name, Consumer<TokenSessionStore> launch) {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        TokenSessionStore store = RelayCryptoTicketGeneratorTest.createStore();
+
+        for (int i = 0; i < WARMUP_LAUNCHES; i++) {
+            launch.accept(store);
+        }
+
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < MEASURED_LAUNCHES; i++) {
+            launch.accept(store);
+        }
+
+        long nanos = System.nanoTime() - start;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.println(String.format("%-11s %d entrants: %6.2f us/launch, %6d bytes/launch", name,
+                RelayCryptoTicketGeneratorTest.ENTRANTS, nanos / 1000d / MEASURED_LAUNCHES,
+                allocated / MEASURED_LAUNCHES));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.bo.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the relay crypto tickets assigned to a launching lobby in one batch, with one
+ * {@link RelayCryptoTicketGenerator} and one {@link TokenSessionStore#updateRelayCryptoTickets(Map)} call, carry the
+ * same fields as the tickets LobbyCountdownBO used to build and store one entrant at a time, and that every ticket
+ * gets its own padding.
+ */
+public class RelayCryptoTicketGeneratorTest {
+
+    static final int ENTRANTS = 8;
+
+    private static final long EVENT_SESSION_ID = 123456L;
+
+    @Test
+    public void batchedTicketsMatchPerEntrantTickets() {
+        LocalTokenSessionStore perEntrantStore = createStore();
+        LocalTokenSessionStore batchedStore = createStore();
+
+        launchPerEntrant(perEntrantStore);
+        launchBatched(batchedStore);
+
+        for (int i = 0; i < ENTRANTS; i++) {
+            byte[] perEntrant = decodeTicket(perEntrantStore, i);
+            byte[] batched = decodeTicket(batchedStore, i);
+
+            assertEquals(48, batched.length);
+            assertArrayEquals(Arrays.copyOf(perEntrant, 14), Arrays.copyOf(batched, 14));
+        }
+    }
+
+    @Test
+    public void everyTicketGetsItsOwnPadding() {
+        Set<String> paddings = new HashSet<>();
+
+        for (int launch = 0; launch < 100; launch++) {
+            RelayCryptoTicketGenerator ticketGenerator = new RelayCryptoTicketGenerator(EVENT_SESSION_ID, ENTRANTS);
+
+            for (int i = 0; i < ENTRANTS; i++) {
+                byte[] ticket = Base64.getDecoder().decode(ticketGenerator.generate(i, getPersonaId(i)));
+                assertTrue(paddings.add(Base64.getEncoder().encodeToString(Arrays.copyOfRange(ticket, 14, 48))));
+            }
+        }
+    }
+
+    @Test
+    public void generatesMoreTicketsThanRacers() {
+        RelayCryptoTicketGenerator ticketGenerator = new RelayCryptoTicketGenerator(EVENT_SESSION_ID, 2);
+        Set<String> tickets = new HashSet<>();
+
+        for (int i = 0; i < 5; i++) {
+            String ticket = ticketGenerator.generate(0, getPersonaId(0));
+
+            assertEquals(48, Base64.getDecoder().decode(ticket).length);
+            assertTrue(tickets.add(ticket));
+        }
+    }
+
+    /**
+     * The launch path before batching: a ticket buffer and a separate store update for each entrant, as
+     * LobbyCountdownBO used to run it.
+     */
+    static void launchPerEntrant(TokenSessionStore store) {
+        byte numOfRacers = (byte) ENTRANTS;
+
+        for (int i = 0; i < ENTRANTS; i++) {
+            long personaId = getPersonaId(i);
+            byte[] helloPacket = {10, 11, 12, 13};
+            ByteBuffer byteBuffer = ByteBuffer.allocate(48);
+            byteBuffer.put((byte) i);
+            byteBuffer.put(helloPacket);
+            byteBuffer.putInt((int) EVENT_SESSION_ID);
+            byteBuffer.put(numOfRacers);
+            byteBuffer.putInt((int) personaId);
+            String relayCryptoTicket = Base64.getEncoder().encodeToString(byteBuffer.array());
+
+            store.updateRelayCryptoTickets(Collections.singletonMap(personaId, relayCryptoTicket));
+        }
+    }
+
+    static void launchBatched(TokenSessionStore store) {
+        assertEquals(ENTRANTS, store.updateRelayCryptoTickets(generateTickets()).size());
+    }
+
+    static Map<Long, String> generateTickets() {
+        RelayCryptoTicketGenerator ticketGenerator = new RelayCryptoTicketGenerator(EVENT_SESSION_ID, ENTRANTS);
+        Map<Long, String> relayCryptoTickets = new HashMap<>();
+
+        for (int i = 0; i < ENTRANTS; i++) {
+            relayCryptoTickets.put(getPersonaId(i), ticketGenerator.generate(i, getPersonaId(i)));
+        }
+
+        return relayCryptoTickets;
+    }
+
+    static LocalTokenSessionStore createStore() {
+        LocalTokenSessionStore store = new LocalTokenSessionStore();
+
+        for (int i = 0; i < ENTRANTS; i++) {
+            TokenSession tokenSession = new TokenSession();
+            tokenSession.setSecurityToken("token" + i);
+            tokenSession.setUserId((long) i + 1);
+            tokenSession.setExpirationDate(System.currentTimeMillis() + 3600000);
+            tokenSession.setActivePersonaId(getPersonaId(i));
+            store.create(tokenSession);
+        }
+
+        return store;
+    }
+
+    private static byte[] decodeTicket(TokenSessionStore store, int gridIndex) {
+        String securityToken = store.findTokenByPersonaId(getPersonaId(gridIndex));
+        return Base64.getDecoder().decode(store.get(securityToken).getRelayCryptoTicket());
+    }
+
+    private static long getPersonaId(int gridIndex) {
+        return 1000L + gridIndex;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.xmpp;
+
+import com.soapboxrace.core.bo.ParameterBO;
+import com.soapboxrace.core.dao.ParameterDAO;
+import com.soapboxrace.core.jpa.ParameterEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sends messages through {@link OpenFireConnector} in XMPP_STUB_MODE and checks that every message reaches the
+ * {@link XmppStubEndpoint} on the shard of the lane the {@link XmppShardRing} assigns to its persona.
+ */
+public class OpenFireConnectorTest {
+
+    private static final int SHARDS = 4;
+
+    private static final int LANES = 8;
+
+    private static final int PERSONAS = 500;
+
+    private static final int MESSAGES_PER_PERSONA = 5;
+
+    private OpenFireConnector openFireConnector;
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("XMPP_STUB_MODE", "true");
+        parameters.put("XMPP_CONNECTION_POOL_SIZE", String.valueOf(SHARDS));
+        parameters.put("XMPP_SEND_THREADS", String.valueOf(LANES));
+        parameters.put("XMPP_QUEUE_OVERFLOW_POLICY", "BLOCK");
+
+        openFireConnector = new OpenFireConnector();
+        inject(openFireConnector, "parameterBO", createParameterBO(parameters));
+        inject(openFireConnector, "threadFactory", (ManagedThreadFactory) Thread::new);
+        openFireConnector.init();
+        openFireConnector.connect();
+    }
+
+    @After
+    public void tearDown() {
+        openFireConnector.shutdown();
+    }
+
+    @Test
+    public void messagesReachTheShardOfTheirPersona() {
+        XmppShardRing laneRing = new XmppShardRing(LANES, OpenFireConnector.POINTS_PER_SHARD);
+        long[] expected = new long[SHARDS];
+
+        for (int i = 0; i < MESSAGES_PER_PERSONA; i++) {
+            for (long personaId = 1; personaId <= PERSONAS; personaId++) {
+                openFireConnector.send("<message/>", personaId);
+
+                if (i == 0) {
+                    expected[laneRing.getShard(personaId) % SHARDS] += MESSAGES_PER_PERSONA;
+                }
+            }
+        }
+
+        XmppOutboundQueue outboundQueue = openFireConnector.getOutboundQueue();
+        outboundQueue.shutdown(5000);
+
+        XmppStubEndpoint stubEndpoint = openFireConnector.getStubEndpoint();
+        assertEquals(LANES, outboundQueue.getLaneCount());
+        assertEquals(SHARDS, stubEndpoint.getShardCount());
+        assertEquals(SHARDS, openFireConnector.getShardCount());
+        assertEquals(SHARDS, openFireConnector.getConnectedShardCount());
+        assertEquals(0, outboundQueue.getDroppedCount());
+        assertEquals(PERSONAS * MESSAGES_PER_PERSONA, outboundQueue.getSentCount());
+
+        for (int shard = 0; shard < SHARDS; shard++) {
+            assertTrue("shard " + shard + " got no personas", expected[shard] > 0);
+            assertEquals("shard " + shard, expected[shard], stubEndpoint.getReceivedCount(shard));
+        }
+    }
+
+    private static ParameterBO createParameterBO(Map<String, String> parameters)
+            throws ReflectiveOperationException {
+        List<ParameterEntity> parameterEntities = new ArrayList<>();
+
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            ParameterEntity parameterEntity = new ParameterEntity();
+            parameterEntity.setName(parameter.getKey());
+            parameterEntity.setValue(parameter.getValue());
+            parameterEntities.add(parameterEntity);
+        }
+
+        ParameterBO parameterBO = new ParameterBO();
+        inject(parameterBO, "parameterDao", new ParameterDAO() {
+            @Override
+            public List<ParameterEntity> findAll() {
+                return parameterEntities;
+            }
+        });
+        parameterBO.loadParameters();
+        return parameterBO;
+    }
+
+    private static void inject(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
\ No newline at end of file
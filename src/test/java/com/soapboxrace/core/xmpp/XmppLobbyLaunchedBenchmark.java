@@ -0,0 +1,70 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.xmpp;
+
+import com.soapboxrace.jaxb.xmpp.XMPP_LobbyLaunchedType;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Consumer;
+
+/**
+ * Compares the time and allocation of building the launch messages of a full lobby: marshalling the whole message
+ * once per recipient, as LobbyMessagingBO used to, against one {@link XmppLobbyLaunchedTemplate} per launch.
+ * Allocation is read from the HotSpot per-thread allocation counter.
+ * <p>
+ * Not part of the test suite; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.soapboxrace.core.xmpp.XmppLobbyLaunchedBenchmark}.
+ */
+public class XmppLobbyLaunchedBenchmark {
+
+    private static final int ENTRANTS = 8;
+
+    private static final int WARMUP_LAUNCHES = 5000;
+
+    private static final int MEASURED_LAUNCHES = 20000;
+
+    public static void main(String[] args) {
+        measure("per recipient", lobbyLaunched -> {
+            for (int i = 0; i < ENTRANTS; i++) {
+                XmppLobbyLaunchedTemplateTest.marshalForRecipient(lobbyLaunched,
+                        XmppLobbyLaunchedTemplateTest.getPersonaId(i));
+            }
+        });
+        measure("template", lobbyLaunched -> {
+            XmppLobbyLaunchedTemplate template = new XmppLobbyLaunchedTemplate(lobbyLaunched);
+
+            for (int i = 0; i < ENTRANTS; i++) {
+                template.render(XmppLobbyLaunchedTemplateTest.getPersonaId(i));
+            }
+        });
+    }
+
+    private static void measure(String name, Consumer<XMPP_LobbyLaunchedType> launch) {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        XMPP_LobbyLaunchedType lobbyLaunched = XmppLobbyLaunchedTemplateTest.createLobbyLaunched(ENTRANTS);
+
+        for (int i = 0; i < WARMUP_LAUNCHES; i++) {
+            launch.accept(lobbyLaunched);
+        }
+
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < MEASURED_LAUNCHES; i++) {
+            launch.accept(lobbyLaunched);
+        }
+
+        long nanos = System.nanoTime() - start;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.println(String.format("%-13s %d entrants: %7.2f us/launch, %7d bytes/launch", name, ENTRANTS,
+                nanos / 1000d / MEASURED_LAUNCHES, allocated / MEASURED_LAUNCHES));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,130 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.core.xmpp;
+
+import com.soapboxrace.jaxb.http.Entrants;
+import com.soapboxrace.jaxb.http.LobbyEntrantInfo;
+import com.soapboxrace.jaxb.http.LobbyEntrantState;
+import com.soapboxrace.jaxb.util.JAXBUtility;
+import com.soapboxrace.jaxb.xmpp.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that every message rendered by {@link XmppLobbyLaunchedTemplate} is exactly the document that marshalling
+ * the full lobby launch message for that recipient produces, as LobbyMessagingBO did before the template.
+ */
+public class XmppLobbyLaunchedTemplateTest {
+
+    @Test
+    public void fullLobbyMatchesPerRecipientMarshalling() {
+        assertMatchesPerRecipientMarshalling(8);
+    }
+
+    @Test
+    public void twoEntrantLobbyMatchesPerRecipientMarshalling() {
+        assertMatchesPerRecipientMarshalling(2);
+    }
+
+    @Test
+    public void recipientNeverGetsOwnTicket() {
+        XMPP_LobbyLaunchedType lobbyLaunched = createLobbyLaunched(8);
+        XmppLobbyLaunchedTemplate template = new XmppLobbyLaunchedTemplate(lobbyLaunched);
+
+        for (int i = 0; i < 8; i++) {
+            String message = template.render(getPersonaId(i));
+
+            for (int j = 0; j < 8; j++) {
+                assertEquals(i != j, message.contains("<PersonaId>" + getPersonaId(j) + "</PersonaId><SessionKey>"));
+            }
+        }
+    }
+
+    private static void assertMatchesPerRecipientMarshalling(int entrants) {
+        XMPP_LobbyLaunchedType lobbyLaunched = createLobbyLaunched(entrants);
+        XmppLobbyLaunchedTemplate template = new XmppLobbyLaunchedTemplate(lobbyLaunched);
+
+        for (int i = 0; i < entrants; i++) {
+            assertEquals(marshalForRecipient(createLobbyLaunched(entrants), getPersonaId(i)),
+                    template.render(getPersonaId(i)));
+        }
+    }
+
+    /**
+     * Builds the lobby launch message the way LobbyCountdownBO does, with a ticket for every entrant.
+     */
+    static XMPP_LobbyLaunchedType createLobbyLaunched(int entrants) {
+        Entrants entrantsType = new Entrants();
+        XMPP_CryptoTicketsType cryptoTickets = new XMPP_CryptoTicketsType();
+
+        for (int i = 0; i < entrants; i++) {
+            XMPP_P2PCryptoTicketType p2pCryptoTicket = new XMPP_P2PCryptoTicketType();
+            p2pCryptoTicket.setPersonaId(getPersonaId(i));
+            p2pCryptoTicket.setSessionKey("AAAAAAAAAAAAAAAAAAAAAA==");
+            cryptoTickets.getP2PCryptoTicket().add(p2pCryptoTicket);
+
+            LobbyEntrantInfo lobbyEntrantInfo = new LobbyEntrantInfo();
+            lobbyEntrantInfo.setPersonaId(getPersonaId(i));
+            lobbyEntrantInfo.setLevel(10 + i);
+            lobbyEntrantInfo.setHeat(1);
+            lobbyEntrantInfo.setGridIndex(i);
+            lobbyEntrantInfo.setState(LobbyEntrantState.UNKNOWN);
+            entrantsType.getLobbyEntrantInfo().add(lobbyEntrantInfo);
+        }
+
+        ChallengeType challengeType = new ChallengeType();
+        challengeType.setChallengeId("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+        challengeType.setPattern("FFFFFFFFFFFFFFFF");
+        challengeType.setLeftSize(14);
+        challengeType.setRightSize(50);
+
+        XMPP_EventSessionType eventSession = new XMPP_EventSessionType();
+        eventSession.setEventId(43);
+        eventSession.setChallenge(challengeType);
+        eventSession.setSessionId(123456L);
+
+        XMPP_LobbyLaunchedType lobbyLaunched = new XMPP_LobbyLaunchedType();
+        lobbyLaunched.setNewRelayServer(true);
+        lobbyLaunched.setLobbyId(77L);
+        lobbyLaunched.setUdpRelayHost("127.0.0.1");
+        lobbyLaunched.setUdpRelayPort(9999);
+        lobbyLaunched.setEntrants(entrantsType);
+        lobbyLaunched.setEventSession(eventSession);
+        lobbyLaunched.setCryptoTickets(cryptoTickets);
+        return lobbyLaunched;
+    }
+
+    /**
+     * Marshals the whole message for one recipient with the tickets of all other entrants, as LobbyMessagingBO did
+     * before {@link XmppLobbyLaunchedTemplate}.
+     */
+    static String marshalForRecipient(XMPP_LobbyLaunchedType lobbyLaunched, long personaId) {
+        XMPP_CryptoTicketsType allTickets = lobbyLaunched.getCryptoTickets();
+        XMPP_CryptoTicketsType otherTickets = new XMPP_CryptoTicketsType();
+
+        for (XMPP_P2PCryptoTicketType p2pCryptoTicket : allTickets.getP2PCryptoTicket()) {
+            if (p2pCryptoTicket.getPersonaId() != personaId) {
+                otherTickets.getP2PCryptoTicket().add(p2pCryptoTicket);
+            }
+        }
+
+        lobbyLaunched.setCryptoTickets(otherTickets);
+
+        try {
+            XMPP_ResponseTypeLobbyLaunched response = new XMPP_ResponseTypeLobbyLaunched();
+            response.setLobbyInvite(lobbyLaunched);
+            return JAXBUtility.marshal(response);
+        } finally {
+            lobbyLaunched.setCryptoTickets(allTickets);
+        }
+    }
+
+    static long getPersonaId(int gridIndex) {
+        return 1000L + gridIndex;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+/*
+ * This file is part of the Soapbox Race World core source code.
+ * If you use any of this code for third-party purposes, please provide attribution.
+ * Copyright (c) 2020.
+ */
+
+package com.soapboxrace.jaxb.util;
+
+import com.soapboxrace.jaxb.http.ArrayOfProductTrans;
+import com.soapboxrace.jaxb.http.ProductTrans;
+import org.junit.Test;
+
+import javax.xml.bind.JAXBContext;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the pooled marshallers and unmarshallers of {@link JAXBUtility} give the same results when they are
+ * reused, also from many threads at once, and that each class gets a single JAXB context.
+ */
+public class JAXBUtilityTest {
+
+    private static final int THREADS = 8;
+
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void reusedMarshallersProduceSameDocument() {
+        ArrayOfProductTrans catalog = createCatalog();
+        String expected = JAXBUtility.marshal(catalog);
+
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(expected, JAXBUtility.marshal(catalog));
+        }
+    }
+
+    @Test
+    public void streamOverloadWritesSameDocumentAsUtf8() throws Exception {
+        ArrayOfProductTrans catalog = createCatalog();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        JAXBUtility.marshal(catalog, outputStream);
+
+        assertEquals(JAXBUtility.marshal(catalog), new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void concurrentMarshalAndUnmarshalRoundTrip() throws Exception {
+        ArrayOfProductTrans catalog = createCatalog();
+        String expected = JAXBUtility.marshal(catalog);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < ROUNDS; i++) {
+                        String document = JAXBUtility.marshal(catalog);
+                        assertEquals(expected, document);
+
+                        ArrayOfProductTrans copy = JAXBUtility.unMarshal(document, ArrayOfProductTrans.class);
+                        assertEquals(catalog.getProductTrans().size(), copy.getProductTrans().size());
+                        assertEquals("Product 0", copy.getProductTrans().get(0).getProductTitle());
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void contextIsCreatedOncePerClass() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            List<Future<JAXBContext>> futures = new ArrayList<>();
+
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> JAXBUtility.getContextInstance(ProductTrans.class)));
+            }
+
+            JAXBContext context = JAXBUtility.getContextInstance(ProductTrans.class);
+
+            for (Future<JAXBContext> future : futures) {
+                assertSame(context, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ArrayOfProductTrans createCatalog() {
+        ArrayOfProductTrans catalog = new ArrayOfProductTrans();
+
+        for (int i = 0; i < 20; i++) {
+            ProductTrans productTrans = new ProductTrans();
+            productTrans.setProductId("DL-" + i);
+            productTrans.setProductTitle("Product " + i);
+            productTrans.setDescription("Pi\u00e8ce d\u00e9tach\u00e9e " + i);
+            productTrans.setCurrency("_NS");
+            productTrans.setHash(i * 31);
+            productTrans.setPrice(1000.0 + i);
+            catalog.getProductTrans().add(productTrans);
+        }
+
+        return catalog;
+    }
+}
\ No newline at end of file